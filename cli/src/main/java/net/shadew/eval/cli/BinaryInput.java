@@ -0,0 +1,49 @@
+package net.shadew.eval.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads rows of little-endian doubles, one for every parameter, in order.
+ */
+final class BinaryInput implements Input {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buf;
+    private final int arity;
+    private boolean eof;
+
+    BinaryInput(ReadableByteChannel channel, int arity) {
+        this.channel = channel;
+        this.arity = arity;
+        this.buf = ByteBuffer.allocateDirect(Math.max(1 << 16, arity * Double.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+    }
+
+    @Override
+    public int read(double[][] columns, int max) throws IOException {
+        int rowBytes = arity * Double.BYTES;
+        int rows = 0;
+        while (rows < max) {
+            if (buf.remaining() < rowBytes) {
+                if (eof) {
+                    if (buf.hasRemaining())
+                        throw new InputException("Incomplete row at end of input");
+                    break;
+                }
+                buf.compact();
+                eof = channel.read(buf) < 0;
+                buf.flip();
+                continue;
+            }
+
+            int n = Math.min(max - rows, buf.remaining() / rowBytes);
+            for (int i = 0; i < n; i++, rows++) {
+                for (int p = 0; p < arity; p++)
+                    columns[p][rows] = buf.getDouble();
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,147 @@
+package net.shadew.eval.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads rows from comma separated lines, without quoting. Bytes are parsed straight from the read buffer. Without a
+ * header, every line has one column for every parameter, in order. With a header, the first line names the columns,
+ * and every parameter is read from the column of the same name. Other columns are skipped without parsing them.
+ */
+final class CsvInput implements Input {
+    private final ReadableByteChannel channel;
+    private byte[] buf = new byte[1 << 16];
+    private int pos, end;
+    private boolean eof;
+
+    private int lineStart, lineEnd;
+    private long line;
+
+    private final int[] paramOf;
+    private final int columnCount;
+
+    CsvInput(ReadableByteChannel channel, String[] params, boolean header) throws IOException {
+        this.channel = channel;
+
+        if (!header) {
+            paramOf = new int[params.length];
+            for (int i = 0; i < params.length; i++)
+                paramOf[i] = i;
+            columnCount = params.length;
+            return;
+        }
+
+        if (!nextLine())
+            throw new InputException("Missing header");
+        String[] names = new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).split(",", -1);
+        paramOf = new int[names.length];
+        columnCount = names.length;
+
+        for (int c = 0; c < names.length; c++) {
+            paramOf[c] = -1;
+            for (int p = 0; p < params.length; p++) {
+                if (params[p].equals(names[c].trim()))
+                    paramOf[c] = p;
+            }
+        }
+        for (int p = 0; p < params.length; p++) {
+            boolean found = false;
+            for (int c : paramOf)
+                found |= c == p;
+            if (!found)
+                throw new InputException("No column named '" + params[p] + "'");
+        }
+    }
+
+    @Override
+    public int read(double[][] columns, int max) throws IOException {
+        int rows = 0;
+        while (rows < max && nextLine()) {
+            // An empty line has no columns rather than one empty column
+            int col = 0;
+            int start = lineStart;
+            while (start <= lineEnd && lineStart < lineEnd) {
+                int comma = start;
+                while (comma < lineEnd && buf[comma] != ',')
+                    comma++;
+                if (col < paramOf.length && paramOf[col] >= 0)
+                    columns[paramOf[col]][rows] = number(start, comma);
+                col++;
+                start = comma + 1;
+            }
+            if (col != columnCount)
+                throw new InputException("Line " + line + ": expected " + columnCount + " column(s), got " + col);
+            rows++;
+        }
+        return rows;
+    }
+
+    private double number(int from, int to) throws InputException {
+        while (from < to && (buf[from] == ' ' || buf[from] == '\t'))
+            from++;
+        while (to > from && (buf[to - 1] == ' ' || buf[to - 1] == '\t'))
+            to--;
+        try {
+            return Numbers.parse(buf, from, to);
+        } catch (NumberFormatException exc) {
+            String str = new String(buf, from, to - from, StandardCharsets.UTF_8);
+            throw new InputException("Line " + line + ": illegal number '" + str + "'");
+        }
+    }
+
+    /**
+     * Finds the next line, and stores its bounds without the line terminator in {@link #lineStart} and
+     * {@link #lineEnd}. A final line terminator at the end of the input does not start another line.
+     */
+    private boolean nextLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            while (scan < end && buf[scan] != '\n')
+                scan++;
+            if (scan < end) {
+                lineStart = pos;
+                lineEnd = scan;
+                pos = scan + 1;
+                break;
+            }
+            if (eof) {
+                if (pos == end)
+                    return false;
+                lineStart = pos;
+                lineEnd = end;
+                pos = end;
+                break;
+            }
+
+            scan -= pos;
+            fill();
+            scan += pos;
+        }
+
+        if (lineEnd > lineStart && buf[lineEnd - 1] == '\r')
+            lineEnd--;
+        line++;
+        return true;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, end - pos);
+            end -= pos;
+            pos = 0;
+        }
+        if (end == buf.length) {
+            byte[] grown = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, grown, 0, end);
+            buf = grown;
+        }
+
+        int n = channel.read(ByteBuffer.wrap(buf, end, buf.length - end));
+        if (n < 0)
+            eof = true;
+        else
+            end += n;
+    }
+}
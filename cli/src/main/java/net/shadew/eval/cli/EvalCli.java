@@ -0,0 +1,240 @@
+package net.shadew.eval.cli;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.EvalException;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.Expression;
+import net.shadew.eval.ExpressionSet;
+import net.shadew.eval.ParseException;
+
+/**
+ * Evaluates a formula for every row read from standard input, and writes one result per row to standard output. See
+ * {@link #USAGE}. Rows are read in chunks, and every chunk is evaluated in one batch by an {@link ExpressionSet}. With
+ * multiple threads, chunks are evaluated and formatted concurrently while the next chunks are read, and results are
+ * still written in order.
+ * <p>
+ * Input and output go through channels on the standard file descriptors, and numbers are parsed from and formatted to
+ * bytes directly. Startup is kept short by loading few classes and avoiding reflection. For even faster startup, the
+ * loaded classes can be put in a class data archive: run once with {@code -XX:ArchiveClassesAtExit=eval.jsa}, and
+ * then pass {@code -XX:SharedArchiveFile=eval.jsa}.
+ */
+public final class EvalCli {
+    static final String USAGE = """
+        Usage: eval [options] <formula> [param...]
+        Evaluates the formula for every row on standard input, and writes one result per line,
+        or per 8 bytes with --binary. Rows have one column per parameter, in order.
+
+        Options:
+          --binary       Read rows of little-endian doubles and write little-endian doubles
+          --header       The first line names the columns, and parameters are read from the
+                         columns of the same name; other columns are ignored
+          --threads <n>  Evaluate on n threads (default 1)
+          --chunk <n>    Evaluate n rows per batch (default 4096)
+        """;
+
+    private EvalCli() {
+    }
+
+    private record Options(String formula, String[] params, boolean binary, boolean header, int threads, int chunk) {
+        static Options parse(String[] args) {
+            boolean binary = false, header = false;
+            int threads = 1, chunk = 4096;
+
+            int i = 0;
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                switch (args[i]) {
+                    case "--binary" -> binary = true;
+                    case "--header" -> header = true;
+                    case "--threads" -> threads = positive(args, ++i);
+                    case "--chunk" -> chunk = positive(args, ++i);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (i == args.length)
+                throw new IllegalArgumentException("Missing formula");
+            if (binary && header)
+                throw new IllegalArgumentException("Binary input has no header");
+            if (binary && i + 1 == args.length)
+                throw new IllegalArgumentException("Binary input needs at least one parameter");
+
+            String[] params = new String[args.length - i - 1];
+            System.arraycopy(args, i + 1, params, 0, params.length);
+            return new Options(args[i], params, binary, header, threads, chunk);
+        }
+
+        private static int positive(String[] args, int i) {
+            if (i == args.length)
+                throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+            try {
+                int n = Integer.parseInt(args[i]);
+                if (n > 0)
+                    return n;
+            } catch (NumberFormatException exc) {
+                // Handled below
+            }
+            throw new IllegalArgumentException("Expected a positive number for " + args[i - 1]);
+        }
+    }
+
+    public static void main(String[] args) {
+        int status = run(
+            args,
+            new FileInputStream(FileDescriptor.in).getChannel(),
+            new FileOutputStream(FileDescriptor.out).getChannel(),
+            System.err
+        );
+        System.exit(status);
+    }
+
+    /**
+     * Runs the command and returns its exit status: 0 on success, 1 when the input is malformed or evaluation fails, and
+     * 2 when the arguments or the formula are invalid.
+     */
+    static int run(String[] args, ReadableByteChannel in, WritableByteChannel out, PrintStream err) {
+        Options opts;
+        Expression expr;
+        try {
+            opts = Options.parse(args);
+            expr = CtxExpression.parse(opts.formula).toContextless(ExprContext.basicMath(), opts.params);
+        } catch (IllegalArgumentException exc) {
+            err.println("eval: " + exc.getMessage());
+            err.print(USAGE);
+            return 2;
+        } catch (ParseException exc) {
+            err.println("eval: " + exc.getMessage());
+            return 2;
+        }
+
+        ExecutorService pool = opts.threads > 1 ? Executors.newFixedThreadPool(opts.threads, task -> {
+            Thread t = new Thread(task, "eval worker");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+
+        try {
+            Input input = opts.binary
+                          ? new BinaryInput(in, opts.params.length)
+                          : new CsvInput(in, opts.params, opts.header);
+            new Evaluator(expr, opts).run(input, out, pool);
+            return 0;
+        } catch (IOException | EvalException exc) {
+            err.println("eval: " + exc.getMessage());
+            return 1;
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+    }
+
+    private static final class Evaluator {
+        private final Expression expr;
+        private final ExpressionSet set;
+        private final int arity;
+        private final int chunk;
+        private final int threads;
+        private final boolean binary;
+
+        Evaluator(Expression expr, Options opts) {
+            this.expr = expr;
+            this.set = ExpressionSet.of(expr);
+            this.arity = opts.params.length;
+            this.chunk = opts.chunk;
+            this.threads = opts.threads;
+            this.binary = opts.binary;
+        }
+
+        void run(Input input, WritableByteChannel out, ExecutorService pool) throws IOException, EvalException, InterruptedException {
+            if (pool == null) {
+                double[][] columns = new double[arity][chunk];
+                double[] results = new double[chunk];
+                long row = 0;
+                for (int rows; (rows = input.read(columns, chunk)) > 0; row += rows)
+                    write(out, evaluate(columns, results, rows, row));
+                return;
+            }
+
+            // Keep a few chunks in flight per thread, and write them in the order they were read
+            ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            long row = 0;
+            while (true) {
+                double[][] columns = new double[arity][chunk];
+                int rows = input.read(columns, chunk);
+                if (rows == 0)
+                    break;
+
+                long first = row;
+                pending.add(pool.submit(() -> evaluate(columns, new double[rows], rows, first)));
+                row += rows;
+                if (pending.size() >= 2 * threads)
+                    write(out, result(pending.poll()));
+            }
+            while (!pending.isEmpty())
+                write(out, result(pending.poll()));
+        }
+
+        private static ByteBuffer result(Future<ByteBuffer> future) throws EvalException, InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException exc) {
+                if (exc.getCause() instanceof EvalException evalExc)
+                    throw evalExc;
+                throw new IllegalStateException(exc.getCause());
+            }
+        }
+
+        private ByteBuffer evaluate(double[][] columns, double[] results, int rows, long first) throws EvalException {
+            try {
+                set.evalBatch(0, rows, new double[][] {results}, columns);
+            } catch (EvalException exc) {
+                // Some row failed, evaluate row by row to find out which
+                double[] params = new double[arity];
+                for (int i = 0; i < rows; i++) {
+                    for (int p = 0; p < arity; p++)
+                        params[p] = columns[p][i];
+                    try {
+                        results[i] = expr.eval(params);
+                    } catch (EvalException rowExc) {
+                        throw new EvalException("Row " + (first + i + 1) + ": " + rowExc.getMessage(), rowExc);
+                    }
+                }
+            }
+
+            if (binary) {
+                ByteBuffer buf = ByteBuffer.allocate(rows * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buf.asDoubleBuffer().put(results, 0, rows);
+                return buf;
+            }
+
+            StringBuilder b = new StringBuilder(rows * 24);
+            for (int i = 0; i < rows; i++) {
+                Numbers.format(results[i], b);
+                b.append('\n');
+            }
+            return ByteBuffer.wrap(b.toString().getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private static void write(WritableByteChannel out, ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining())
+                out.write(buf);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.shadew.eval.cli;
+
+import java.io.IOException;
+
+/**
+ * A source of rows of parameter values.
+ */
+interface Input {
+    /**
+     * Reads at most {@code max} rows. Parameter {@code p} of row {@code i} is stored in {@code columns[p][i]}.
+     *
+     * @return The amount of rows read, which is only 0 at the end of the input
+     *
+     * @throws InputException If the input is malformed
+     */
+    int read(double[][] columns, int max) throws IOException;
+}
@@ -0,0 +1,12 @@
+package net.shadew.eval.cli;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the input is malformed.
+ */
+class InputException extends IOException {
+    InputException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,88 @@
+package net.shadew.eval.cli;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses and formats numbers directly from and to ASCII bytes, without creating strings for the common cases.
+ */
+final class Numbers {
+    // Powers of ten that are exact doubles
+    private static final double[] POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Numbers() {
+    }
+
+    /**
+     * Parses a number like {@link Double#parseDouble}. Decimal numbers of at most 15 significant digits and small
+     * exponents are parsed directly: the digits and the power of ten are then both exact doubles, so one multiplication
+     * or division rounds correctly. Anything else is left to {@link Double#parseDouble}.
+     *
+     * @throws NumberFormatException If the bytes are not a number
+     */
+    static double parse(byte[] b, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (b[i] == '-' || b[i] == '+'))
+            neg = b[i++] == '-';
+
+        long mantissa = 0;
+        int digits = 0;
+        int exp = 0;
+        boolean any = false;
+        for (; i < to && b[i] >= '0' && b[i] <= '9'; i++, any = true) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b[i] - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exp++;
+            }
+        }
+        if (i < to && b[i] == '.') {
+            for (i++; i < to && b[i] >= '0' && b[i] <= '9'; i++, any = true) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    exp--;
+                }
+            }
+        }
+        if (any && i < to && (b[i] == 'e' || b[i] == 'E')) {
+            int j = i + 1;
+            boolean negExp = false;
+            if (j < to && (b[j] == '-' || b[j] == '+'))
+                negExp = b[j++] == '-';
+
+            int e = 0;
+            int start = j;
+            for (; j < to && b[j] >= '0' && b[j] <= '9'; j++)
+                e = Math.min(e * 10 + (b[j] - '0'), 100000);
+            if (j > start) {
+                exp += negExp ? -e : e;
+                i = j;
+            }
+        }
+
+        if (any && i == to && digits <= 15 && exp >= -22 && exp <= 22) {
+            double v = exp < 0 ? mantissa / POWERS[-exp] : mantissa * POWERS[exp];
+            return neg ? -v : v;
+        }
+        return Double.parseDouble(new String(b, from, to - from, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Appends a number in the same form as {@link Double#toString(double)}. Integers of less than 8 digits, which are
+     * common results, are written directly.
+     */
+    static void format(double v, StringBuilder out) {
+        if (v == (long) v && Math.abs(v) < 1e7 && (v != 0 || 1 / v > 0)) {
+            out.append((long) v).append(".0");
+            return;
+        }
+        out.append(v);
+    }
+}
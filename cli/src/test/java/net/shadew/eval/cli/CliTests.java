@@ -0,0 +1,144 @@
+package net.shadew.eval.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CliTests {
+    private ByteArrayOutputStream err;
+    private int status;
+
+    private byte[] run(byte[] input, String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        status = EvalCli.run(
+            args,
+            Channels.newChannel(new ByteArrayInputStream(input)),
+            Channels.newChannel(out),
+            new PrintStream(err, true, StandardCharsets.UTF_8)
+        );
+        return out.toByteArray();
+    }
+
+    private String run(String input, String... args) {
+        return new String(run(input.getBytes(StandardCharsets.UTF_8), args), StandardCharsets.UTF_8);
+    }
+
+    private String error() {
+        return err.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testCsv() {
+        assertEquals("3.0\n-0.5\n1.0E20\n", run("1,2\n-1.5, 1\r\n1e20,0\n", "x + y", "x", "y"));
+        assertEquals(0, status);
+        assertEquals("2.0\n3.0\n", run("1\n2", "x + 1", "x"));
+        assertEquals("", run("", "x + 1", "x"));
+        assertEquals("3.141592653589793\n", run("\n", "PI"));
+    }
+
+    @Test
+    void testHeader() {
+        assertEquals("7.0\n-1.0\n", run("name,y,x\nfoo,1,6\nbar,-3,2\n", "--header", "x + y", "x", "y"));
+        assertEquals("", error());
+        run("a,b\n1,2\n", "--header", "x + a", "x", "a");
+        assertEquals(1, status);
+        assertTrue(error().contains("No column named 'x'"), error());
+    }
+
+    @Test
+    void testBinary() {
+        ByteBuffer in = ByteBuffer.allocate(3 * 2 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        in.putDouble(1).putDouble(2).putDouble(3).putDouble(4).putDouble(-1).putDouble(0.5);
+        ByteBuffer out = ByteBuffer.wrap(run(in.array(), "--binary", "x * y", "x", "y")).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0, status);
+        assertEquals(3 * 8, out.remaining());
+        assertEquals(2, out.getDouble(), 0);
+        assertEquals(12, out.getDouble(), 0);
+        assertEquals(-0.5, out.getDouble(), 0);
+
+        run(new byte[12], "--binary", "x", "x");
+        assertEquals(1, status);
+        assertTrue(error().contains("Incomplete row"), error());
+    }
+
+    @Test
+    void testThreads() {
+        Random random = new Random(42);
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            double x = random.nextInt(2000) / 8.0 - 100;
+            in.append(x).append(',').append(i).append('\n');
+            expected.append(Math.abs(x) * 2 + i).append('\n');
+        }
+
+        assertEquals(expected.toString(), run(in.toString(), "--threads", "4", "--chunk", "100", "abs(x) * 2 + i", "x", "i"));
+        assertEquals(expected.toString(), run(in.toString(), "--chunk", "7", "abs(x) * 2 + i", "x", "i"));
+    }
+
+    @Test
+    void testErrors() {
+        run("1,2\n3\n", "x + y", "x", "y");
+        assertEquals(1, status);
+        assertTrue(error().contains("Line 2: expected 2 column(s), got 1"), error());
+
+        run("1,2\n3,abc\n", "x + y", "x", "y");
+        assertEquals(1, status);
+        assertTrue(error().contains("Line 2: illegal number 'abc'"), error());
+
+        run("1\n2\n3\n", "x + z", "x");
+        assertEquals(1, status);
+        assertTrue(error().contains("Row 1: No such variable: 'z'"), error());
+
+        run("1\n", "x +", "x");
+        assertEquals(2, status);
+        run("1\n", "--threads", "0", "x", "x");
+        assertEquals(2, status);
+        assertTrue(error().contains("Usage"));
+        run("1\n", "--binary", "2");
+        assertEquals(2, status);
+    }
+
+    @Test
+    void testNumbers() {
+        Random random = new Random(7);
+        String[] fixed = {"0", "-0", "1", "+2.5", "0.1", "123456789012345", "1234567890123456789", "1e22", "1e23", "4.9e-324",
+            "1.7976931348623157e308", "2.2250738585072014E-308", ".5", "5.", "007", "1e-5", "NaN", "-Infinity", "0x1p3"};
+        for (String str : fixed)
+            assertNumber(str);
+        for (int i = 0; i < 100000; i++) {
+            assertNumber(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)));
+            assertNumber(random.nextInt(1000000) + "." + random.nextInt(1000));
+        }
+
+        for (String str : new String[] {"", "-", ".", "1e", "1x", "e5", "--1"})
+            assertThrows(NumberFormatException.class, () -> parse(str), str);
+
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            double v = i % 2 == 0 ? random.nextInt(20000000) - 10000000 : Double.longBitsToDouble(random.nextLong());
+            b.setLength(0);
+            Numbers.format(v, b);
+            assertEquals(Double.toString(v), b.toString());
+        }
+    }
+
+    private static double parse(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.ISO_8859_1);
+        return Numbers.parse(bytes, 0, bytes.length);
+    }
+
+    private static void assertNumber(String str) {
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(str)), Double.doubleToRawLongBits(parse(str)), str);
+    }
+}
@@ -0,0 +1,81 @@
+package net.shadew.eval.loadtest;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets, like HdrHistogram. Values below 256 get a bucket
+ * each. Above that, every power of two is split into 128 buckets, so the values in one bucket differ by less than 1%.
+ * Recording is a few instructions and never allocates. A histogram is not thread safe: every thread records into its
+ * own histogram, and the histograms are merged afterwards.
+ */
+final class Histogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT];
+    private long count;
+    private long max;
+    private double sum;
+
+    private static int index(long value) {
+        if (value < 2 * SUB_COUNT)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that falls in the bucket of the given index.
+     */
+    private static long highest(int index) {
+        if (index < 2 * SUB_COUNT)
+            return index;
+        int shift = index / SUB_COUNT - 1;
+        long sub = index - shift * SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+        sum += value;
+    }
+
+    void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values falls, rounded up to the end of its
+     * bucket but never above the maximum.
+     */
+    long percentile(double percent) {
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highest(i), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,303 @@
+package net.shadew.eval.loadtest;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.EvalException;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.Expression;
+import net.shadew.eval.ParseException;
+
+/**
+ * Drives parsing, compilation and evaluation of a synthetic workload from many threads, and reports latency
+ * percentiles and allocation per operation. One operation parses a random formula of the workload, converts it with
+ * {@link CtxExpression#toContextless} and evaluates it a configured amount of times with random parameters.
+ * <p>
+ * With a target rate, every thread starts operations on a fixed schedule, and the total latency of an operation is
+ * measured from when it was scheduled to start rather than from when it actually started. A stall then shows up in the
+ * latency of every operation that was delayed by it, not only in the one operation that stalled, which would hide most
+ * of the stall from the percentiles. Without a target rate, threads run operations back to back.
+ * <p>
+ * Allocation is measured per platform thread, and is not available for virtual threads.
+ */
+public final class LoadTest {
+    static final String USAGE = """
+        Usage: eval-loadtest [options]
+
+        Options:
+          --threads <n,...>  Thread counts to run with, one run per count (default 1)
+          --virtual          Use virtual threads, if the runtime supports them
+          --rate <ops/s>     Total target rate, 0 to run unthrottled (default 0)
+          --duration <s>     Measured duration of every run (default 10)
+          --warmup <s>       Unmeasured warmup before every run (default 5)
+          --formulas <n>     Amount of distinct formulas (default 1000)
+          --params <n>       Amount of parameters per formula (default 4)
+          --depth <n>        Maximum nesting depth of formulas (default 4)
+          --width <n>        Maximum operands of sums, products and functions (default 4)
+          --mix <mix>        Functions to use: arithmetic, basic, transcendental or mixed (default mixed)
+          --evals <n>        Evaluations per parsed formula (default 1)
+          --seed <n>         Seed of the workload (default 1)
+        """;
+
+    private static final long SPIN_NANOS = 50_000;
+
+    private LoadTest() {
+    }
+
+    record Config(int threads, boolean virtual, double rate, double duration, double warmup, int formulas, int params,
+                  int depth, int width, Workload.Mix mix, int evals, long seed) {
+        Config {
+            if (threads < 1 || formulas < 1 || evals < 1 || rate < 0 || duration <= 0 || warmup < 0)
+                throw new IllegalArgumentException("Invalid configuration");
+        }
+    }
+
+    record Report(Config config, long ops, long errors, double seconds, double bytesPerOp,
+                  Histogram parse, Histogram compile, Histogram eval, Histogram total) {
+        void print(PrintStream out) {
+            out.printf(
+                "%d %s thread(s), target %s, achieved %.0f ops/s, %d ops, %d errors%n",
+                config.threads, config.virtual ? "virtual" : "platform",
+                config.rate > 0 ? String.format("%.0f ops/s", config.rate) : "unthrottled",
+                ops / seconds, ops, errors
+            );
+            out.printf("%-10s %9s %9s %9s %9s %9s %9s%n", "(us)", "p50", "p90", "p99", "p99.9", "max", "mean");
+            print(out, "parse", parse);
+            print(out, "compile", compile);
+            print(out, "eval", eval);
+            print(out, "total", total);
+            if (bytesPerOp >= 0)
+                out.printf("allocated %.0f bytes/op%n", bytesPerOp);
+            else
+                out.println("allocation not available");
+            out.println();
+        }
+
+        private static void print(PrintStream out, String name, Histogram h) {
+            out.printf(
+                "%-10s %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", name,
+                h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3,
+                h.max() / 1e3, h.mean() / 1e3
+            );
+        }
+    }
+
+    private static final class Worker implements Runnable {
+        final Histogram parse = new Histogram();
+        final Histogram compile = new Histogram();
+        final Histogram eval = new Histogram();
+        final Histogram total = new Histogram();
+        long errors;
+        long allocated = -1;
+        double sink;
+
+        private final List<String> formulas;
+        private final String[] names;
+        private final ExprContext context;
+        private final int evals;
+        private final long interval, first, warmupEnd, end;
+        private final SplittableRandom random;
+        private final CountDownLatch done;
+
+        Worker(List<String> formulas, String[] names, ExprContext context, int evals, long interval, long first,
+               long warmupEnd, long end, long seed, CountDownLatch done) {
+            this.formulas = formulas;
+            this.names = names;
+            this.context = context;
+            this.evals = evals;
+            this.interval = interval;
+            this.first = first;
+            this.warmupEnd = warmupEnd;
+            this.end = end;
+            this.random = new SplittableRandom(seed);
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void loop() {
+            double[] params = new double[names.length];
+            long next = first;
+            long allocStart = -1;
+            boolean measuring = false;
+
+            while (true) {
+                long intended;
+                if (interval > 0) {
+                    intended = next;
+                    next += interval;
+                    // Parking oversleeps, so spin for the last bit to start close to the schedule
+                    for (long now; (now = System.nanoTime()) - intended < 0; ) {
+                        if (intended - now > SPIN_NANOS)
+                            LockSupport.parkNanos(intended - now - SPIN_NANOS);
+                        else
+                            Thread.onSpinWait();
+                    }
+                } else {
+                    intended = System.nanoTime();
+                }
+                if (intended - end >= 0)
+                    break;
+                if (!measuring && intended - warmupEnd >= 0) {
+                    measuring = true;
+                    allocStart = allocatedBytes();
+                }
+
+                String formula = formulas.get(random.nextInt(formulas.size()));
+                for (int i = 0; i < params.length; i++)
+                    params[i] = random.nextDouble(-10, 10);
+
+                long t0 = System.nanoTime();
+                long t1 = t0, t2 = t0;
+                try {
+                    CtxExpression parsed = CtxExpression.parse(formula);
+                    t1 = System.nanoTime();
+                    Expression e = parsed.toContextless(context, names);
+                    t2 = System.nanoTime();
+                    for (int i = 0; i < evals; i++)
+                        sink += e.eval(params);
+                } catch (ParseException | EvalException exc) {
+                    errors++;
+                }
+                long t3 = System.nanoTime();
+
+                if (measuring) {
+                    parse.record(t1 - t0);
+                    compile.record(t2 - t1);
+                    eval.record(t3 - t2);
+                    total.record(t3 - intended);
+                }
+            }
+
+            long allocEnd = allocatedBytes();
+            if (allocStart >= 0 && allocEnd >= 0)
+                allocated = allocEnd - allocStart;
+        }
+    }
+
+    /**
+     * Returns the amount of bytes the current thread allocated so far, or -1 if that is not available.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+            return bean.getCurrentThreadAllocatedBytes();
+        return -1;
+    }
+
+    static Report run(Config config) throws InterruptedException {
+        List<String> formulas = Workload.generate(config.seed, config.formulas, config.params, config.depth, config.width, config.mix);
+        String[] names = Workload.paramNames(config.params);
+        ExprContext context = ExprContext.basicMath();
+        ThreadFactory factory = config.virtual ? virtualThreads() : Thread::new;
+
+        int n = config.threads;
+        long interval = config.rate > 0 ? (long) (1e9 * n / config.rate) : 0;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+        long warmupEnd = start + (long) (config.warmup * 1e9);
+        long end = warmupEnd + (long) (config.duration * 1e9);
+
+        CountDownLatch done = new CountDownLatch(n);
+        Worker[] workers = new Worker[n];
+        for (int i = 0; i < n; i++) {
+            // Threads are staggered over the interval, so that the operations are spread evenly
+            long first = start + interval * i / n;
+            workers[i] = new Worker(formulas, names, context, config.evals, interval, first, warmupEnd, end, config.seed * 31 + i, done);
+            factory.newThread(workers[i]).start();
+        }
+        done.await();
+
+        Histogram parse = new Histogram(), compile = new Histogram(), eval = new Histogram(), total = new Histogram();
+        long errors = 0, allocated = 0;
+        for (Worker w : workers) {
+            parse.add(w.parse);
+            compile.add(w.compile);
+            eval.add(w.eval);
+            total.add(w.total);
+            errors += w.errors;
+            allocated = allocated < 0 || w.allocated < 0 ? -1 : allocated + w.allocated;
+        }
+
+        long ops = total.count();
+        double bytesPerOp = allocated < 0 || ops == 0 ? -1 : (double) allocated / ops;
+        return new Report(config, ops, errors, config.duration, bytesPerOp, parse, compile, eval, total);
+    }
+
+    /**
+     * Returns a factory of virtual threads if the runtime supports them, and of platform threads otherwise. The library
+     * targets a Java version without virtual threads, hence the reflection.
+     */
+    private static ThreadFactory virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException exc) {
+            System.err.println("Virtual threads are not supported, using platform threads");
+            return Thread::new;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String threads = "1";
+        boolean virtual = false;
+        double rate = 0, duration = 10, warmup = 5;
+        int formulas = 1000, params = 4, depth = 4, width = 4, evals = 1;
+        Workload.Mix mix = Workload.Mix.MIXED;
+        long seed = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--virtual")) {
+                    virtual = true;
+                    continue;
+                }
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+
+                String value = args[++i];
+                switch (arg) {
+                    case "--threads" -> threads = value;
+                    case "--rate" -> rate = Double.parseDouble(value);
+                    case "--duration" -> duration = Double.parseDouble(value);
+                    case "--warmup" -> warmup = Double.parseDouble(value);
+                    case "--formulas" -> formulas = Integer.parseInt(value);
+                    case "--params" -> params = Integer.parseInt(value);
+                    case "--depth" -> depth = Integer.parseInt(value);
+                    case "--width" -> width = Integer.parseInt(value);
+                    case "--mix" -> mix = Workload.Mix.valueOf(value.toUpperCase());
+                    case "--evals" -> evals = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+
+            for (String count : threads.split(",")) {
+                Config config = new Config(
+                    Integer.parseInt(count.trim()), virtual, rate, duration, warmup,
+                    formulas, params, depth, width, mix, evals, seed
+                );
+                run(config).print(System.out);
+            }
+        } catch (IllegalArgumentException exc) {
+            System.err.println("eval-loadtest: " + exc.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net.shadew.eval.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random formulas over the parameters {@code x0}, {@code x1}, and so on. The depth is the maximum nesting of
+ * operations, and the width is the maximum amount of operands of sums, products and functions of many arguments.
+ * Besides arithmetic, formulas contain powers and conditionals, and the mix determines which functions appear.
+ * Workloads are deterministic for a given seed.
+ */
+final class Workload {
+    enum Mix {
+        /**
+         * Only arithmetic operators.
+         */
+        ARITHMETIC(),
+
+        /**
+         * Cheap functions, such as {@code abs}, {@code floor} and {@code max}.
+         */
+        BASIC("abs", "sign", "floor", "ceil", "round", "sqrt", "max", "min", "avg"),
+
+        /**
+         * Expensive functions, such as {@code sin}, {@code exp} and {@code ln}.
+         */
+        TRANSCENDENTAL("sin", "cos", "tan", "atan", "sinh", "tanh", "exp", "ln", "log10", "cbrt"),
+
+        /**
+         * Both cheap and expensive functions.
+         */
+        MIXED("abs", "floor", "sqrt", "max", "min", "sum", "sin", "cos", "exp", "ln", "atan", "tanh");
+
+        final String[] functions;
+
+        Mix(String... functions) {
+            this.functions = functions;
+        }
+
+        boolean isVariadic(String function) {
+            return switch (function) {
+                case "max", "min", "avg", "sum", "prod" -> true;
+                default -> false;
+            };
+        }
+    }
+
+    private final Random random;
+    private final int params;
+    private final int width;
+    private final Mix mix;
+
+    private Workload(long seed, int params, int width, Mix mix) {
+        this.random = new Random(seed);
+        this.params = params;
+        this.width = width;
+        this.mix = mix;
+    }
+
+    static String[] paramNames(int params) {
+        String[] names = new String[params];
+        for (int i = 0; i < params; i++)
+            names[i] = "x" + i;
+        return names;
+    }
+
+    static List<String> generate(long seed, int count, int params, int depth, int width, Mix mix) {
+        if (params < 1 || depth < 0 || width < 2 || count < 0)
+            throw new IllegalArgumentException("Invalid workload");
+
+        Workload w = new Workload(seed, params, width, mix);
+        List<String> formulas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder b = new StringBuilder();
+            w.expr(b, depth);
+            formulas.add(b.toString());
+        }
+        return formulas;
+    }
+
+    private void expr(StringBuilder b, int depth) {
+        // Leaves become more likely deeper down, but the top is never a leaf
+        if (depth == 0 || b.length() > 0 && random.nextInt(depth + 2) == 0) {
+            leaf(b);
+            return;
+        }
+
+        int choice = random.nextInt(mix.functions.length > 0 ? 10 : 7);
+        if (choice < 3) {
+            operands(b, depth, random.nextBoolean() ? " + " : " - ");
+        } else if (choice < 5) {
+            operands(b, depth, random.nextInt(4) == 0 ? " / " : " * ");
+        } else if (choice == 5) {
+            b.append('(');
+            expr(b, depth - 1);
+            b.append(") ^ ").append(random.nextInt(4) + 1);
+        } else if (choice == 6) {
+            b.append('(');
+            expr(b, depth - 1);
+            b.append(random.nextBoolean() ? " < " : " >= ");
+            expr(b, depth - 1);
+            b.append(" ? ");
+            expr(b, depth - 1);
+            b.append(" : ");
+            expr(b, depth - 1);
+            b.append(')');
+        } else {
+            String function = mix.functions[random.nextInt(mix.functions.length)];
+            b.append(function).append('(');
+            int args = mix.isVariadic(function) ? 2 + random.nextInt(width - 1) : 1;
+            for (int i = 0; i < args; i++) {
+                if (i > 0)
+                    b.append(", ");
+                expr(b, depth - 1);
+            }
+            b.append(')');
+        }
+    }
+
+    private void operands(StringBuilder b, int depth, String op) {
+        int n = 2 + random.nextInt(width - 1);
+        b.append('(');
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                b.append(op);
+            expr(b, depth - 1);
+        }
+        b.append(')');
+    }
+
+    private void leaf(StringBuilder b) {
+        if (random.nextInt(3) == 0)
+            b.append(random.nextInt(100) / 10.0);
+        else
+            b.append('x').append(random.nextInt(params));
+    }
+}
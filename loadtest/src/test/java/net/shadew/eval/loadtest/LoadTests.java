@@ -0,0 +1,72 @@
+package net.shadew.eval.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.Expression;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadTests {
+    @Test
+    void testHistogram() {
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        Histogram a = new Histogram(), b = new Histogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);
+            (i % 2 == 0 ? a : b).record(values[i]);
+        }
+        a.add(b);
+        Arrays.sort(values);
+
+        assertEquals(values.length, a.count());
+        assertEquals(values[values.length - 1], a.max());
+        for (double p : new double[] {0, 1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(p / 100 * values.length) - 1)];
+            long estimate = a.percentile(p);
+            assertTrue(estimate >= exact && estimate <= exact * 1.01 + 1, p + ": " + estimate + " vs " + exact);
+        }
+
+        Histogram small = new Histogram();
+        small.record(-5);
+        small.record(3);
+        assertEquals(0, small.percentile(50));
+        assertEquals(3, small.percentile(100));
+        assertEquals(0, new Histogram().percentile(99));
+    }
+
+    @Test
+    void testWorkload() throws Exception {
+        ExprContext context = ExprContext.basicMath();
+        for (Workload.Mix mix : Workload.Mix.values()) {
+            List<String> formulas = Workload.generate(5, 200, 3, 5, 3, mix);
+            assertEquals(formulas, Workload.generate(5, 200, 3, 5, 3, mix));
+            for (String formula : formulas) {
+                Expression e = CtxExpression.parse(formula).toContextless(context, Workload.paramNames(3));
+                e.eval(1, -2, 0.5);
+            }
+        }
+        assertEquals(List.of("x0", "x1"), List.of(Workload.paramNames(2)));
+        assertThrows(IllegalArgumentException.class, () -> Workload.generate(5, 10, 0, 5, 3, Workload.Mix.BASIC));
+    }
+
+    @Test
+    void testRun() throws Exception {
+        LoadTest.Config config = new LoadTest.Config(2, false, 1000, 0.3, 0.1, 50, 3, 3, 3, Workload.Mix.MIXED, 2, 1);
+        LoadTest.Report report = LoadTest.run(config);
+        assertEquals(0, report.errors());
+        assertTrue(report.ops() > 200 && report.ops() <= 302, "ops: " + report.ops());
+        assertEquals(report.ops(), report.parse().count());
+        assertTrue(report.total().percentile(50) >= report.eval().percentile(50));
+
+        LoadTest.Report unthrottled = LoadTest.run(new LoadTest.Config(1, false, 0, 0.1, 0, 50, 3, 3, 3, Workload.Mix.BASIC, 1, 1));
+        assertTrue(unthrottled.ops() > 0);
+        assertThrows(IllegalArgumentException.class, () -> new LoadTest.Config(0, false, 0, 1, 0, 50, 3, 3, 3, Workload.Mix.BASIC, 1, 1));
+    }
+}
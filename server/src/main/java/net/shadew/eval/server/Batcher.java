@@ -0,0 +1,142 @@
+package net.shadew.eval.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.shadew.eval.EvalException;
+import net.shadew.eval.Expression;
+import net.shadew.eval.ExpressionSet;
+
+/**
+ * Coalesces concurrent evaluations of one expression into batches. The first request that arrives while no batch is
+ * being collected becomes the leader: it waits until the batch is full or the maximum wait has passed, then takes all
+ * waiting requests and evaluates them in one batch on behalf of all of them. The other requests just wait for their
+ * result.
+ * <p>
+ * Waiting is done with {@link ReentrantLock} and {@link CompletableFuture}, so that waiting virtual threads release
+ * their carrier thread.
+ */
+final class Batcher {
+    private final Expression expr;
+    private final ExpressionSet set;
+    private final int arity;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition full = lock.newCondition();
+    private List<Request> queue = new ArrayList<>();
+    private boolean collecting;
+
+    Batcher(Expression expr, int arity, int maxBatch, long maxWaitNanos) {
+        this.expr = expr;
+        this.set = ExpressionSet.of(expr);
+        this.arity = arity;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    int arity() {
+        return arity;
+    }
+
+    double eval(double[] params) throws EvalException, InterruptedException {
+        Request request = new Request(params);
+        boolean leader;
+
+        lock.lock();
+        try {
+            queue.add(request);
+            leader = !collecting;
+            if (leader)
+                collecting = true;
+            else if (queue.size() >= maxBatch)
+                full.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader)
+            run(collect());
+
+        try {
+            return request.result.get();
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof EvalException evalExc)
+                throw evalExc;
+            throw new IllegalStateException(exc.getCause());
+        }
+    }
+
+    private List<Request> collect() {
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            long remaining = maxWaitNanos;
+            while (queue.size() < maxBatch && remaining > 0) {
+                try {
+                    remaining = full.awaitNanos(remaining);
+                } catch (InterruptedException exc) {
+                    // Still run the batch, the other requests in it depend on this thread
+                    interrupted = true;
+                    break;
+                }
+            }
+
+            List<Request> batch = queue;
+            queue = new ArrayList<>();
+            collecting = false;
+            return batch;
+        } finally {
+            lock.unlock();
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(List<Request> batch) {
+        int n = batch.size();
+        double[][] columns = new double[arity][n];
+        for (int i = 0; i < n; i++) {
+            double[] params = batch.get(i).params;
+            for (int p = 0; p < arity; p++)
+                columns[p][i] = params[p];
+        }
+
+        double[][] out = new double[1][n];
+        try {
+            set.evalBatch(out, columns);
+        } catch (RuntimeException exc) {
+            // Don't leave anyone waiting forever
+            for (Request r : batch)
+                r.result.completeExceptionally(exc);
+            return;
+        } catch (EvalException exc) {
+            // Some row failed, evaluate row by row so that only the failing requests fail
+            for (Request r : batch) {
+                try {
+                    r.result.complete(expr.eval(r.params));
+                } catch (EvalException | RuntimeException e) {
+                    r.result.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < n; i++)
+            batch.get(i).result.complete(out[0][i]);
+    }
+
+    private static final class Request {
+        final double[] params;
+        final CompletableFuture<Double> result = new CompletableFuture<>();
+
+        Request(double[] params) {
+            this.params = params;
+        }
+    }
+}
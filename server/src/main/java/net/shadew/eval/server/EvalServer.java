@@ -0,0 +1,259 @@
+package net.shadew.eval.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.EvalException;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.ParseException;
+
+/**
+ * A TCP server evaluating expressions, listening on the loopback address only. Each connection is served by its own
+ * thread, which is a virtual thread when the runtime supports them.
+ * <p>
+ * The protocol is line based. Every request is one line of the form {@code params;formula;values}, where
+ * {@code params} is a comma separated list of parameter names, {@code formula} is an expression as accepted by
+ * {@link CtxExpression#parse}, and {@code values} is a comma separated list of parameter values, one for each
+ * parameter. For example: {@code x,y;sin(x) * y;1.5,2}. Every request is answered with one line, in order: either
+ * {@code OK value} or {@code ERR message}.
+ * <p>
+ * Compiled formulas are kept in a shared cache. Concurrent requests for the same formula, from any connection, are
+ * coalesced into micro-batches that are evaluated at once. A request waits at most the configured maximum wait for
+ * other requests to join its batch.
+ * <p>
+ * The context is read by multiple threads at once, so it must not be modified while the server is running.
+ */
+public class EvalServer implements Closeable {
+    private final ExprContext context;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final Map<String, Batcher> cache;
+    private final ServerSocket socket;
+    private final ThreadFactory threads = threadFactory();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a server with default settings: batches of at most 256 requests, a maximum wait of 200 microseconds, and
+     * a cache of 1024 formulas.
+     *
+     * @param context The context to read variables and functions from
+     * @param port    The port to listen on, or 0 to pick any free port
+     * @throws IOException If the port can't be bound
+     */
+    public EvalServer(ExprContext context, int port) throws IOException {
+        this(context, port, 256, 200, TimeUnit.MICROSECONDS, 1024);
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param context   The context to read variables and functions from
+     * @param port      The port to listen on, or 0 to pick any free port
+     * @param maxBatch  The amount of requests at which a batch is evaluated without waiting further
+     * @param maxWait   The maximum time a request waits for other requests to join its batch
+     * @param unit      The unit of the maximum wait
+     * @param cacheSize The maximum amount of compiled formulas to keep
+     * @throws IOException              If the port can't be bound
+     * @throws IllegalArgumentException If the batch size or cache size is less than 1, or if the maximum wait is
+     *                                  negative
+     */
+    public EvalServer(ExprContext context, int port, int maxBatch, long maxWait, TimeUnit unit, int cacheSize) throws IOException {
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        if (cacheSize < 1)
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        if (maxWait < 0)
+            throw new IllegalArgumentException("Negative maximum wait");
+
+        this.context = context;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Batcher> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Starts accepting connections on a separate thread.
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "EvalServer acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Stops accepting connections and closes all open connections.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        for (Socket s : connections)
+            s.close();
+    }
+
+    private void acceptLoop() {
+        while (!socket.isClosed()) {
+            try {
+                Socket s = socket.accept();
+                connections.add(s);
+                threads.newThread(() -> serve(s)).start();
+            } catch (IOException exc) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        try (s) {
+            s.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(handle(line));
+                out.write('\n');
+
+                // Pipelined requests are answered together
+                if (!in.ready())
+                    out.flush();
+            }
+            out.flush();
+        } catch (IOException exc) {
+            // Connection closed or broken, so there is nothing left to report the failure on
+        } finally {
+            connections.remove(s);
+        }
+    }
+
+    /**
+     * Handles one request line and returns the response line. Unexpected exceptions, such as those thrown by functions
+     * of the context, are answered with an error, so that they don't end the connection.
+     */
+    String handle(String line) {
+        try {
+            return respond(line);
+        } catch (RuntimeException exc) {
+            Throwable cause = exc instanceof IllegalStateException && exc.getCause() != null ? exc.getCause() : exc;
+            return "ERR " + String.valueOf(cause).replace('\n', ' ');
+        }
+    }
+
+    private String respond(String line) {
+        int first = line.indexOf(';');
+        int last = line.lastIndexOf(';');
+        if (first < 0 || first == last)
+            return "ERR Expected 'params;formula;values'";
+
+        String params = line.substring(0, first).trim();
+        String formula = line.substring(first + 1, last);
+        String values = line.substring(last + 1).trim();
+
+        Batcher batcher;
+        try {
+            batcher = batcher(params, formula);
+        } catch (ParseException exc) {
+            return "ERR " + exc.getMessage().replace('\n', ' ');
+        }
+
+        double[] args = new double[batcher.arity()];
+        String[] parts = values.isEmpty() ? new String[0] : values.split(",");
+        if (parts.length != args.length)
+            return "ERR Expected " + args.length + " value(s), got " + parts.length;
+        try {
+            for (int i = 0; i < parts.length; i++)
+                args[i] = Double.parseDouble(parts[i].trim());
+        } catch (NumberFormatException exc) {
+            return "ERR Illegal number";
+        }
+
+        try {
+            return "OK " + batcher.eval(args);
+        } catch (EvalException exc) {
+            return "ERR " + exc.getMessage();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            return "ERR Interrupted";
+        }
+    }
+
+    private Batcher batcher(String params, String formula) throws ParseException {
+        String key = params + ';' + formula;
+        synchronized (cache) {
+            Batcher b = cache.get(key);
+            if (b != null)
+                return b;
+        }
+
+        // Compile outside the lock, at worst two threads compile the same formula
+        String[] names = params.isEmpty() ? new String[0] : params.split(",");
+        for (int i = 0; i < names.length; i++)
+            names[i] = names[i].trim();
+        CtxExpression expr = CtxExpression.parse(formula);
+        Batcher b = new Batcher(expr.toContextless(context, names), names.length, maxBatch, maxWaitNanos);
+
+        synchronized (cache) {
+            Batcher existing = cache.putIfAbsent(key, b);
+            return existing != null ? existing : b;
+        }
+    }
+
+    /**
+     * Returns a factory of virtual threads if the runtime supports them, and of daemon platform threads otherwise. The
+     * library targets a Java version without virtual threads, hence the reflection.
+     */
+    private static ThreadFactory threadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException exc) {
+            return task -> {
+                Thread t = new Thread(task, "EvalServer connection");
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+    /**
+     * Runs a server on the given port, or on port 7070 if none is given, with the basic math functions available.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+
+        EvalServer server = new EvalServer(ExprContext.basicMath(), port);
+        server.start();
+        System.out.println("Listening on localhost:" + server.port());
+        Thread.currentThread().join();
+    }
+}
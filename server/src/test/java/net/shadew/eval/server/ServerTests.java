@@ -0,0 +1,168 @@
+package net.shadew.eval.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.EvalException;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.ExprFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerTests {
+    ExprContext context;
+    EvalServer server;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        context = new ExprContext();
+        context.addBasicMath();
+        server = new EvalServer(context, 0);
+    }
+
+    @AfterEach
+    void afterEach() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void testHandle() {
+        assertEquals("OK " + Math.sin(1.5) * 2, server.handle("x,y;sin(x) * y;1.5,2"));
+        assertEquals("OK " + Math.PI, server.handle(";PI;"));
+        assertEquals("OK 1.0", server.handle("x;x < 0 ? -1 : 1;3"));
+        assertTrue(server.handle("x;x +;1").startsWith("ERR"));
+        assertTrue(server.handle("x;x;1,2").startsWith("ERR"));
+        assertTrue(server.handle("x;x;abc").startsWith("ERR"));
+        assertTrue(server.handle("x;unknown(x);1").startsWith("ERR"));
+        assertTrue(server.handle("garbage").startsWith("ERR"));
+    }
+
+    @Test
+    void testUnexpectedErrors() throws Exception {
+        context.defineFunc("broken", ExprFunction.noMutation(args -> {
+            throw new ArithmeticException("Broken");
+        }));
+        assertEquals("ERR java.lang.ArithmeticException: Broken", server.handle("x;broken(x);1"));
+
+        // The connection stays open
+        server.start();
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            out.println("x;broken(x) + 1;2");
+            assertTrue(in.readLine().startsWith("ERR"));
+            out.println("x;x + 1;2");
+            assertEquals("OK 3.0", in.readLine());
+        }
+    }
+
+    @Test
+    void testBatchErrors() throws Exception {
+        context.defineFunc("check", ExprFunction.noMutation(args -> {
+            if (args[0] < 0)
+                throw new EvalException("Negative");
+            return args[0];
+        }));
+
+        Batcher batcher = new Batcher(
+            CtxExpression.parse("check(x)").toContextless(context, "x"),
+            1, 64, TimeUnit.MILLISECONDS.toNanos(20)
+        );
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            @SuppressWarnings("unchecked")
+            Future<Double>[] results = new Future[8];
+            for (int i = 0; i < 8; i++) {
+                double x = i % 2 == 0 ? i : -i;
+                results[i] = pool.submit(() -> batcher.eval(new double[] {x}));
+            }
+
+            for (int i = 0; i < 8; i++) {
+                if (i % 2 == 0) {
+                    assertEquals(i, results[i].get(), 0);
+                } else {
+                    Future<Double> result = results[i];
+                    Exception exc = assertThrows(Exception.class, result::get);
+                    assertTrue(exc.getCause() instanceof EvalException);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testBatching() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("f", ExprFunction.noMutation(args -> {
+            calls.incrementAndGet();
+            return args[0] * 2;
+        }));
+
+        Batcher batcher = new Batcher(
+            CtxExpression.parse("f(x) + 1").toContextless(context, "x"),
+            1, 1000, TimeUnit.MILLISECONDS.toNanos(20)
+        );
+
+        int n = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        try {
+            @SuppressWarnings("unchecked")
+            Future<Double>[] results = new Future[n];
+            for (int i = 0; i < n; i++) {
+                double x = i;
+                results[i] = pool.submit(() -> batcher.eval(new double[] {x}));
+            }
+            for (int i = 0; i < n; i++)
+                assertEquals(i * 2 + 1, results[i].get(), 0);
+            assertEquals(n, calls.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConnection() throws Exception {
+        server.start();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            @SuppressWarnings("unchecked")
+            Future<?>[] clients = new Future[4];
+            for (int c = 0; c < 4; c++) {
+                int client = c;
+                clients[c] = pool.submit(() -> {
+                    try (Socket s = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                        PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8);
+                        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                        for (int i = 0; i < 50; i++) {
+                            out.println("x,y;x * y + 1;" + i + "," + client);
+                            assertEquals("OK " + (i * client + 1.0), in.readLine());
+                        }
+                        out.println("x;x +;1");
+                        assertTrue(in.readLine().startsWith("ERR"));
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> client : clients)
+                client.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -1,12 +1,58 @@
 package net.shadew.eval;
 
-interface BinaryOp {
-    BinaryOp ADD = Double::sum;
-    BinaryOp SUB = (l, r) -> l - r;
-    BinaryOp MUL = (l, r) -> l * r;
-    BinaryOp DIV = (l, r) -> l / r;
-    BinaryOp MOD = (l, r) -> l % r;
-    BinaryOp POW = Math::pow;
-
-    double apply(double l, double r);
+/**
+ * The binary operators. The operations are implemented with a switch rather than with a method body per constant, so
+ * that every call site that applies an operator stays monomorphic.
+ */
+enum BinaryOp {
+    ADD, SUB, MUL, DIV, MOD, POW, LT, LE, GT, GE, EQ, NE;
+
+    /**
+     * The range of a comparison, which is 1 when it certainly holds, 0 when it certainly does not hold, and either of
+     * both otherwise. Comparisons involving NaN are false, which {@link Interval#ENTIRE} accounts for since it never
+     * certainly holds.
+     */
+    private static Interval truth(boolean definitelyTrue, boolean definitelyFalse) {
+        if (definitelyTrue && definitelyFalse)
+            return new Interval(0, 1);
+        if (definitelyTrue)
+            return Interval.ONE;
+        if (definitelyFalse)
+            return Interval.ZERO;
+        return new Interval(0, 1);
+    }
+
+    double apply(double l, double r) {
+        return switch (this) {
+            case ADD -> l + r;
+            case SUB -> l - r;
+            case MUL -> l * r;
+            case DIV -> l / r;
+            case MOD -> l % r;
+            case POW -> Math.pow(l, r);
+            case LT -> l < r ? 1 : 0;
+            case LE -> l <= r ? 1 : 0;
+            case GT -> l > r ? 1 : 0;
+            case GE -> l >= r ? 1 : 0;
+            case EQ -> l == r ? 1 : 0;
+            case NE -> l != r ? 1 : 0;
+        };
+    }
+
+    Interval apply(Interval l, Interval r) {
+        return switch (this) {
+            case ADD -> l.add(r);
+            case SUB -> l.sub(r);
+            case MUL -> l.mul(r);
+            case DIV -> l.div(r);
+            case MOD -> l.mod(r);
+            case POW -> l.pow(r);
+            case LT -> truth(l.hi() < r.lo(), l.lo() >= r.hi());
+            case LE -> truth(l.hi() <= r.lo(), l.lo() > r.hi());
+            case GT -> truth(l.lo() > r.hi(), l.hi() <= r.lo());
+            case GE -> truth(l.lo() >= r.hi(), l.hi() < r.lo());
+            case EQ -> truth(l.isPoint() && r.isPoint() && l.lo() == r.lo(), l.hi() < r.lo() || r.hi() < l.lo());
+            case NE -> truth(l.hi() < r.lo() || r.hi() < l.lo(), l.isPoint() && r.isPoint() && l.lo() == r.lo());
+        };
+    }
 }
@@ -0,0 +1,80 @@
+package net.shadew.eval;
+
+/**
+ * Estimates the cost of evaluating expressions, where adding two numbers costs 1. Reading constants, parameters and
+ * variables is free. Conditionals cost their condition plus their most expensive operand, so the estimate is an upper
+ * bound for tree evaluation.
+ */
+final class Cost {
+    private Cost() {
+    }
+
+    static double of(BinaryOp op) {
+        return switch (op) {
+            case DIV -> 4;
+            case MOD -> 8;
+            case POW -> 40;
+            default -> 1;
+        };
+    }
+
+    static double of(Expression e) {
+        if (e instanceof EConstant || e instanceof EParam || e instanceof EError)
+            return 0;
+        if (e instanceof EBinary b)
+            return of(b.el()) + of(b.er()) + of(b.op());
+        if (e instanceof EUnary u)
+            return of(u.e()) + 1;
+        if (e instanceof EChain c) {
+            double cost = of(c.operands()[0]);
+            for (int i = 1; i < c.operands().length; i++)
+                cost += of(c.operands()[i]) + of(c.ops()[i]);
+            return cost;
+        }
+        if (e instanceof EFunction f) {
+            double cost = f.function().cost();
+            for (Expression arg : f.exprs())
+                cost += of(arg);
+            return cost;
+        }
+        if (e instanceof ESelect s)
+            return of(s.cond()) + Math.max(of(s.then()), of(s.otherwise())) + 1;
+        if (e instanceof EPolynomial p)
+            return of(p.x()) + 2 * (p.coeffs().length - 1);
+        if (e instanceof EBound b)
+            return of(b.e()) + b.indices().length;
+        if (e instanceof EChebyshev)
+            return 2 * EChebyshev.MAX_DEGREE + 8;
+        if (e instanceof TieredExpression t)
+            return of(t.expression());
+
+        // An expression we can't look into
+        return ExprFunction.DEFAULT_COST;
+    }
+
+    static double of(CtxExpression e, ExprContext context) {
+        if (e instanceof EConstant || e instanceof ECVariable)
+            return 0;
+        if (e instanceof ECBinary b)
+            return of(b.el(), context) + of(b.er(), context) + of(b.op());
+        if (e instanceof ECUnary u)
+            return of(u.e(), context) + 1;
+        if (e instanceof ECChain c) {
+            double cost = of(c.operands()[0], context);
+            for (int i = 1; i < c.operands().length; i++)
+                cost += of(c.operands()[i], context) + of(c.ops()[i]);
+            return cost;
+        }
+        if (e instanceof ECFunction f) {
+            ExprFunction fn = context.func(f.function());
+            double cost = fn == null ? 0 : fn.cost();
+            for (CtxExpression arg : f.exprs())
+                cost += of(arg, context);
+            return cost;
+        }
+        if (e instanceof ECSelect s)
+            return of(s.cond(), context) + Math.max(of(s.then(), context), of(s.otherwise(), context)) + 1;
+
+        return ExprFunction.DEFAULT_COST;
+    }
+}
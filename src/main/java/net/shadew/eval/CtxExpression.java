@@ -1,5 +1,7 @@
 package net.shadew.eval;
 
+import java.util.List;
+
 /**
  * An expression that requires an {@link ExprContext} to evaluate.
  */
@@ -28,6 +30,34 @@ public interface CtxExpression {
      */
     Expression toContextless(ExprContext context, String... paramNames);
 
+    /**
+     * Estimates the cost of evaluating this expression in the given context, like {@link Expression#estimateCost()}
+     * does. Functions are looked up in the context to find their cost, calls to undefined functions are free since
+     * they fail immediately. Unlike {@link #toContextless}, this does not simplify the expression first, so it is an
+     * estimate of the cost of the expression as written.
+     *
+     * @param context The context to look up functions in
+     * @return The estimated cost
+     */
+    default double estimateCost(ExprContext context) {
+        return Cost.of(this, context);
+    }
+
+    /**
+     * Computes a conservative range of this expression, given a range for each named parameter. Other variable
+     * references are looked up in the given context, as if they were constants. See {@link Expression#evalInterval}.
+     *
+     * @param context    The context to read variables from
+     * @param paramNames The parameter names
+     * @param params     The parameter ranges, in the same order as the parameter names
+     * @return The range of the result
+     *
+     * @throws EvalException If evaluation fails
+     */
+    default Interval evalInterval(ExprContext context, String[] paramNames, Interval... params) throws EvalException {
+        return toContextless(context, paramNames).evalInterval(params);
+    }
+
     /**
      * Parses an expression from a string. The syntax allows the following:
      * <ul>
@@ -42,6 +72,9 @@ public interface CtxExpression {
      * <li>Addition/subtraction: {@code a + b}, {@code a - b}</li>
      * <li>Multiplication/division/modulo: {@code a * b}, {@code a / b}, {@code a % b}</li>
      * <li>Power: {@code a ^ b}</li>
+     * <li>Comparisons: {@code a < b}, {@code a <= b}, {@code a > b}, {@code a >= b}, {@code a == b}, {@code a != b}</li>
+     * <li>Logical operators: {@code !a}, {@code a && b}, {@code a || b}</li>
+     * <li>Conditionals: {@code c ? a : b}</li>
      * <li>Function calls: {@code foo(bar, baz)}</li>
      * <li>Whitespaces, which are ignored (any character matched by {@link Character#isWhitespace(int)} is valid)</li>
      * </ul>
@@ -49,20 +82,81 @@ public interface CtxExpression {
      * Operator precedence is as follows (higher entries have higher precedence):
      * <ul>
      * <li>{@code (a)}, {@code |a|}</li>
-     * <li>{@code +a}, {@code -a}</li>
+     * <li>{@code +a}, {@code -a}, {@code !a}</li>
      * <li>{@code a^b}</li>
      * <li>{@code a*b}, {@code a/b}, {@code a%b}</li>
      * <li>{@code a+b}, {@code a-b}</li>
+     * <li>{@code a<b}, {@code a<=b}, {@code a>b}, {@code a>=b}</li>
+     * <li>{@code a==b}, {@code a!=b}</li>
+     * <li>{@code a&&b}</li>
+     * <li>{@code a||b}</li>
+     * <li>{@code c?a:b}, which groups to the right</li>
      * </ul>
      *
+     * Comparisons and logical operators result in 1 when true and 0 when false. Any value other than 0, including NaN,
+     * counts as true. The operators {@code &&} and {@code ||} and the conditional only evaluate the operand they need,
+     * except in an {@link ExpressionSet}, which evaluates all operands and selects the result without branching.
+     * Within vertical bars, {@code ||} is read as two bars, so an or-operation inside an absolute value needs
+     * parentheses: {@code |(a || b)|}.
+     * <p>
+     * Expressions are parsed with the {@linkplain ParseLimits#DEFAULT default limits}, which reject expressions that
+     * are nested too deeply. Use {@link #parse(String, ParseLimits)} to parse untrusted input with stricter limits.
+     *
      * @param expr The expression to parse
      * @return The parsed expression
      *
-     * @throws ParseException If the expression syntax is correct.
+     * @throws ParseException If the expression syntax is incorrect, or if it is nested too deeply.
      */
     static CtxExpression parse(String expr) throws ParseException {
+        return parse(expr, ParseLimits.DEFAULT);
+    }
+
+    /**
+     * Parses an expression from a string, rejecting it if it exceeds the given limits. See {@link #parse(String)} for
+     * the syntax.
+     *
+     * @param expr   The expression to parse
+     * @param limits The limits on the size of the expression
+     * @return The parsed expression
+     *
+     * @throws ParseException If the expression syntax is incorrect, or if the expression exceeds the limits
+     */
+    static CtxExpression parse(String expr, ParseLimits limits) throws ParseException {
         Parser p = Parser.parser.get();
-        p.input(expr);
-        return p.parseExpr();
+        p.input(expr, limits);
+        return p.parse();
+    }
+
+    /**
+     * Parses many expressions at once, in parallel. See {@link #parse(String)} for the syntax.
+     * <p>
+     * Structurally equal subexpressions, within one expression or across different expressions, are parsed into the
+     * same instance. The returned expressions thus form a graph in which common subexpressions are shared, which takes
+     * far less memory than separate trees when the expressions have much in common. Since expressions are immutable,
+     * the sharing is not observable otherwise.
+     *
+     * @param exprs The expressions to parse
+     * @return The parsed expressions, in the same order
+     *
+     * @throws ParseException If the syntax of any of the expressions is incorrect. When multiple expressions are
+     *                        incorrect, the exception of the first of them is thrown.
+     */
+    static List<CtxExpression> parseAll(List<String> exprs) throws ParseException {
+        return Parser.parseAll(exprs, ParseLimits.DEFAULT);
+    }
+
+    /**
+     * Parses many expressions at once, in parallel, like {@link #parseAll(List)}, rejecting any expression that
+     * exceeds the given limits.
+     *
+     * @param exprs  The expressions to parse
+     * @param limits The limits on the size of each expression
+     * @return The parsed expressions, in the same order
+     *
+     * @throws ParseException If the syntax of any of the expressions is incorrect, or if any of them exceeds the
+     *                        limits
+     */
+    static List<CtxExpression> parseAll(List<String> exprs, ParseLimits limits) throws ParseException {
+        return Parser.parseAll(exprs, limits);
     }
 }
@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record EAbs(Expression e) implements EUnary {
+    @Override
+    public UnaryOp op() {
+        return UnaryOp.ABS;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return Math.abs(e.eval(params));
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return e.evalInterval(params).abs();
+    }
+}
@@ -1,8 +1,34 @@
 package net.shadew.eval;
 
-record EBinary(Expression el, Expression er, BinaryOp op) implements Expression {
-    @Override
-    public double eval(double... params) throws EvalException {
-        return op.apply(el.eval(params), er.eval(params));
+/**
+ * A binary operation. Rather than one node class that applies its operator, each arithmetic operator has its own
+ * node class so that the JIT can inline the arithmetic into the evaluation of the node. Operations on parameters and
+ * constants, which are the leaves of nearly every formula, get dedicated nodes that don't need to evaluate their
+ * operands through the {@link Expression} interface. Use {@link #of} to create the right node for an operation.
+ */
+interface EBinary extends Expression {
+    Expression el();
+
+    Expression er();
+
+    BinaryOp op();
+
+    static EBinary of(Expression l, Expression r, BinaryOp op) {
+        if (l instanceof EParam pl && r instanceof EConstant cr)
+            return new EParamConst(pl, cr, op);
+        if (l instanceof EConstant cl && r instanceof EParam pr)
+            return new EConstParam(cl, pr, op);
+        if (l instanceof EParam pl && r instanceof EParam pr)
+            return new EParamParam(pl, pr, op);
+
+        return switch (op) {
+            case ADD -> new EAdd(l, r);
+            case SUB -> new ESub(l, r);
+            case MUL -> new EMul(l, r);
+            case DIV -> new EDiv(l, r);
+            case MOD -> new EMod(l, r);
+            case POW -> new EPow(l, r);
+            default -> new ECompare(l, r, op);
+        };
     }
 }
@@ -0,0 +1,55 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * An expression with some of its parameters bound to values, for expressions that can't be simplified by binding.
+ * The bound parameter indices are in increasing order.
+ */
+record EBound(Expression e, int[] indices, double[] values) implements Expression {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return e.eval(expand(params, new double[size(params.length)]));
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        Interval[] full = new Interval[size(params.length)];
+        Arrays.fill(full, Interval.ENTIRE);
+        int p = 0;
+        for (int i = 0, b = 0; i < full.length; i++) {
+            if (b < indices.length && indices[b] == i)
+                full[i] = Interval.of(values[b++]);
+            else if (p < params.length)
+                full[i] = params[p++];
+        }
+        return e.evalInterval(full);
+    }
+
+    private int size(int unbound) {
+        return Math.max(unbound + indices.length, indices[indices.length - 1] + 1);
+    }
+
+    private double[] expand(double[] params, double[] full) {
+        // Parameters between the unbound ones and a higher bound one are undefined
+        Arrays.fill(full, Double.NaN);
+        int p = 0;
+        for (int i = 0, b = 0; i < full.length; i++) {
+            if (b < indices.length && indices[b] == i)
+                full[i] = values[b++];
+            else if (p < params.length)
+                full[i] = params[p++];
+        }
+        return full;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EBound b && e.equals(b.e) && Arrays.equals(indices, b.indices) && Arrays.equals(values, b.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return (e.hashCode() * 31 + Arrays.hashCode(indices)) * 31 + Arrays.hashCode(values);
+    }
+}
@@ -12,13 +12,6 @@ record ECBinary(CtxExpression el, CtxExpression er, BinaryOp op) implements CtxE
         if (l instanceof EError)
             return l;
 
-        Expression r = er.toContextless(context, paramNames);
-        if (r instanceof EError)
-            return r;
-
-        if (l instanceof EConstant cl && r instanceof EConstant cr)
-            return new EConstant(op.apply(cl.val(), cr.val()));
-
-        return new EBinary(l, r, op);
+        return Fold.binary(l, er.toContextless(context, paramNames), op);
     }
 }
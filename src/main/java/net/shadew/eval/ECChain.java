@@ -0,0 +1,39 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * A left-associative chain of binary operations, {@code ((operands[0] ops[1] operands[1]) ops[2] operands[2]) ...},
+ * stored flat so that long chains don't nest deeply. The first element of {@code ops} is unused.
+ */
+record ECChain(BinaryOp[] ops, CtxExpression[] operands) implements CtxExpression {
+    @Override
+    public double eval(ExprContext ctx) throws EvalException {
+        double v = operands[0].eval(ctx);
+        for (int i = 1, l = operands.length; i < l; i++)
+            v = ops[i].apply(v, operands[i].eval(ctx));
+        return v;
+    }
+
+    @Override
+    public Expression toContextless(ExprContext context, String... paramNames) {
+        Expression[] es = new Expression[operands.length];
+        for (int i = 0, l = operands.length; i < l; i++) {
+            Expression e = es[i] = operands[i].toContextless(context, paramNames);
+            if (e instanceof EError)
+                return e;
+        }
+
+        return Fold.chain(ops, es, false);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ECChain c && Arrays.equals(ops, c.ops) && Arrays.equals(operands, c.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ops) * 31 + Arrays.hashCode(operands);
+    }
+}
@@ -1,5 +1,7 @@
 package net.shadew.eval;
 
+import java.util.Arrays;
+
 record ECFunction(String function, CtxExpression... exprs) implements CtxExpression {
     @Override
     public double eval(ExprContext ctx) throws EvalException {
@@ -19,28 +21,22 @@ record ECFunction(String function, CtxExpression... exprs) implements CtxExpress
                 return e;
         }
 
-        if (!context.hasFunc(function))
+        ExprFunction fn = context.func(function);
+        if (fn == null)
             return new EError("No such function '" + function + "'");
+        if (fn instanceof InlineFunction inline)
+            return inline.inline(context, es);
 
-        ExprFunction func = context.func(function);
-
-        simplify:
-        if (ExprFunction.doesNotMutate(func)) {
-            double[] res = new double[es.length];
-            for (int i = 0, l = es.length; i < l; i++) {
-                if (es[i] instanceof EConstant c)
-                    res[i] = c.val();
-                else break simplify;
-            }
+        return Fold.call(fn, es);
+    }
 
-            try {
-                double val = func.compute(res);
-                return new EConstant(val);
-            } catch (EvalException e) {
-                return new EError(e.getMessage());
-            }
-        }
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ECFunction f && function.equals(f.function) && Arrays.equals(exprs, f.exprs);
+    }
 
-        return new EFunction(func, es);
+    @Override
+    public int hashCode() {
+        return function.hashCode() * 31 + Arrays.hashCode(exprs);
     }
 }
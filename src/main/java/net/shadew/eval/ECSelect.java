@@ -0,0 +1,21 @@
+package net.shadew.eval;
+
+record ECSelect(CtxExpression cond, CtxExpression then, CtxExpression otherwise) implements CtxExpression {
+    @Override
+    public double eval(ExprContext ctx) throws EvalException {
+        return cond.eval(ctx) != 0 ? then.eval(ctx) : otherwise.eval(ctx);
+    }
+
+    @Override
+    public Expression toContextless(ExprContext context, String... paramNames) {
+        Expression c = cond.toContextless(context, paramNames);
+        if (c instanceof EError)
+            return c;
+        if (c instanceof EConstant cc)
+            return cc.val() != 0
+                   ? then.toContextless(context, paramNames)
+                   : otherwise.toContextless(context, paramNames);
+
+        return Fold.select(c, then.toContextless(context, paramNames), otherwise.toContextless(context, paramNames));
+    }
+}
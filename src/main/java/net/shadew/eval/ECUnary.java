@@ -8,12 +8,6 @@ record ECUnary(CtxExpression e, UnaryOp op) implements CtxExpression {
 
     @Override
     public Expression toContextless(ExprContext context, String... paramNames) {
-        Expression l = e.toContextless(context, paramNames);
-        if (l instanceof EError)
-            return l;
-        if (l instanceof EConstant c)
-            return new EConstant(op.apply(c.val()));
-
-        return new EUnary(l, op);
+        return Fold.unary(e.toContextless(context, paramNames), op);
     }
 }
@@ -15,14 +15,10 @@ record ECVariable(String var) implements CtxExpression {
             i++;
         }
 
-        if (context.hasVar(var)) {
-            try {
-                return new EConstant(context.get(var));
-            } catch (EvalException e) {
-                assert false; // Never happens since we checked hasVar already
-            }
+        try {
+            return new EConstant(context.get(var));
+        } catch (EvalException e) {
+            return new EError(e.getMessage());
         }
-
-        return new EError("No such variable: '" + var + "'");
     }
 }
@@ -0,0 +1,149 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * A left-associative chain of binary operations, {@code ((operands[0] ops[1] operands[1]) ops[2] operands[2]) ...},
+ * stored flat so that long chains don't nest deeply and evaluate in one loop. The first element of {@code ops} is
+ * unused.
+ * <p>
+ * If {@code pairwise} is set, which is only allowed when all operations are additions and subtractions, the terms are
+ * summed pairwise instead of from left to right. The rounding error then grows with the logarithm of the amount of
+ * terms rather than linearly.
+ */
+record EChain(BinaryOp[] ops, Expression[] operands, boolean pairwise) implements Expression {
+    static final int PAIRWISE_BLOCK = 8;
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        if (pairwise)
+            return sum(params, 0, operands.length);
+
+        double v = operands[0].eval(params);
+        for (int i = 1, l = operands.length; i < l; i++) {
+            double x = operands[i].eval(params);
+            v = switch (ops[i]) {
+                case ADD -> v + x;
+                case SUB -> v - x;
+                case MUL -> v * x;
+                default -> ops[i].apply(v, x);
+            };
+        }
+        return v;
+    }
+
+    private double sum(double[] params, int from, int to) throws EvalException {
+        if (to - from <= PAIRWISE_BLOCK) {
+            double v = operands[from].eval(params);
+            if (negated(from))
+                v = -v;
+            for (int i = from + 1; i < to; i++) {
+                double x = operands[i].eval(params);
+                v = negated(i) ? v - x : v + x;
+            }
+            return v;
+        }
+
+        int mid = (from + to) >>> 1;
+        return sum(params, from, mid) + sum(params, mid, to);
+    }
+
+    private Interval sum(Interval[] params, int from, int to) throws EvalException {
+        if (to - from <= PAIRWISE_BLOCK) {
+            Interval v = operands[from].evalInterval(params);
+            if (negated(from))
+                v = v.neg();
+            for (int i = from + 1; i < to; i++) {
+                Interval x = operands[i].evalInterval(params);
+                v = negated(i) ? v.sub(x) : v.add(x);
+            }
+            return v;
+        }
+
+        int mid = (from + to) >>> 1;
+        return sum(params, from, mid).add(sum(params, mid, to));
+    }
+
+    /**
+     * Returns whether the operation applied to the given operand subtracts it.
+     */
+    boolean negated(int i) {
+        return i > 0 && ops[i] == BinaryOp.SUB;
+    }
+
+    /**
+     * Returns whether all operations are additions and subtractions, so that the chain can be summed pairwise.
+     */
+    boolean isSum() {
+        for (int i = 1; i < ops.length; i++) {
+            if (ops[i] != BinaryOp.ADD && ops[i] != BinaryOp.SUB)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites all chains of additions and subtractions in the given expression to sum pairwise.
+     */
+    static Expression toPairwise(Expression e) {
+        if (e instanceof EChain c) {
+            Expression[] operands = c.operands.clone();
+            boolean changed = !c.pairwise && c.isSum();
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = toPairwise(operands[i]);
+                changed |= operands[i] != c.operands[i];
+            }
+            return changed ? new EChain(c.ops, operands, c.pairwise || c.isSum()) : e;
+        }
+        if (e instanceof EBinary b) {
+            Expression l = toPairwise(b.el());
+            Expression r = toPairwise(b.er());
+            return l == b.el() && r == b.er() ? e : EBinary.of(l, r, b.op());
+        }
+        if (e instanceof EUnary u) {
+            Expression v = toPairwise(u.e());
+            return v == u.e() ? e : EUnary.of(v, u.op());
+        }
+        if (e instanceof EFunction f) {
+            Expression[] args = f.exprs().clone();
+            boolean changed = false;
+            for (int i = 0; i < args.length; i++) {
+                args[i] = toPairwise(args[i]);
+                changed |= args[i] != f.exprs()[i];
+            }
+            return changed ? new EFunction(f.function(), args) : e;
+        }
+        if (e instanceof ESelect s) {
+            Expression c = toPairwise(s.cond());
+            Expression t = toPairwise(s.then());
+            Expression o = toPairwise(s.otherwise());
+            return c == s.cond() && t == s.then() && o == s.otherwise() ? e : new ESelect(c, t, o);
+        }
+        if (e instanceof EPolynomial p) {
+            Expression x = toPairwise(p.x());
+            return x == p.x() ? e : new EPolynomial(x, p.coeffs(), p.fma());
+        }
+        return e;
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        if (pairwise)
+            return sum(params, 0, operands.length);
+
+        Interval v = operands[0].evalInterval(params);
+        for (int i = 1, l = operands.length; i < l; i++)
+            v = ops[i].apply(v, operands[i].evalInterval(params));
+        return v;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EChain c && pairwise == c.pairwise && Arrays.equals(ops, c.ops) && Arrays.equals(operands, c.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(ops) * 31 + Arrays.hashCode(operands)) * 31 + Boolean.hashCode(pairwise);
+    }
+}
@@ -0,0 +1,226 @@
+package net.shadew.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A piecewise Chebyshev approximation of an expression of one parameter. The range is split into pieces by repeated
+ * bisection, and each piece holds an interpolant of the original expression at the Chebyshev nodes of the piece. A
+ * table with one entry per cell of the finest bisection maps a parameter value to its piece in constant time. The
+ * interpolants are converted from the Chebyshev basis to ordinary polynomials in {@code t}, the position within the
+ * piece scaled to {@code [-1, 1]}, which are cheaper to evaluate, and kept to a low degree so that evaluation is short
+ * and has no loop. Each piece is stored as {@code {center, 1 / halfWidth, a0, a1, ...}}, where {@code ai} is the
+ * coefficient of {@code t^i}. Outside the range, the original expression is evaluated.
+ */
+record EChebyshev(Expression original, int param, double lo, double hi, double tolerance, int[] cells, double[][] pieces) implements Expression {
+    // Evaluation is written out for this degree
+    static final int MAX_DEGREE = 8;
+    static final int MAX_LEVEL = 12;
+
+    private static final int NODES = MAX_DEGREE + 1;
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        if (param >= params.length)
+            throw new EvalException("Parameter " + param + " not defined");
+
+        double x = params[param];
+        if (!(x >= lo && x <= hi))
+            return original.eval(params);
+        return approximation(x);
+    }
+
+    /**
+     * Evaluates this approximation given only the value of its parameter. Outside the range, the original expression
+     * is evaluated with all other parameters NaN, which it does not read.
+     */
+    double apply(double x) throws EvalException {
+        if (!(x >= lo && x <= hi)) {
+            double[] params = new double[param + 1];
+            Arrays.fill(params, Double.NaN);
+            params[param] = x;
+            return original.eval(params);
+        }
+        return approximation(x);
+    }
+
+    /**
+     * Evaluates the piece covering the given value, which must be within the range.
+     */
+    double approximation(double x) {
+        int cell = (int) ((x - lo) / (hi - lo) * cells.length);
+        double[] piece = pieces[cells[Math.min(cell, cells.length - 1)]];
+        return apply(piece, (x - piece[0]) * piece[1]);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        // The approximation is within the tolerance of the original expression
+        return original.evalInterval(params).add(new Interval(-tolerance, tolerance));
+    }
+
+    private static double apply(double[] piece, double t) {
+        // Estrin's scheme, which has much shorter dependency chains than Horner's rule
+        double t2 = t * t;
+        double t4 = t2 * t2;
+        double p01 = piece[2] + piece[3] * t;
+        double p23 = piece[4] + piece[5] * t;
+        double p45 = piece[6] + piece[7] * t;
+        double p67 = piece[8] + piece[9] * t;
+        return (p01 + p23 * t2) + (p45 + p67 * t2) * t4 + piece[10] * (t4 * t4);
+    }
+
+    static Expression approximate(Expression e, int param, double lo, double hi, double tolerance) throws EvalException {
+        if (param < 0)
+            throw new IllegalArgumentException("Negative parameter index: " + param);
+        if (!(lo < hi) || !Double.isFinite(lo) || !Double.isFinite(hi))
+            throw new IllegalArgumentException("Invalid range [" + lo + ", " + hi + "]");
+        if (!(tolerance > 0))
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        if (e instanceof TieredExpression t)
+            e = t.expression();
+        if (!Fold.readsOnly(e, param))
+            throw new IllegalArgumentException("Expression may only depend on parameter " + param);
+
+        Builder b = new Builder(e, param, tolerance);
+        b.fit(lo, hi, 0, 0);
+
+        int maxLevel = 0;
+        for (int level : b.levels)
+            maxLevel = Math.max(maxLevel, level);
+
+        int[] cells = new int[1 << maxLevel];
+        for (int i = 0; i < b.pieces.size(); i++) {
+            int shift = maxLevel - b.levels.get(i);
+            int from = b.indices.get(i) << shift;
+            Arrays.fill(cells, from, from + (1 << shift), i);
+        }
+        return new EChebyshev(e, param, lo, hi, tolerance, cells, b.pieces.toArray(double[][]::new));
+    }
+
+    private static final class Builder {
+        final Expression e;
+        final int param;
+        final double tolerance;
+        final double[] params;
+
+        final List<double[]> pieces = new ArrayList<>();
+        final List<Integer> levels = new ArrayList<>();
+        final List<Integer> indices = new ArrayList<>();
+
+        Builder(Expression e, int param, double tolerance) {
+            this.e = e;
+            this.param = param;
+            this.tolerance = tolerance;
+
+            // Other parameters are not read
+            this.params = new double[param + 1];
+            Arrays.fill(params, Double.NaN);
+        }
+
+        double sample(double x) throws EvalException {
+            params[param] = x;
+            double v = e.eval(params);
+            if (!Double.isFinite(v))
+                throw new EvalException("Expression is not finite at " + x);
+            return v;
+        }
+
+        void fit(double a, double b, int level, int index) throws EvalException {
+            double[] piece = interpolate(a, b);
+            if (piece == null) {
+                if (level == MAX_LEVEL)
+                    throw new EvalException("Could not approximate within " + tolerance + " near " + a);
+
+                double mid = a + (b - a) / 2;
+                fit(a, mid, level + 1, index * 2);
+                fit(mid, b, level + 1, index * 2 + 1);
+                return;
+            }
+
+            pieces.add(piece);
+            levels.add(level);
+            indices.add(index);
+        }
+
+        /**
+         * Interpolates the expression on {@code [a, b]} at the Chebyshev nodes, and checks the interpolant against the
+         * expression at the points halfway between the nodes and at the ends. Returns null if the interpolant is not
+         * within half the tolerance at all checked points, or if the coefficients have not decayed yet.
+         */
+        double[] interpolate(double a, double b) throws EvalException {
+            double center = a + (b - a) / 2;
+            double half = (b - a) / 2;
+
+            double[] f = new double[NODES];
+            for (int j = 0; j < NODES; j++)
+                f[j] = sample(center + half * Math.cos(Math.PI * (j + 0.5) / NODES));
+
+            double[] c = new double[NODES];
+            for (int k = 0; k < NODES; k++) {
+                double sum = 0;
+                for (int j = 0; j < NODES; j++)
+                    sum += f[j] * Math.cos(Math.PI * k * (j + 0.5) / NODES);
+                c[k] = sum * (k == 0 ? 1.0 : 2.0) / NODES;
+            }
+
+            // Without decaying coefficients, the checks between the nodes can't be trusted
+            if (Math.abs(c[NODES - 1]) + Math.abs(c[NODES - 2]) > tolerance / 4)
+                return null;
+
+            // Drop the highest coefficients, which are mostly noise, as long as they add up to a small part of the
+            // tolerance, |T_k| <= 1
+            int n = NODES;
+            double tail = 0;
+            while (n > 1 && tail + Math.abs(c[n - 1]) <= tolerance / 8)
+                tail += Math.abs(c[--n]);
+
+            // Sum the Chebyshev polynomials in the ordinary basis, using T_k+1 = 2t T_k - T_k-1
+            // Pieces are always stored with all coefficients, so that evaluating them does not need a loop
+            double[] piece = new double[NODES + 2];
+            piece[0] = center;
+            piece[1] = 1 / half;
+            double[] prev = new double[n];
+            double[] cur = new double[n];
+            piece[2] = c[0];
+            prev[0] = 1;
+            if (n > 1)
+                cur[1] = 1;
+            for (int k = 1; k < n; k++) {
+                for (int i = 0; i <= k; i++)
+                    piece[i + 2] += c[k] * cur[i];
+
+                double[] next = new double[n];
+                for (int i = 0; i < n - 1; i++)
+                    next[i + 1] = 2 * cur[i];
+                for (int i = 0; i < n; i++)
+                    next[i] -= prev[i];
+                prev = cur;
+                cur = next;
+            }
+
+            // The checks evaluate the piece like evaluation does, so rounding errors are taken into account too
+            double err = Math.max(
+                Math.abs(apply(piece, -1) - sample(a)),
+                Math.abs(apply(piece, 1) - sample(b))
+            );
+            for (int j = 1; j < NODES; j++) {
+                double t = Math.cos(Math.PI * j / NODES);
+                err = Math.max(err, Math.abs(apply(piece, t) - sample(center + half * t)));
+            }
+            return err <= tolerance / 2 ? piece : null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EChebyshev c && original.equals(c.original) && param == c.param && lo == c.lo && hi == c.hi
+                   && tolerance == c.tolerance && Arrays.equals(cells, c.cells) && Arrays.deepEquals(pieces, c.pieces);
+    }
+
+    @Override
+    public int hashCode() {
+        return (original.hashCode() * 31 + param) * 31 + Arrays.deepHashCode(pieces);
+    }
+}
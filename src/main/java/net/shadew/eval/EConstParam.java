@@ -0,0 +1,13 @@
+package net.shadew.eval;
+
+record EConstParam(EConstant el, EParam er, BinaryOp op) implements EBinary {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return op.apply(el.val(), er.eval(params));
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return op.apply(el.evalInterval(params), er.evalInterval(params));
+    }
+}
@@ -15,4 +15,9 @@ record EConstant(double val) implements Expression, CtxExpression {
     public double eval(double... params) {
         return val;
     }
+
+    @Override
+    public Interval evalInterval(Interval... params) {
+        return Interval.of(val);
+    }
 }
@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record EDiv(Expression el, Expression er) implements EBinary {
+    @Override
+    public BinaryOp op() {
+        return BinaryOp.DIV;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return el.eval(params) / er.eval(params);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return el.evalInterval(params).div(er.evalInterval(params));
+    }
+}
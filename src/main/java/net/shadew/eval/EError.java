@@ -5,4 +5,9 @@ record EError(String err) implements Expression {
     public double eval(double... params) throws EvalException {
         throw new EvalException(err);
     }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        throw new EvalException(err);
+    }
 }
@@ -1,5 +1,7 @@
 package net.shadew.eval;
 
+import java.util.Arrays;
+
 record EFunction(ExprFunction function, Expression... exprs) implements Expression {
     @Override
     public double eval(double... params) throws EvalException {
@@ -9,4 +11,23 @@ record EFunction(ExprFunction function, Expression... exprs) implements Expressi
         }
         return function.compute(results);
     }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        Interval[] results = new Interval[exprs.length];
+        for (int i = 0, l = exprs.length; i < l; i ++) {
+            results[i] = exprs[i].evalInterval(params);
+        }
+        return function.computeInterval(results);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EFunction f && function.equals(f.function) && Arrays.equals(exprs, f.exprs);
+    }
+
+    @Override
+    public int hashCode() {
+        return function.hashCode() * 31 + Arrays.hashCode(exprs);
+    }
 }
@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record EMod(Expression el, Expression er) implements EBinary {
+    @Override
+    public BinaryOp op() {
+        return BinaryOp.MOD;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return el.eval(params) % er.eval(params);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return el.evalInterval(params).mod(er.evalInterval(params));
+    }
+}
@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record ENeg(Expression e) implements EUnary {
+    @Override
+    public UnaryOp op() {
+        return UnaryOp.NEG;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return -e.eval(params);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return e.evalInterval(params).neg();
+    }
+}
@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record ENot(Expression e) implements EUnary {
+    @Override
+    public UnaryOp op() {
+        return UnaryOp.NOT;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return e.eval(params) == 0 ? 1 : 0;
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return UnaryOp.NOT.apply(e.evalInterval(params));
+    }
+}
@@ -7,4 +7,11 @@ record EParam(int i) implements Expression {
             throw new EvalException("Parameter " + i + " not defined");
         return params[i];
     }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        if (i < 0 || i >= params.length)
+            throw new EvalException("Parameter " + i + " not defined");
+        return params[i];
+    }
 }
@@ -0,0 +1,13 @@
+package net.shadew.eval;
+
+record EParamConst(EParam el, EConstant er, BinaryOp op) implements EBinary {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return op.apply(el.eval(params), er.val());
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return op.apply(el.evalInterval(params), er.evalInterval(params));
+    }
+}
@@ -0,0 +1,13 @@
+package net.shadew.eval;
+
+record EParamParam(EParam el, EParam er, BinaryOp op) implements EBinary {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return op.apply(el.eval(params), er.eval(params));
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return op.apply(el.evalInterval(params), er.evalInterval(params));
+    }
+}
@@ -0,0 +1,46 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * A polynomial in Horner form. Coefficient {@code i} belongs to the term of degree {@code i}.
+ */
+record EPolynomial(Expression x, double[] coeffs, boolean fma) implements Expression {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return apply(x.eval(params));
+    }
+
+    double apply(double v) {
+        double[] c = coeffs;
+        double acc = c[c.length - 1];
+        if (fma) {
+            for (int i = c.length - 2; i >= 0; i--)
+                acc = Math.fma(acc, v, c[i]);
+        } else {
+            for (int i = c.length - 2; i >= 0; i--)
+                acc = acc * v + c[i];
+        }
+        return acc;
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        Interval v = x.evalInterval(params);
+        double[] c = coeffs;
+        Interval acc = Interval.of(c[c.length - 1]);
+        for (int i = c.length - 2; i >= 0; i--)
+            acc = acc.mul(v).add(Interval.of(c[i]));
+        return acc;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EPolynomial p && x.equals(p.x) && Arrays.equals(coeffs, p.coeffs) && fma == p.fma;
+    }
+
+    @Override
+    public int hashCode() {
+        return (x.hashCode() * 31 + Arrays.hashCode(coeffs)) * 31 + Boolean.hashCode(fma);
+    }
+}
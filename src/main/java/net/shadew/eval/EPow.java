@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record EPow(Expression el, Expression er) implements EBinary {
+    @Override
+    public BinaryOp op() {
+        return BinaryOp.POW;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        return Math.pow(el.eval(params), er.eval(params));
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return el.evalInterval(params).pow(er.evalInterval(params));
+    }
+}
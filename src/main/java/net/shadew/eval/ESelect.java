@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+record ESelect(Expression cond, Expression then, Expression otherwise) implements Expression {
+    @Override
+    public double eval(double... params) throws EvalException {
+        return cond.eval(params) != 0 ? then.eval(params) : otherwise.eval(params);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        Interval c = cond.evalInterval(params);
+        if (!c.contains(0))
+            return then.evalInterval(params);
+        if (c.isPoint())
+            return otherwise.evalInterval(params);
+        return then.evalInterval(params).hull(otherwise.evalInterval(params));
+    }
+}
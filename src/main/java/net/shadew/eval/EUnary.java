@@ -1,8 +1,19 @@
 package net.shadew.eval;
 
-record EUnary(Expression e, UnaryOp op) implements Expression {
-    @Override
-    public double eval(double... params) throws EvalException {
-        return op.apply(e.eval(params));
+/**
+ * A unary operation, with a node class per operator like {@link EBinary}. Use {@link #of} to create the right node for
+ * an operation.
+ */
+interface EUnary extends Expression {
+    Expression e();
+
+    UnaryOp op();
+
+    static EUnary of(Expression e, UnaryOp op) {
+        return switch (op) {
+            case NEG -> new ENeg(e);
+            case ABS -> new EAbs(e);
+            case NOT -> new ENot(e);
+        };
     }
 }
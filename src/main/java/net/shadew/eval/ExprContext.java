@@ -3,14 +3,206 @@ package net.shadew.eval;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An expression context is mandatory for the evaluation of expressions, as this holds all the variables and functions
  * available in an expression.
+ * <p>
+ * A context may have a parent context. Variables and functions that are not defined in a context are looked up in its
+ * parent, so a {@linkplain #child() child context} overlays its own definitions on those of its parent without copying
+ * them. Creating a child is cheap, so a common library of functions can be defined once in a context that is shared as
+ * parent by many children. Modifying a child never affects its parent, but modifications of the parent are visible in
+ * its children. Note that {@link CtxExpression#toContextless} resolves all variables and functions at once, so a
+ * context-free expression does not look anything up upon evaluation, regardless of how deep its context is nested.
+ * <p>
+ * Variables can also be computed on demand by a {@linkplain #resolver(VariableResolver, boolean) resolver}, so that
+ * only the variables an expression actually reads are computed.
+ * <p>
+ * A context can be {@linkplain #freeze() frozen}, after which it can't be modified anymore. Frozen contexts can be
+ * shared among threads safely, for example as parent. {@link #basicMath()} returns a shared, frozen context with the
+ * functions and variables of {@link #addBasicMath()}.
+ * <p>
+ * Every modification of a context increases its {@linkplain #version() version}. The context also remembers at which
+ * version each variable and function was last changed, so that an {@link ExpressionCache} can tell which context-free
+ * expressions are affected by a modification.
  */
 public class ExprContext {
+    // Versions are drawn from one clock, so that versions of parents and children can be compared
+    private static final AtomicLong CLOCK = new AtomicLong();
+
+    private final ExprContext parent;
     private final Map<String, Double> variables = new HashMap<>();
     private final Map<String, ExprFunction> functions = new HashMap<>();
+    private final Map<String, Long> varVersions = new HashMap<>();
+    private final Map<String, Long> funcVersions = new HashMap<>();
+    private long version;
+    private boolean frozen;
+
+    private VariableResolver resolver;
+    private Map<String, Double> resolved;
+    private long resolverVersion;
+
+    // The function whose body is converted in this context, see InlineFunction
+    private InlineFunction inlining;
+
+    /**
+     * Creates an empty context without parent.
+     */
+    public ExprContext() {
+        this(null);
+    }
+
+    private ExprContext(ExprContext parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns a shared, frozen context with the functions and variables of {@link #addBasicMath()}. To define more
+     * functions or variables, create a {@linkplain #child() child} of it.
+     *
+     * @return The basic math context
+     */
+    public static ExprContext basicMath() {
+        return BasicMath.CONTEXT;
+    }
+
+    /**
+     * Creates a new, empty context of which this context is the parent.
+     *
+     * @return The child context
+     */
+    public ExprContext child() {
+        return new ExprContext(this);
+    }
+
+    /**
+     * Returns the parent of this context, or null if it has none.
+     */
+    public ExprContext parent() {
+        return parent;
+    }
+
+    /**
+     * Prevents any further modification of this context. Modifying methods throw an
+     * {@link UnsupportedOperationException} afterwards. This does not freeze the parent context.
+     *
+     * @return This instance for chain calls
+     */
+    public ExprContext freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * Returns whether this context is {@linkplain #freeze() frozen}.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkModifiable() {
+        if (frozen)
+            throw new UnsupportedOperationException("Context is frozen");
+    }
+
+    /**
+     * Returns the modification version of this context. The version starts at 0 and increases every time a variable
+     * or function is defined or removed, in this context or in any of its parents.
+     *
+     * @return The modification version
+     */
+    public long version() {
+        return parent == null ? version : Math.max(version, parent.version());
+    }
+
+    /**
+     * Returns the version at which a variable was last defined or removed, or 0 if it was never touched.
+     */
+    long varVersion(String var) {
+        long v = Math.max(varVersions.getOrDefault(var, 0L), resolverVersion);
+        return parent == null ? v : Math.max(v, parent.varVersion(var));
+    }
+
+    /**
+     * Returns the version at which a function was last defined or removed, or 0 if it was never touched.
+     */
+    long funcVersion(String function) {
+        long v = funcVersions.getOrDefault(function, 0L);
+        return parent == null ? v : Math.max(v, parent.funcVersion(function));
+    }
+
+    private long nextVersion() {
+        return version = CLOCK.incrementAndGet();
+    }
+
+    /**
+     * Sets the resolver of this context, which computes variables that are not defined in this context. Variables are
+     * looked up in this context first, then resolved by the resolver, and if the resolver fails they are looked up in
+     * the parent context. If none of these defines the variable, the failure of the resolver is reported.
+     * <p>
+     * When {@code cached} is true, every variable is resolved at most once, until the resolver is replaced or
+     * {@link #clearResolved()} is called. A typical use is to give every evaluation a {@linkplain #child() child
+     * context} with a cached resolver, so that the variables an expression reads are computed once per evaluation,
+     * and variables it doesn't read are never computed.
+     * <p>
+     * Setting the resolver, or clearing its results, counts as a modification of every variable. An
+     * {@link ExpressionCache} assumes that the resolver returns the same values in between those modifications.
+     *
+     * @param resolver The resolver, or null to remove it
+     * @param cached   Whether to remember resolved values
+     * @return This instance for chain calls
+     *
+     * @throws UnsupportedOperationException If this context is frozen
+     */
+    public ExprContext resolver(VariableResolver resolver, boolean cached) {
+        checkModifiable();
+        this.resolver = resolver;
+        this.resolved = resolver != null && cached ? new HashMap<>() : null;
+        this.resolverVersion = nextVersion();
+        return this;
+    }
+
+    /**
+     * Forgets all values remembered by the resolver of this context, so that they are resolved again when needed.
+     *
+     * @return This instance for chain calls
+     *
+     * @throws UnsupportedOperationException If this context is frozen
+     */
+    public ExprContext clearResolved() {
+        checkModifiable();
+        if (resolved != null && !resolved.isEmpty()) {
+            resolved.clear();
+            resolverVersion = nextVersion();
+        }
+        return this;
+    }
+
+    private double resolve(String var) throws EvalException {
+        if (resolved == null)
+            return resolver.resolve(var);
+
+        Double d = resolved.get(var);
+        if (d == null) {
+            d = resolver.resolve(var);
+            resolved.put(var, d);
+        }
+        return d;
+    }
+
+    /**
+     * Returns a cache of context-free expressions compiled against this context, which reuses compiled expressions for
+     * as long as the variables and functions they depend on remain unchanged.
+     *
+     * @param maxSize The maximum amount of compiled expressions to keep
+     * @return The cache
+     *
+     * @throws IllegalArgumentException If the size is less than 1
+     */
+    public ExpressionCache cache(int maxSize) {
+        return new ExpressionCache(this, maxSize);
+    }
 
     /**
      * Returns a variable value, like as it is accessed in an expression.
@@ -21,10 +213,22 @@ public class ExprContext {
      * @throws EvalException When the variable was not defined
      */
     public double get(String var) throws EvalException {
-        Double d = variables.get(var);
-        if (d == null)
-            throw new EvalException("No such variable: '" + var + "'");
-        return d;
+        EvalException failure = null;
+        for (ExprContext ctx = this; ctx != null; ctx = ctx.parent) {
+            Double d = ctx.variables.get(var);
+            if (d != null)
+                return d;
+
+            if (ctx.resolver != null) {
+                try {
+                    return ctx.resolve(var);
+                } catch (EvalException exc) {
+                    if (failure == null)
+                        failure = exc;
+                }
+            }
+        }
+        throw failure != null ? failure : new EvalException("No such variable: '" + var + "'");
     }
 
     /**
@@ -37,10 +241,10 @@ public class ExprContext {
      * @throws EvalException When the function was not defined, or when the function fails itself
      */
     public double call(String function, double... args) throws EvalException {
-        ExprFunction fn = functions.get(function);
+        ExprFunction fn = func(function);
         if (fn == null) throw new EvalException("No such function '" + function + "'");
         try {
-            return fn.compute(args);
+            return fn instanceof InlineFunction inline ? inline.call(this, args) : fn.compute(args);
         } catch (EvalException exc) {
             throw new EvalException("Function '" + function + "': " + exc.getMessage(), exc);
         }
@@ -53,7 +257,12 @@ public class ExprContext {
      * @return The function instance, or null if it was not defined
      */
     public ExprFunction func(String function) {
-        return functions.get(function);
+        for (ExprContext ctx = this; ctx != null; ctx = ctx.parent) {
+            ExprFunction fn = ctx.functions.get(function);
+            if (fn != null)
+                return fn;
+        }
+        return null;
     }
 
     /**
@@ -63,34 +272,133 @@ public class ExprContext {
      * @param fn       The function
      * @return This instance for chain calls
      *
-     * @throws NullPointerException If either the function name or value is null
+     * @throws NullPointerException          If either the function name or value is null
+     * @throws UnsupportedOperationException If this context is frozen
      */
     public ExprContext defineFunc(String function, ExprFunction fn) {
         Objects.requireNonNull(function);
         Objects.requireNonNull(fn);
+        checkModifiable();
         functions.put(function, fn);
+        funcVersions.put(function, nextVersion());
         return this;
     }
 
     /**
-     * Removes a function, if it exists
+     * Defines a function by an expression, in which the given parameter names refer to the arguments of a call. Other
+     * variables and functions in the body are looked up in the context of the call, like those in the calling
+     * expression, but the parameters of the calling expression are not visible in the body.
+     * <p>
+     * Unlike calls to other functions, {@link CtxExpression#toContextless} inlines calls to this function: the
+     * argument expressions are inserted into the body where it uses the parameters, so that the result is one
+     * expression that is simplified and compiled as a whole. Arguments are thus evaluated where the body uses them,
+     * rather than once up front. Arguments are only inserted if they are parameters or constants, or if the body uses
+     * them at most once, and never if they call functions that may mutate. Otherwise the body is called with the
+     * values of the arguments, so that no argument is evaluated more than once.
+     * <p>
+     * A function can't call itself, directly or through other functions defined this way. Such calls fail upon
+     * evaluation.
+     *
+     * @param function The function name
+     * @param body     The function body
+     * @param params   The parameter names
+     * @return This instance for chain calls
+     *
+     * @throws NullPointerException          If the function name, the body or any parameter name is null
+     * @throws IllegalArgumentException      If a parameter name occurs more than once
+     * @throws UnsupportedOperationException If this context is frozen
+     */
+    public ExprContext defineFunc(String function, CtxExpression body, String... params) {
+        Objects.requireNonNull(function);
+        Objects.requireNonNull(body);
+        String[] names = params.clone();
+        for (int i = 0; i < names.length; i++) {
+            Objects.requireNonNull(names[i]);
+            for (int j = 0; j < i; j++) {
+                if (names[i].equals(names[j]))
+                    throw new IllegalArgumentException("Duplicate parameter '" + names[i] + "'");
+            }
+        }
+        return defineFunc(function, new InlineFunction(this, function, names, body));
+    }
+
+    /**
+     * Parses the body of a function and defines it. See {@link #defineFunc(String, CtxExpression, String...)}.
      *
      * @param function The function name
+     * @param body     The function body, in the syntax of {@link CtxExpression#parse(String)}
+     * @param params   The parameter names
      * @return This instance for chain calls
+     *
+     * @throws ParseException                If the body has a syntax error
+     * @throws NullPointerException          If the function name, the body or any parameter name is null
+     * @throws IllegalArgumentException      If a parameter name occurs more than once
+     * @throws UnsupportedOperationException If this context is frozen
+     */
+    public ExprContext defineFunc(String function, String body, String... params) throws ParseException {
+        return defineFunc(function, CtxExpression.parse(body), params);
+    }
+
+    /**
+     * Returns a child context in which the body of the given function is converted.
+     */
+    ExprContext inlining(InlineFunction fn) {
+        ExprContext child = child();
+        child.inlining = fn;
+        return child;
+    }
+
+    /**
+     * Returns whether the body of the given function is being converted in this context, which means that it is being
+     * inlined into itself.
+     */
+    boolean isInlining(InlineFunction fn) {
+        for (ExprContext ctx = this; ctx != null; ctx = ctx.parent) {
+            if (ctx.inlining == fn)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a function, if it is defined in this context. A function of the same name in the parent context is not
+     * removed, and becomes visible again.
+     *
+     * @param function The function name
+     * @return This instance for chain calls
+     *
+     * @throws UnsupportedOperationException If this context is frozen
      */
     public ExprContext removeFunc(String function) {
-        functions.remove(function);
+        checkModifiable();
+        if (functions.remove(function) != null)
+            funcVersions.put(function, nextVersion());
         return this;
     }
 
     /**
-     * Returns whether a variable is defined
+     * Returns whether a variable is defined. A variable that is not defined up front is resolved to find out whether
+     * the resolver knows it.
      *
      * @param var The variable name
      * @return True if it is defined
      */
     public boolean hasVar(String var) {
-        return variables.containsKey(var);
+        boolean resolvable = false;
+        for (ExprContext ctx = this; ctx != null; ctx = ctx.parent) {
+            if (ctx.variables.containsKey(var))
+                return true;
+            resolvable |= ctx.resolver != null;
+        }
+        if (!resolvable)
+            return false;
+
+        try {
+            get(var);
+            return true;
+        } catch (EvalException exc) {
+            return false;
+        }
     }
 
     /**
@@ -100,7 +408,7 @@ public class ExprContext {
      * @return True if it is defined
      */
     public boolean hasFunc(String function) {
-        return functions.containsKey(function);
+        return func(function) != null;
     }
 
     /**
@@ -110,22 +418,30 @@ public class ExprContext {
      * @param val The value
      * @return This instance for chain calls
      *
-     * @throws NullPointerException If the name is null
+     * @throws NullPointerException          If the name is null
+     * @throws UnsupportedOperationException If this context is frozen
      */
     public ExprContext defineVar(String var, double val) {
         Objects.requireNonNull(var);
+        checkModifiable();
         variables.put(var, val);
+        varVersions.put(var, nextVersion());
         return this;
     }
 
     /**
-     * Removes a variable, if it exists
+     * Removes a variable, if it is defined in this context. A variable of the same name in the parent context is not
+     * removed, and becomes visible again.
      *
      * @param var The variable name
      * @return This instance for chain calls
+     *
+     * @throws UnsupportedOperationException If this context is frozen
      */
     public ExprContext removeVar(String var) {
-        functions.remove(var);
+        checkModifiable();
+        if (variables.remove(var) != null)
+            varVersions.put(var, nextVersion());
         return this;
     }
 
@@ -177,58 +493,117 @@ public class ExprContext {
         defineVar("NaN", Double.NaN);
         defineVar("PI", Math.PI);
         defineVar("E", Math.E);
-        defineFunc("abs", ExprFunction.noMutation(ExprFunction.one(Math::abs)));
-        defineFunc("sign", ExprFunction.noMutation(ExprFunction.one(Math::signum)));
-        defineFunc("sqrt", ExprFunction.noMutation(ExprFunction.one(Math::sqrt)));
-        defineFunc("cbrt", ExprFunction.noMutation(ExprFunction.one(Math::cbrt)));
-        defineFunc("rt", ExprFunction.noMutation(ExprFunction.two((a, b) -> Math.pow(a, 1 / b))));
-        defineFunc("ceil", ExprFunction.noMutation(ExprFunction.one(Math::ceil)));
-        defineFunc("floor", ExprFunction.noMutation(ExprFunction.one(Math::floor)));
-        defineFunc("round", ExprFunction.noMutation(ExprFunction.one(Math::round)));
-        defineFunc("sin", ExprFunction.noMutation(ExprFunction.one(Math::sin)));
-        defineFunc("cos", ExprFunction.noMutation(ExprFunction.one(Math::cos)));
-        defineFunc("tan", ExprFunction.noMutation(ExprFunction.one(Math::tan)));
-        defineFunc("asin", ExprFunction.noMutation(ExprFunction.one(Math::asin)));
-        defineFunc("acos", ExprFunction.noMutation(ExprFunction.one(Math::acos)));
-        defineFunc("atan", ExprFunction.noMutation(ExprFunction.one(Math::atan)));
-        defineFunc("sinh", ExprFunction.noMutation(ExprFunction.one(Math::sinh)));
-        defineFunc("cosh", ExprFunction.noMutation(ExprFunction.one(Math::cosh)));
-        defineFunc("tanh", ExprFunction.noMutation(ExprFunction.one(Math::tanh)));
-        defineFunc("exp", ExprFunction.noMutation(ExprFunction.one(Math::exp)));
-        defineFunc("ln", ExprFunction.noMutation(ExprFunction.one(Math::log)));
-        defineFunc("log10", ExprFunction.noMutation(ExprFunction.one(Math::log10)));
-        defineFunc("log2", ExprFunction.noMutation(ExprFunction.one(a -> Math.log(a) / LOG_2)));
-        defineFunc("log", ExprFunction.noMutation(ExprFunction.two((a, b) -> Math.log(a) / Math.log(b))));
-        defineFunc("max", ExprFunction.noMutation(args -> {
+        defineFunc("abs", MathFunction.one(Math::abs, Interval::abs).withCost(1));
+        defineFunc("sign", MathFunction.exact(Math::signum).withCost(1));
+        defineFunc("sqrt", MathFunction.increasing(Math::sqrt, 0, Double.POSITIVE_INFINITY).withCost(4));
+        defineFunc("cbrt", MathFunction.increasing(Math::cbrt).withCost(15));
+        defineFunc("rt", MathFunction.two((a, b) -> Math.pow(a, 1 / b), (a, b) -> a.pow(Interval.ONE.div(b))).withCost(40));
+        defineFunc("ceil", MathFunction.exact(Math::ceil).withCost(1));
+        defineFunc("floor", MathFunction.exact(Math::floor).withCost(1));
+        defineFunc("round", MathFunction.exact(Math::round).withCost(1));
+        defineFunc("sin", MathFunction.one(Math::sin, MathFunction::sin));
+        defineFunc("cos", MathFunction.one(Math::cos, MathFunction::cos));
+        defineFunc("tan", MathFunction.one(Math::tan, MathFunction::tan));
+        defineFunc("asin", MathFunction.increasing(Math::asin, -1, 1));
+        defineFunc("acos", MathFunction.decreasing(Math::acos, -1, 1));
+        defineFunc("atan", MathFunction.increasing(Math::atan));
+        defineFunc("sinh", MathFunction.increasing(Math::sinh));
+        defineFunc("cosh", MathFunction.one(Math::cosh, MathFunction::cosh));
+        defineFunc("tanh", MathFunction.increasing(Math::tanh));
+        defineFunc("exp", MathFunction.increasing(Math::exp));
+        defineFunc("ln", MathFunction.increasing(Math::log, 0, Double.POSITIVE_INFINITY));
+        defineFunc("log10", MathFunction.increasing(Math::log10, 0, Double.POSITIVE_INFINITY));
+        defineFunc("log2", MathFunction.one(a -> Math.log(a) / LOG_2, MathFunction::log2));
+        defineFunc("log", MathFunction.two((a, b) -> Math.log(a) / Math.log(b), (a, b) -> MathFunction.ln(a).div(MathFunction.ln(b))).withCost(40));
+        defineFunc("max", MathFunction.of(args -> {
             double v = Double.NEGATIVE_INFINITY;
             for (double d : args)
                 v = Math.max(d, v);
             return v;
-        }));
-        defineFunc("min", ExprFunction.noMutation(args -> {
+        }, MathFunction::max).withCost(2));
+        defineFunc("min", MathFunction.of(args -> {
             double v = Double.POSITIVE_INFINITY;
             for (double d : args)
                 v = Math.min(d, v);
             return v;
-        }));
-        defineFunc("avg", ExprFunction.noMutation(args -> {
+        }, MathFunction::min).withCost(2));
+        defineFunc("avg", MathFunction.of(args -> {
             double v = 0;
             for (double d : args)
                 v += d / args.length;
             return v;
-        }));
-        defineFunc("sum", ExprFunction.noMutation(args -> {
+        }, MathFunction::avg).withCost(2));
+        defineFunc("sum", MathFunction.of(args -> {
             double v = 0;
             for (double d : args)
                 v += d;
             return v;
-        }));
-        defineFunc("prod", ExprFunction.noMutation(args -> {
-            double v = 0;
+        }, MathFunction::sum).withCost(2));
+        defineFunc("prod", MathFunction.of(args -> {
+            double v = 1;
             for (double d : args)
                 v *= d;
             return v;
-        }));
+        }, MathFunction::prod).withCost(2));
         return this;
     }
+
+    private static final double INV_LN_2 = 1 / Math.log(2);
+    private static final double INV_LN_10 = 1 / Math.log(10);
+
+    /**
+     * Defines the same functions and variables as {@link #addBasicMath()}, but replaces some of the functions with
+     * faster approximations. The approximations are polynomials of which the degree is chosen such that they are
+     * within the given error of the exact result. The following functions are approximated:
+     *
+     * <ul>
+     * <li>{@code exp(x)}, {@code ln(x)}, {@code log2(x)}, {@code log10(x)}, {@code log(x, y)}, {@code cosh(x)} and
+     * {@code rt(x, y)}, with a relative error of at most {@code maxRelError}</li>
+     * <li>{@code sin(x)} and {@code cos(x)}, with an absolute error of at most {@code maxRelError}. A relative bound is
+     * not possible close to their roots, since these are not representable exactly.</li>
+     * </ul>
+     * <p>
+     * Arguments for which the approximations do not apply, such as very large arguments to {@code sin(x)} or
+     * arguments to {@code exp(x)} that overflow, are computed exactly. Error bounds below {@code 1e-14} are dominated by
+     * rounding, so then all functions are computed exactly. For {@code rt(x, y)} this already happens below
+     * {@code 2e-11}, since its error is amplified by the magnitude of the logarithm of {@code x}.
+     * <p>
+     * The approximations are still non-mutating, and their {@linkplain ExprFunction#computeInterval interval bounds}
+     * account for the approximation error.
+     *
+     * @param maxRelError The maximum error of the approximations
+     * @return This instance for chain calls
+     *
+     * @throws IllegalArgumentException If the error bound is not positive
+     */
+    public ExprContext addFastMath(double maxRelError) {
+        addBasicMath();
+
+        double e = maxRelError;
+        FastMath fast = new FastMath(e);
+        FastMath precise = new FastMath(e / 4);
+
+        defineFunc("exp", MathFunction.approximate(fast::exp, func("exp"), e, 0));
+        defineFunc("ln", MathFunction.approximate(fast::ln, func("ln"), e, 0));
+        defineFunc("log2", MathFunction.approximate(a -> precise.ln(a) * INV_LN_2, func("log2"), e, 0));
+        defineFunc("log10", MathFunction.approximate(a -> precise.ln(a) * INV_LN_10, func("log10"), e, 0));
+        defineFunc("log", MathFunction.approximate((a, b) -> precise.ln(a) / precise.ln(b), func("log"), e));
+        defineFunc("sin", MathFunction.approximate(fast::sin, func("sin"), 0, e));
+        defineFunc("cos", MathFunction.approximate(fast::cos, func("cos"), 0, e));
+        defineFunc("cosh", MathFunction.approximate(a -> {
+            if (Math.abs(a) >= 708)
+                return Math.cosh(a);
+            return (precise.exp(a) + precise.exp(-a)) / 2;
+        }, func("cosh"), e, 0));
+
+        // The logarithm is at most 745 in magnitude, so its error is amplified by at most that
+        FastMath rtLn = new FastMath(e / 2048);
+        if (e >= FastMath.MIN_ERROR * 2048)
+            defineFunc("rt", MathFunction.approximate((a, b) -> precise.exp(rtLn.ln(a) / b), func("rt"), e));
+        return this;
+    }
+
+    private static final class BasicMath {
+        static final ExprContext CONTEXT = new ExprContext().addBasicMath().freeze();
+    }
 }
@@ -4,6 +4,12 @@ package net.shadew.eval;
  * A function definition to be called by an expression.
  */
 public interface ExprFunction {
+    /**
+     * The cost of a function call that does not specify its {@linkplain #cost() cost}, comparable to that of the
+     * common transcendental functions.
+     */
+    double DEFAULT_COST = 20;
+
     /**
      * Calls the function
      *
@@ -14,6 +20,105 @@ public interface ExprFunction {
      */
     double compute(double... args) throws EvalException;
 
+    /**
+     * Computes a conservative range of this function, given a range for each argument. The returned interval must
+     * contain every value {@link #compute} returns for arguments within the given intervals.
+     * <p>
+     * The default implementation computes the exact value when this function is {@linkplain #noMutation(ExprFunction)
+     * non-mutating} and all arguments are single points, and returns {@link Interval#ENTIRE} otherwise. The functions
+     * defined by {@link ExprContext#addBasicMath()} compute tight bounds.
+     *
+     * @param args The argument ranges
+     * @return The range of the result
+     *
+     * @throws EvalException If evaluation fails
+     */
+    default Interval computeInterval(Interval... args) throws EvalException {
+        if (!doesNotMutate(this))
+            return Interval.ENTIRE;
+
+        double[] points = new double[args.length];
+        for (int i = 0, l = args.length; i < l; i++) {
+            if (!args[i].isPoint())
+                return Interval.ENTIRE;
+            points[i] = args[i].lo();
+        }
+        return Interval.of(compute(points));
+    }
+
+    /**
+     * Returns an estimate of the cost of one call to this function, where adding two numbers costs 1. This is used by
+     * {@link Expression#estimateCost()} to estimate the cost of expressions. The default implementation returns
+     * {@value #DEFAULT_COST}.
+     *
+     * @return The estimated cost of a call
+     */
+    default double cost() {
+        return DEFAULT_COST;
+    }
+
+    /**
+     * Returns a new function that behaves like this function, but has the given {@linkplain #cost() cost}. See
+     * {@link #withCost(ExprFunction, double)}.
+     *
+     * @param cost The estimated cost of a call
+     * @return A new function with the given cost
+     */
+    default ExprFunction withCost(double cost) {
+        return withCost(this, cost);
+    }
+
+    /**
+     * Returns a new function that behaves like the given function, including its range computation and whether it is
+     * marked as non-mutating, but that has the given {@linkplain #cost() cost}.
+     *
+     * @param fn   The function
+     * @param cost The estimated cost of a call, where adding two numbers costs 1
+     * @return A new function with the given cost
+     *
+     * @throws IllegalArgumentException If the cost is negative or NaN
+     */
+    static ExprFunction withCost(ExprFunction fn, double cost) {
+        if (!(cost >= 0))
+            throw new IllegalArgumentException("Cost must be non-negative");
+
+        if (doesNotMutate(fn)) {
+            return new NonMutatingFunction() {
+                @Override
+                public double compute(double... args) throws EvalException {
+                    return fn.compute(args);
+                }
+
+                @Override
+                public Interval computeInterval(Interval... args) throws EvalException {
+                    return fn.computeInterval(args);
+                }
+
+                @Override
+                public double cost() {
+                    return cost;
+                }
+            };
+        }
+
+        return new ExprFunction() {
+            @Override
+            public double compute(double... args) throws EvalException {
+                return fn.compute(args);
+            }
+
+            @Override
+            public Interval computeInterval(Interval... args) throws EvalException {
+                return fn.computeInterval(args);
+            }
+
+            @Override
+            public double cost() {
+                return cost;
+            }
+        };
+    }
+
     /**
      * Returns a new function that is marked as non-mutating. See {@link #noMutation(ExprFunction)}.
      *
@@ -46,6 +151,37 @@ public interface ExprFunction {
         return (NonMutatingFunction) fn::compute;
     }
 
+    /**
+     * Returns a new function that remembers the results of this function. See {@link #memoize(ExprFunction, int)}.
+     *
+     * @param maxSize The maximum amount of results to remember
+     * @return A new memoizing function
+     *
+     * @throws IllegalArgumentException If this function is not marked as non-mutating, or if the size is less than 1
+     */
+    default MemoizedFunction memoize(int maxSize) {
+        return memoize(this, maxSize);
+    }
+
+    /**
+     * Returns a new function that remembers the results of the given function, so that calling it again with the same
+     * arguments returns the remembered result instead of computing it again. At most {@code maxSize} results are
+     * remembered, after which the least recently used results are forgotten. Only functions that are marked as
+     * {@linkplain #noMutation(ExprFunction) non-mutating} can be memoized, and the returned function is non-mutating
+     * too.
+     *
+     * @param fn      The function to memoize
+     * @param maxSize The maximum amount of results to remember
+     * @return A new memoizing function
+     *
+     * @throws IllegalArgumentException If the function is not marked as non-mutating, or if the size is less than 1
+     */
+    static MemoizedFunction memoize(ExprFunction fn, int maxSize) {
+        if (!doesNotMutate(fn))
+            throw new IllegalArgumentException("Only non-mutating functions can be memoized");
+        return new MemoizedFunction(fn, maxSize);
+    }
+
     /**
      * Creates a zero-argument function.
      *
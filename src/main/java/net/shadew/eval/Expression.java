@@ -1,5 +1,7 @@
 package net.shadew.eval;
 
+import java.util.concurrent.Executor;
+
 /**
  * An expression that, other than some potential input parameters, does not require a context to evaluate. {@link
  * CtxExpression}s can be converted in to instances of this interface via {@link CtxExpression#toContextless}.
@@ -14,4 +16,341 @@ public interface Expression {
      * @throws EvalException When evaluation fails
      */
     double eval(double... params) throws EvalException;
+
+    /**
+     * Computes a conservative range of this expression, given a range for each input parameter. The returned interval
+     * contains every value {@link #eval} returns for parameters within the given intervals. This allows to skip whole
+     * regions of the parameter space, for example when searching for roots or extremes.
+     * <p>
+     * The default implementation returns {@link Interval#ENTIRE}, which is always correct but not useful. All
+     * expressions created by this library compute tighter bounds.
+     *
+     * @param params The input parameter ranges
+     * @return The range of the result
+     *
+     * @throws EvalException When evaluation fails
+     */
+    default Interval evalInterval(Interval... params) throws EvalException {
+        return Interval.ENTIRE;
+    }
+
+    /**
+     * Rewrites polynomial subexpressions of this expression into Horner form. Any subexpression that only adds,
+     * subtracts, multiplies and raises to constant integer powers a single input parameter, such as {@code 3*x^3 -
+     * x^2 + 2}, is replaced by the equivalent {@code (3*x - 1)*x*x + 2}. This removes all power operations and roughly
+     * halves the amount of multiplications. Results may differ in the last few bits from the original expression, and
+     * may differ for infinite inputs when terms cancel out.
+     * <p>
+     * When {@code fma} is true, the rewritten polynomials use {@link Math#fma}, which rounds only once per term. This is
+     * more accurate and faster on hardware with fused multiply-add instructions, but much slower on hardware without
+     * them.
+     *
+     * @param fma Whether to use fused multiply-add
+     * @return The rewritten expression, or this expression if there were no polynomials to rewrite
+     */
+    default Expression toHornerForm(boolean fma) {
+        return Horner.rewrite(this, fma);
+    }
+
+    /**
+     * Estimates the cost of evaluating this expression, where adding two numbers costs 1. Function calls cost what
+     * the {@linkplain ExprFunction#cost() function} specifies, division costs 4, modulo costs 8 and raising to a power
+     * costs 40. Of conditionals, only the most expensive operand is counted. The estimate is static: it is computed
+     * without evaluating anything, so that expensive expressions can be rejected or deprioritized up front.
+     *
+     * @return The estimated cost
+     */
+    default double estimateCost() {
+        return Cost.of(this);
+    }
+
+    /**
+     * Rewrites sums of more than two terms in this expression to use pairwise summation. Instead of adding the terms
+     * from left to right, the first and second half of the terms are summed separately and then added, recursively.
+     * The rounding error of long sums then grows with the logarithm of the amount of terms rather than linearly, at
+     * practically no cost. Results may differ in the last few bits from the original expression.
+     *
+     * @return The rewritten expression, or this expression if there were no sums to rewrite
+     */
+    default Expression toPairwiseSums() {
+        return EChain.toPairwise(this);
+    }
+
+    /**
+     * Approximates this expression of one parameter over the given range, with a piecewise polynomial. The range is
+     * bisected until the expression is interpolated within the tolerance on every piece, by a polynomial of degree at
+     * most 8 at the Chebyshev nodes of that piece. The error of every piece is checked
+     * between the nodes, and the check must pass with a margin of a factor two, but since the expression is only
+     * sampled this is not a strict guarantee. Evaluating the approximation finds the piece in a table and evaluates a
+     * short polynomial, which is much faster than evaluating expensive functions. Outside the range, this expression
+     * is evaluated instead.
+     * <p>
+     * This expression may only depend on the given parameter, other parameters must be {@linkplain #bind bound} first.
+     * Expressions that are discontinuous or not finite in the range can't be approximated.
+     *
+     * @param paramIndex The index of the parameter to approximate in
+     * @param lo         The lower end of the range
+     * @param hi         The upper end of the range
+     * @param tolerance  The maximum absolute error of the approximation
+     * @return The approximation
+     *
+     * @throws EvalException            When evaluation fails or is not finite anywhere in the range, or when the
+     *                                  expression can't be approximated within the tolerance
+     * @throws IllegalArgumentException If the parameter index is negative, the range is empty or not finite, the
+     *                                  tolerance is not positive, or this expression may depend on other parameters
+     */
+    default Expression approximate(int paramIndex, double lo, double hi, double tolerance) throws EvalException {
+        return EChebyshev.approximate(this, paramIndex, lo, hi, tolerance);
+    }
+
+    /**
+     * Returns a simplified version of this expression, in which the given parameter is replaced by the given value.
+     * Parameters after the bound parameter move one index down, so that parameter {@code paramIndex + 1} becomes
+     * parameter {@code paramIndex} and so on. Subexpressions that only depend on bound parameters are computed right
+     * away, like {@link CtxExpression#toContextless} does for variables.
+     *
+     * @param paramIndex The index of the parameter to bind
+     * @param value      The value of the parameter
+     * @return The simplified expression
+     *
+     * @throws IllegalArgumentException If the parameter index is negative
+     */
+    default Expression bind(int paramIndex, double value) {
+        return bind(new int[] {paramIndex}, new double[] {value});
+    }
+
+    /**
+     * Returns a simplified version of this expression, in which the given parameters are replaced by the given values.
+     * The remaining parameters keep their order but are renumbered to close the gaps: for example, binding parameters
+     * 0 and 2 of an expression of five parameters leaves an expression of which parameters 0, 1 and 2 are the former
+     * parameters 1, 3 and 4. Subexpressions that only depend on bound parameters are computed right away, like
+     * {@link CtxExpression#toContextless} does for variables.
+     *
+     * @param paramIndices The indices of the parameters to bind, in any order
+     * @param values       The values of the parameters, in the same order as the indices
+     * @return The simplified expression
+     *
+     * @throws IllegalArgumentException If the arrays have different lengths, or if an index is negative or occurs
+     *                                  twice
+     */
+    default Expression bind(int[] paramIndices, double[] values) {
+        return Fold.bind(this, paramIndices, values);
+    }
+
+    /**
+     * Returns a tiered version of this expression, which switches to a faster form after
+     * {@value TieredExpression#DEFAULT_THRESHOLD} evaluations. The faster form is compiled in the background, on the
+     * {@linkplain java.util.concurrent.ForkJoinPool#commonPool() common pool}. See {@link TieredExpression}.
+     *
+     * @return The tiered expression
+     */
+    default TieredExpression tiered() {
+        return new TieredExpression(this);
+    }
+
+    /**
+     * Returns a tiered version of this expression, which switches to a faster form after the given amount of
+     * evaluations. See {@link TieredExpression}.
+     *
+     * @param threshold The amount of evaluations after which the faster form is compiled
+     * @param executor  The executor to compile the faster form on
+     * @return The tiered expression
+     *
+     * @throws IllegalArgumentException If the threshold is negative
+     */
+    default TieredExpression tiered(int threshold, Executor executor) {
+        return new TieredExpression(this, threshold, executor);
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters at once. Parameter {@code p} of row {@code i} is read from
+     * {@code columns[p][i]}, and the result of row {@code i} is stored in {@code out[i]}. The amount of rows is the
+     * length of the output array. See {@link ExpressionSet#evalBatch(double[][], double[]...)}.
+     *
+     * @param out     The output array
+     * @param columns The parameter columns, each holding at least as many values as the output array
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default void evalBatch(double[] out, double[]... columns) throws EvalException {
+        ExpressionSet.of(this).evalBatch(new double[][] {out}, columns);
+    }
+
+    /**
+     * Evaluates this expression for many rows of single precision parameters at once, doing all arithmetic in single
+     * precision. The amount of rows is the length of the output array. See
+     * {@link ExpressionSet#evalBatch(int, int, float[][], float[]...)}.
+     *
+     * @param out     The output array
+     * @param columns The parameter columns, each holding at least as many values as the output array
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default void evalBatch(float[] out, float[]... columns) throws EvalException {
+        ExpressionSet.of(this).evalBatch(new float[][] {out}, columns);
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and computes the amount, sum, minimum and maximum of the
+     * results. Parameter {@code p} of row {@code i} is read from {@code columns[p][i]}. The results are aggregated
+     * while evaluating, so they are never stored in an array.
+     * <p>
+     * The sum is computed with compensated summation, so that its accuracy does not degrade with the amount of rows.
+     * Large amounts of rows are evaluated in parallel, unless the expression calls functions that may mutate. NaN
+     * results make the sum, minimum and maximum NaN.
+     *
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The aggregated results
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default Summary summarize(int rows, double[]... columns) throws EvalException {
+        return Reduction.summarize(this, rows, columns);
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and returns the sum of the results. See
+     * {@link #summarize}.
+     *
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The sum of the results
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default double sum(int rows, double[]... columns) throws EvalException {
+        return summarize(rows, columns).sum();
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and returns the mean of the results. See
+     * {@link #summarize}.
+     *
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The mean of the results, or NaN if there are no rows
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default double mean(int rows, double[]... columns) throws EvalException {
+        return summarize(rows, columns).mean();
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and returns the smallest result. See
+     * {@link #summarize}.
+     *
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The smallest result, or positive infinity if there are no rows
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default double min(int rows, double[]... columns) throws EvalException {
+        return summarize(rows, columns).min();
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and returns the largest result. See
+     * {@link #summarize}.
+     *
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The largest result, or negative infinity if there are no rows
+     *
+     * @throws EvalException When evaluation fails for any row
+     */
+    default double max(int rows, double[]... columns) throws EvalException {
+        return summarize(rows, columns).max();
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and counts how many results fall in each of {@code bins}
+     * equally wide bins between {@code lo} and {@code hi}. Bin {@code b} covers the results from {@code lo + b * w}
+     * (inclusive) to {@code lo + (b + 1) * w} (exclusive), where {@code w = (hi - lo) / bins}, except that the last
+     * bin also includes {@code hi}. Results outside the range, and NaN results, are not counted. See
+     * {@link #summarize}.
+     *
+     * @param lo      The lower end of the range
+     * @param hi      The upper end of the range
+     * @param bins    The amount of bins
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The count of each bin
+     *
+     * @throws EvalException            When evaluation fails for any row
+     * @throws IllegalArgumentException If there are no bins, or if the range is empty or not finite
+     */
+    default long[] histogram(double lo, double hi, int bins, int rows, double[]... columns) throws EvalException {
+        return Reduction.histogram(this, lo, hi, bins, rows, columns);
+    }
+
+    /**
+     * Evaluates this expression for many rows of parameters, and selects the {@code k} rows with the highest results.
+     * Parameter {@code p} of row {@code i} is read from {@code columns[p][i]}. Rows with equal results are ordered by
+     * their index, and rows resulting in NaN are never selected. If less than {@code k} rows have a result, all of
+     * them are selected.
+     * <p>
+     * Rows are kept in bounded heaps while evaluating, so the results are never stored in an array. Large amounts of
+     * rows are evaluated in parallel, unless the expression calls functions that may mutate. Once {@code k} rows are
+     * known, chunks of rows are skipped when the {@linkplain #evalInterval interval bounds} of this expression over
+     * the parameter ranges of the chunk show that no row in it can be selected. Errors in skipped rows are not
+     * reported.
+     *
+     * @param k       The amount of rows to select
+     * @param rows    The amount of rows
+     * @param columns The parameter columns, each holding at least {@code rows} values
+     * @return The selected rows and their results, from the highest result to the lowest
+     *
+     * @throws EvalException            When evaluation fails for any evaluated row
+     * @throws IllegalArgumentException If {@code k} is negative
+     */
+    default Ranking top(int k, int rows, double[]... columns) throws EvalException {
+        return Reduction.top(this, k, rows, columns);
+    }
+
+    /**
+     * Evaluates this expression at every point of a grid. Parameter {@code p} takes every value of {@code axes[p]},
+     * and the results are returned in a flat array in which the last axis varies fastest: the result for the point
+     * with indices {@code (i, j, k)} in a three-dimensional grid is at index {@code (i * ny + j) * nz + k}, where
+     * {@code ny} and {@code nz} are the lengths of the second and third axis. See
+     * {@link #grid(double[], double[][])}.
+     *
+     * @param axes The values of each parameter
+     * @return The results at every grid point
+     *
+     * @throws EvalException            When evaluation fails at any point
+     * @throws IllegalArgumentException If there are no axes, or if the grid has too many points
+     */
+    default double[] grid(double[]... axes) throws EvalException {
+        long total = 1;
+        for (double[] axis : axes)
+            total *= axis.length;
+        if (total > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Grid has too many points");
+
+        double[] out = new double[(int) total];
+        grid(out, axes);
+        return out;
+    }
+
+    /**
+     * Evaluates this expression at every point of a grid, and stores the results in the given buffer. Parameter
+     * {@code p} takes every value of {@code axes[p]}, and the results are stored in a flat array in which the last
+     * axis varies fastest. See {@link #grid(double[][])}.
+     * <p>
+     * Subexpressions are only evaluated once for every combination of the parameters they depend on: in
+     * {@code sin(x) * cos(y)} over a grid of {@code x} and {@code y}, {@code sin(x)} is evaluated once per value of
+     * {@code x} rather than once per grid point. Hence, it is most efficient to put the axis that most of the
+     * expression depends on last. Functions that may mutate are called for every grid point.
+     *
+     * @param out  The buffer to store the results in, at least as long as the amount of grid points
+     * @param axes The values of each parameter
+     * @throws EvalException            When evaluation fails at any point
+     * @throws IllegalArgumentException If there are no axes, or if the buffer is too small
+     */
+    default void grid(double[] out, double[][] axes) throws EvalException {
+        Grid.eval(this, out, axes);
+    }
 }
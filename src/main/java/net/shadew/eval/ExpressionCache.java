@@ -0,0 +1,221 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of context-free expressions compiled against one {@link ExprContext}, using
+ * {@link CtxExpression#toContextless}. Create one using {@link ExprContext#cache(int)}.
+ * <p>
+ * A compiled expression stays valid for as long as the context variables and functions it depends on are unchanged.
+ * Modifications of other variables or functions do not invalidate it. When a compiled expression is found invalid,
+ * the expression is compiled again. Expressions implemented outside this library can't be inspected for their
+ * dependencies, so these are compiled again after any modification of the context.
+ * <p>
+ * The cache holds a bounded amount of entries and evicts the least recently used entries first. It is safe for
+ * concurrent use, as long as the context is not modified concurrently.
+ */
+public final class ExpressionCache {
+    private final ExprContext context;
+    private final Map<Key, Compiled> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ExpressionCache(ExprContext context, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Cache size must be at least 1");
+
+        this.context = context;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Compiled> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the context expressions are compiled against.
+     */
+    public ExprContext context() {
+        return context;
+    }
+
+    /**
+     * Returns the context-free form of an expression, like {@link CtxExpression#toContextless}, reusing an earlier
+     * result if possible.
+     *
+     * @param expr       The expression
+     * @param paramNames The parameter names
+     * @return A context-free expression
+     */
+    public Expression get(CtxExpression expr, String... paramNames) {
+        Key key = new Key(expr, List.of(paramNames));
+        long version = context.version();
+
+        synchronized (entries) {
+            Compiled entry = entries.get(key);
+            if (entry != null && entry.validate(context, version)) {
+                hits.increment();
+                return entry.expr;
+            }
+        }
+
+        // Compile outside the lock, at worst two threads compile the same expression
+        misses.increment();
+        Compiled entry = Compiled.compile(context, expr, paramNames, version);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.expr;
+    }
+
+    /**
+     * Parses an expression and returns its context-free form, like {@link #get(CtxExpression, String...)}. Note that
+     * the parsed expression is used as key, so expressions that are written differently but parse to the same
+     * expression share their entry.
+     *
+     * @param expr       The expression to parse
+     * @param paramNames The parameter names
+     * @return A context-free expression
+     *
+     * @throws ParseException If the expression syntax is incorrect
+     */
+    public Expression get(String expr, String... paramNames) throws ParseException {
+        return get(CtxExpression.parse(expr), paramNames);
+    }
+
+    /**
+     * Removes all compiled expressions.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the amount of compiled expressions in the cache.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the amount of lookups that reused a compiled expression.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the amount of lookups that had to compile the expression.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    private record Key(CtxExpression expr, List<String> paramNames) {
+    }
+
+    private static final class Compiled {
+        final Expression expr;
+        final String[] vars;
+        final String[] funcs;
+        long checked;
+
+        Compiled(Expression expr, String[] vars, String[] funcs, long checked) {
+            this.expr = expr;
+            this.vars = vars;
+            this.funcs = funcs;
+            this.checked = checked;
+        }
+
+        static Compiled compile(ExprContext context, CtxExpression expr, String[] paramNames, long version) {
+            Set<String> vars = new LinkedHashSet<>();
+            Set<String> funcs = new LinkedHashSet<>();
+            boolean known = dependencies(context, expr, new HashSet<>(Arrays.asList(paramNames)), vars, funcs);
+
+            return new Compiled(
+                expr.toContextless(context, paramNames),
+                known ? vars.toArray(String[]::new) : null,
+                known ? funcs.toArray(String[]::new) : null,
+                version
+            );
+        }
+
+        /**
+         * Checks whether none of the dependencies changed since the last check. Must be called with the lock held.
+         */
+        boolean validate(ExprContext context, long version) {
+            if (checked == version)
+                return true;
+            if (vars == null)
+                return false;
+
+            for (String var : vars) {
+                if (context.varVersion(var) > checked)
+                    return false;
+            }
+            for (String func : funcs) {
+                if (context.funcVersion(func) > checked)
+                    return false;
+            }
+
+            checked = version;
+            return true;
+        }
+    }
+
+    /**
+     * Collects the context variables and functions an expression refers to. Returns false if the expression contains
+     * expressions of which the dependencies are unknown.
+     */
+    private static boolean dependencies(ExprContext context, CtxExpression e, Set<String> params, Set<String> vars,
+                                        Set<String> funcs) {
+        if (e instanceof EConstant)
+            return true;
+        if (e instanceof ECVariable v) {
+            if (!params.contains(v.var()))
+                vars.add(v.var());
+            return true;
+        }
+        if (e instanceof ECBinary b)
+            return dependencies(context, b.el(), params, vars, funcs) && dependencies(context, b.er(), params, vars, funcs);
+        if (e instanceof ECUnary u)
+            return dependencies(context, u.e(), params, vars, funcs);
+        if (e instanceof ECChain c) {
+            for (CtxExpression operand : c.operands()) {
+                if (!dependencies(context, operand, params, vars, funcs))
+                    return false;
+            }
+            return true;
+        }
+        if (e instanceof ECFunction f) {
+            // The body of an inlined function is part of the compiled expression, so its dependencies count too
+            if (funcs.add(f.function()) && context.func(f.function()) instanceof InlineFunction inline) {
+                Set<String> inlineParams = new HashSet<>(Arrays.asList(inline.params()));
+                if (!dependencies(context, inline.body(), inlineParams, vars, funcs))
+                    return false;
+            }
+            for (CtxExpression arg : f.exprs()) {
+                if (!dependencies(context, arg, params, vars, funcs))
+                    return false;
+            }
+            return true;
+        }
+        if (e instanceof ECSelect s)
+            return dependencies(context, s.cond(), params, vars, funcs)
+                       && dependencies(context, s.then(), params, vars, funcs)
+                       && dependencies(context, s.otherwise(), params, vars, funcs);
+        return false;
+    }
+}
@@ -0,0 +1,163 @@
+package net.shadew.eval;
+
+import java.util.Objects;
+
+/**
+ * A group of expressions over the same parameters, compiled into a single kernel. Evaluating the set computes all
+ * expressions in one pass: each parameter is loaded once, and subexpressions that occur in more than one expression
+ * are computed only once.
+ * <p>
+ * Conditionals ({@code c ? a : b}, {@code a && b} and {@code a || b}) are evaluated without branching: both operands are
+ * computed and the result is selected afterwards. Unlike when evaluating an expression by itself, functions in the
+ * operand that is not selected are therefore still called. If such a call fails, the failed row, or the failed chunk of
+ * rows in a batch, is evaluated again one expression at a time, which only evaluates the selected operands, so that a
+ * conditional can guard a function against arguments it does not accept. Functions that may mutate are then called
+ * again for these rows. Operands that are certain to fail, such as references to undefined variables, only fail the
+ * evaluation when selected.
+ * <p>
+ * Expression sets are immutable and can be evaluated by multiple threads at the same time, as long as the functions
+ * they call allow that. See {@link #isPure()}.
+ */
+public final class ExpressionSet {
+    private final Program program;
+
+    private ExpressionSet(Program program) {
+        this.program = program;
+    }
+
+    /**
+     * Compiles the given context-free expressions into an expression set.
+     *
+     * @param exprs The expressions, in the order of their outputs
+     * @return The compiled expression set
+     *
+     * @throws NullPointerException If any of the expressions is null
+     */
+    public static ExpressionSet of(Expression... exprs) {
+        for (Expression e : exprs)
+            Objects.requireNonNull(e);
+        return new ExpressionSet(Program.compile(exprs));
+    }
+
+    /**
+     * Compiles the given expressions into an expression set, by first converting them to context-free expressions
+     * using {@link CtxExpression#toContextless}.
+     *
+     * @param context    The context to read variables and functions from
+     * @param paramNames The parameter names
+     * @param exprs      The expressions, in the order of their outputs
+     * @return The compiled expression set
+     *
+     * @throws NullPointerException If any of the expressions is null
+     */
+    public static ExpressionSet compile(ExprContext context, String[] paramNames, CtxExpression... exprs) {
+        Expression[] es = new Expression[exprs.length];
+        for (int i = 0; i < exprs.length; i++)
+            es[i] = exprs[i].toContextless(context, paramNames);
+        return new ExpressionSet(Program.compile(es));
+    }
+
+    /**
+     * Returns the amount of expressions, and thus outputs, in this set.
+     */
+    public int size() {
+        return program.outputs.length;
+    }
+
+    /**
+     * Returns whether all functions called by the expressions in this set are marked as non-mutating. Only then the set
+     * may be evaluated by multiple threads at the same time, unless the mutating functions are safe for concurrent use
+     * themselves.
+     */
+    public boolean isPure() {
+        return program.concurrent;
+    }
+
+    /**
+     * Evaluates all expressions in this set, given the input parameters.
+     *
+     * @param params The input parameters
+     * @return A new array with the result of each expression
+     *
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public double[] eval(double... params) throws EvalException {
+        double[] out = new double[program.outputs.length];
+        program.eval(params, out);
+        return out;
+    }
+
+    /**
+     * Evaluates all expressions in this set, given the input parameters, storing the results in the given array.
+     *
+     * @param params The input parameters
+     * @param out    The array to store the result of each expression in, at least as long as {@link #size()}
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public void eval(double[] params, double[] out) throws EvalException {
+        program.eval(params, out);
+    }
+
+    /**
+     * Evaluates all expressions in this set for many rows of parameters at once. Parameter {@code p} of row {@code i}
+     * is read from {@code columns[p][i]}, and the result of expression {@code e} for row {@code i} is stored in
+     * {@code out[e][i]}. The amount of rows is the length of the first output column.
+     *
+     * @param out     The output columns, one for each expression
+     * @param columns The parameter columns
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public void evalBatch(double[][] out, double[]... columns) throws EvalException {
+        evalBatch(0, out.length == 0 ? 0 : out[0].length, out, columns);
+    }
+
+    /**
+     * Evaluates all expressions in this set for rows {@code from} (inclusive) to {@code to} (exclusive). Parameter
+     * {@code p} of row {@code i} is read from {@code columns[p][i]}, and the result of expression {@code e} for row
+     * {@code i} is stored in {@code out[e][i]}.
+     * <p>
+     * Evaluating in batches is considerably faster than evaluating row by row, since the kernel then runs every
+     * operation over many rows in a tight loop.
+     *
+     * @param from    The first row to evaluate
+     * @param to      The end of the rows to evaluate, exclusive
+     * @param out     The output columns, one for each expression
+     * @param columns The parameter columns
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public void evalBatch(int from, int to, double[][] out, double[]... columns) throws EvalException {
+        program.evalBatch(from, to, out, columns);
+    }
+
+    /**
+     * Evaluates all expressions in this set for many rows of single precision parameters at once. See
+     * {@link #evalBatch(int, int, float[][], float[]...)}. The amount of rows is the length of the first output column.
+     *
+     * @param out     The output columns, one for each expression
+     * @param columns The parameter columns
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public void evalBatch(float[][] out, float[]... columns) throws EvalException {
+        evalBatch(0, out.length == 0 ? 0 : out[0].length, out, columns);
+    }
+
+    /**
+     * Evaluates all expressions in this set for rows {@code from} (inclusive) to {@code to} (exclusive), in single
+     * precision. Parameter {@code p} of row {@code i} is read from {@code columns[p][i]}, and the result of expression
+     * {@code e} for row {@code i} is stored in {@code out[e][i]}.
+     * <p>
+     * All arithmetic is done in single precision, including constants, which are rounded to floats. Only calls to
+     * {@link ExprFunction}s are made in double precision, since functions only accept doubles. This moves half the
+     * amount of memory compared to evaluating in double precision, and the arithmetic loops process twice as many
+     * rows per vector instruction, at the cost of precision.
+     *
+     * @param from    The first row to evaluate
+     * @param to      The end of the rows to evaluate, exclusive
+     * @param out     The output columns, one for each expression
+     * @param columns The parameter columns
+     * @throws EvalException When evaluation of any of the expressions fails
+     */
+    public void evalBatch(int from, int to, float[][] out, float[]... columns) throws EvalException {
+        program.evalBatch(from, to, out, columns);
+    }
+}
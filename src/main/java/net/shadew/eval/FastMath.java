@@ -0,0 +1,156 @@
+package net.shadew.eval;
+
+/**
+ * Polynomial approximations of elementary functions, with the polynomial degree chosen to meet a given error bound.
+ * Arguments are reduced to a small range around zero using exact or nearly exact operations, after which a truncated
+ * Taylor series is evaluated in Horner form. The code is straight-line apart from a range check, uses no tables, and
+ * is small enough to be inlined into evaluation loops.
+ * <p>
+ * The bounds hold for the truncation error of the series. Rounding adds a few ulps on top of that, which is why error
+ * bounds below {@link #MIN_ERROR} are not approximated at all but delegated to {@link Math}.
+ */
+final class FastMath {
+    static final double MIN_ERROR = 1e-14;
+
+    // Cody-Waite splits: the high parts have enough trailing zero bits for products with the reduction multiple to
+    // be exact
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double INV_LN2 = 1.44269504088896338700e+00;
+    private static final double PIO2_HI = 1.57079632673412561417e+00;
+    private static final double PIO2_LO = 6.07710050650619224932e-11;
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    private static final double SQRT2 = 1.41421356237309514547e+00;
+
+    // Largest reduced arguments
+    private static final double EXP_RANGE = 0.35;
+    private static final double LN_RANGE = 0.1716;
+    private static final double TRIG_RANGE = 0.786;
+
+    private final boolean exact;
+    private final double[] expCoeffs;
+    private final double[] lnCoeffs;
+    private final double[] sinCoeffs;
+    private final double[] cosCoeffs;
+
+    /**
+     * @param maxError The maximum relative error of {@link #exp} and {@link #ln}, and the maximum absolute error of
+     *                 {@link #sin} and {@link #cos}
+     */
+    FastMath(double maxError) {
+        if (!(maxError > 0))
+            throw new IllegalArgumentException("Error bound must be positive");
+
+        this.exact = maxError < MIN_ERROR;
+        double bound = maxError / 2;
+
+        // exp(r) = sum r^i / i!, remainder below r^(n+1) / (n+1)! * e^|r|, relative to e^r >= e^-|r|
+        int expDegree = 1;
+        while (Math.pow(EXP_RANGE, expDegree + 1) / factorial(expDegree + 1) * Math.exp(2 * EXP_RANGE) > bound)
+            expDegree++;
+        expCoeffs = new double[expDegree + 1];
+        for (int i = 0; i <= expDegree; i++)
+            expCoeffs[i] = 1 / factorial(i);
+
+        // ln(m) = 2 * sum s^(2i+1) / (2i+1) with s = (m-1)/(m+1), all terms of equal sign, so the remainder relative
+        // to the first term bounds the relative error
+        double s2 = LN_RANGE * LN_RANGE;
+        int lnTerms = 1;
+        while (Math.pow(s2, lnTerms) / ((2 * lnTerms + 1) * (1 - s2)) > bound)
+            lnTerms++;
+        lnCoeffs = new double[lnTerms];
+        for (int i = 0; i < lnTerms; i++)
+            lnCoeffs[i] = 1.0 / (2 * i + 1);
+
+        // Alternating series, so the first omitted term bounds the absolute error
+        int sinTerms = 1;
+        while (Math.pow(TRIG_RANGE, 2 * sinTerms + 1) / factorial(2 * sinTerms + 1) > bound)
+            sinTerms++;
+        sinCoeffs = new double[sinTerms];
+        for (int i = 0; i < sinTerms; i++)
+            sinCoeffs[i] = (i % 2 == 0 ? 1 : -1) / factorial(2 * i + 1);
+
+        int cosTerms = 1;
+        while (Math.pow(TRIG_RANGE, 2 * cosTerms) / factorial(2 * cosTerms) > bound)
+            cosTerms++;
+        cosCoeffs = new double[cosTerms];
+        for (int i = 0; i < cosTerms; i++)
+            cosCoeffs[i] = (i % 2 == 0 ? 1 : -1) / factorial(2 * i);
+    }
+
+    private static double factorial(int n) {
+        double f = 1;
+        for (int i = 2; i <= n; i++)
+            f *= i;
+        return f;
+    }
+
+    private static double horner(double[] c, double x) {
+        double acc = c[c.length - 1];
+        for (int i = c.length - 2; i >= 0; i--)
+            acc = acc * x + c[i];
+        return acc;
+    }
+
+    double exp(double x) {
+        // Outside this range results are infinite, zero, subnormal or NaN
+        if (exact || !(x > -708 && x < 709))
+            return Math.exp(x);
+
+        double k = Math.rint(x * INV_LN2);
+        double r = (x - k * LN2_HI) - k * LN2_LO;
+        return Math.scalb(horner(expCoeffs, r), (int) k);
+    }
+
+    double ln(double x) {
+        if (exact || !(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY))
+            return Math.log(x);
+
+        int e = Math.getExponent(x);
+        double m = Math.scalb(x, -e);
+        if (m > SQRT2) {
+            m *= 0.5;
+            e++;
+        }
+
+        double s = (m - 1) / (m + 1);
+        double lnm = 2 * s * horner(lnCoeffs, s * s);
+        return e * LN2_HI + (e * LN2_LO + lnm);
+    }
+
+    double sin(double x) {
+        if (exact || !(Math.abs(x) <= 0x1p20))
+            return Math.sin(x);
+
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = (x - k * PIO2_HI) - k * PIO2_LO;
+        return switch ((int) k & 3) {
+            case 0 -> sinPoly(r);
+            case 1 -> cosPoly(r);
+            case 2 -> -sinPoly(r);
+            default -> -cosPoly(r);
+        };
+    }
+
+    double cos(double x) {
+        if (exact || !(Math.abs(x) <= 0x1p20))
+            return Math.cos(x);
+
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = (x - k * PIO2_HI) - k * PIO2_LO;
+        return switch ((int) k & 3) {
+            case 0 -> cosPoly(r);
+            case 1 -> -sinPoly(r);
+            case 2 -> -cosPoly(r);
+            default -> sinPoly(r);
+        };
+    }
+
+    private double sinPoly(double r) {
+        return r * horner(sinCoeffs, r * r);
+    }
+
+    private double cosPoly(double r) {
+        return horner(cosCoeffs, r * r);
+    }
+}
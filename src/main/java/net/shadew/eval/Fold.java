@@ -0,0 +1,366 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Builds context-free expression nodes while simplifying them: errors propagate to the enclosing node, operations on
+ * constants are computed right away, and conditionals with a constant condition are replaced by the selected
+ * operand.
+ */
+final class Fold {
+    private Fold() {
+    }
+
+    static Expression binary(Expression l, Expression r, BinaryOp op) {
+        if (l instanceof EError)
+            return l;
+        if (r instanceof EError)
+            return r;
+        if (l instanceof EConstant cl && r instanceof EConstant cr)
+            return new EConstant(op.apply(cl.val(), cr.val()));
+
+        return EBinary.of(l, r, op);
+    }
+
+    /**
+     * Folds a chain of left-associative operations. Only leading constants are combined, combining later constants
+     * would change the order of operations and thus the rounding.
+     */
+    static Expression chain(BinaryOp[] ops, Expression[] operands, boolean pairwise) {
+        for (Expression e : operands) {
+            if (e instanceof EError)
+                return e;
+        }
+
+        int n = operands.length;
+        int k = 0;
+        double v = 0;
+        if (operands[0] instanceof EConstant c) {
+            v = c.val();
+            for (k = 1; k < n && operands[k] instanceof EConstant ck; k++)
+                v = ops[k].apply(v, ck.val());
+            if (k == n)
+                return new EConstant(v);
+            k--;
+        }
+
+        // Operand k is replaced by the folded prefix
+        int m = n - k;
+        BinaryOp[] newOps = Arrays.copyOfRange(ops, k, n);
+        Expression[] newOperands = Arrays.copyOfRange(operands, k, n);
+        newOps[0] = null;
+        if (k > 0)
+            newOperands[0] = new EConstant(v);
+
+        if (m == 2)
+            return EBinary.of(newOperands[0], newOperands[1], newOps[1]);
+        return new EChain(newOps, newOperands, pairwise);
+    }
+
+    static Expression unary(Expression v, UnaryOp op) {
+        if (v instanceof EError)
+            return v;
+        if (v instanceof EConstant c)
+            return new EConstant(op.apply(c.val()));
+
+        return EUnary.of(v, op);
+    }
+
+    static Expression call(ExprFunction func, Expression... args) {
+        for (Expression arg : args) {
+            if (arg instanceof EError)
+                return arg;
+        }
+
+        simplify:
+        if (ExprFunction.doesNotMutate(func)) {
+            double[] res = new double[args.length];
+            for (int i = 0, l = args.length; i < l; i++) {
+                if (args[i] instanceof EConstant c)
+                    res[i] = c.val();
+                else break simplify;
+            }
+
+            try {
+                double val = func.compute(res);
+                return new EConstant(val);
+            } catch (EvalException e) {
+                return new EError(e.getMessage());
+            }
+        }
+
+        return new EFunction(func, args);
+    }
+
+    /**
+     * Folds a conditional. Errors in the operands are kept, since they only occur when the operand is selected.
+     */
+    static Expression select(Expression cond, Expression then, Expression otherwise) {
+        if (cond instanceof EError)
+            return cond;
+        if (cond instanceof EConstant c)
+            return c.val() != 0 ? then : otherwise;
+
+        return new ESelect(cond, then, otherwise);
+    }
+
+    /**
+     * Replaces the given parameters by constants and folds the result. The remaining parameters are renumbered to close
+     * the gaps, keeping their order.
+     */
+    static Expression bind(Expression e, int[] paramIndices, double[] values) {
+        if (paramIndices.length != values.length)
+            throw new IllegalArgumentException("Expected as many values as parameter indices");
+
+        // Sort the indices along with their values
+        int n = paramIndices.length;
+        long[] pairs = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (paramIndices[i] < 0)
+                throw new IllegalArgumentException("Negative parameter index " + paramIndices[i]);
+            pairs[i] = (long) paramIndices[i] << 32 | i;
+        }
+        Arrays.sort(pairs);
+
+        int[] indices = new int[n];
+        double[] sortedValues = new double[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = (int) (pairs[i] >>> 32);
+            sortedValues[i] = values[(int) pairs[i]];
+            if (i > 0 && indices[i] == indices[i - 1])
+                throw new IllegalArgumentException("Parameter " + indices[i] + " bound twice");
+        }
+
+        return n == 0 ? e : new Binder(indices, sortedValues).bind(e);
+    }
+
+    /**
+     * Binds parameters to values, given the bound parameter indices in increasing order.
+     */
+    private record Binder(int[] indices, double[] values) {
+        Expression bind(Expression e) {
+            if (e instanceof EConstant || e instanceof EError)
+                return e;
+            if (e instanceof TieredExpression t)
+                return bind(t.expression());
+            if (e instanceof EParam p)
+                return param(p);
+            if (e instanceof EBinary b)
+                return binary(bind(b.el()), bind(b.er()), b.op());
+            if (e instanceof EUnary u)
+                return unary(bind(u.e()), u.op());
+            if (e instanceof EChain c) {
+                Expression[] operands = new Expression[c.operands().length];
+                for (int i = 0; i < operands.length; i++)
+                    operands[i] = bind(c.operands()[i]);
+                return chain(c.ops(), operands, c.pairwise());
+            }
+            if (e instanceof EFunction f) {
+                Expression[] args = new Expression[f.exprs().length];
+                for (int i = 0; i < args.length; i++)
+                    args[i] = bind(f.exprs()[i]);
+                return call(f.function(), args);
+            }
+            if (e instanceof ESelect s)
+                return select(bind(s.cond()), bind(s.then()), bind(s.otherwise()));
+            if (e instanceof EPolynomial p) {
+                Expression x = bind(p.x());
+                if (x instanceof EConstant c)
+                    return new EConstant(p.apply(c.val()));
+                return new EPolynomial(x, p.coeffs(), p.fma());
+            }
+            if (e instanceof EChebyshev c) {
+                Expression x = param(new EParam(c.param()));
+                Expression original = bind(c.original());
+                if (x instanceof EConstant v) {
+                    // Within the range the approximation is used, outside it the bound original expression
+                    double val = v.val();
+                    if (val >= c.lo() && val <= c.hi())
+                        return new EConstant(c.approximation(val));
+                    return original;
+                }
+                int i = ((EParam) x).i();
+                return new EChebyshev(original, i, c.lo(), c.hi(), c.tolerance(), c.cells(), c.pieces());
+            }
+
+            // An expression we can't look into gets the bound values inserted back upon evaluation
+            return new EBound(e, indices, values);
+        }
+
+        private Expression param(EParam p) {
+            if (p.i() < 0)
+                return p;
+
+            int pos = Arrays.binarySearch(indices, p.i());
+            if (pos >= 0)
+                return new EConstant(values[pos]);
+
+            // The amount of bound parameters before this one
+            int below = -pos - 1;
+            return below == 0 ? p : new EParam(p.i() - below);
+        }
+    }
+
+    /**
+     * Returns whether an expression calls no functions that may mutate, so that it gives the same result however often
+     * it is evaluated. Expressions this can't look into are assumed to mutate. Shared subexpressions are checked once.
+     */
+    static boolean isPure(Expression e) {
+        return isPure(e, new IdentityHashMap<>());
+    }
+
+    private static boolean isPure(Expression e, Map<Expression, Boolean> checked) {
+        if (e instanceof EConstant || e instanceof EParam || e instanceof EError)
+            return true;
+
+        Boolean known = checked.get(e);
+        if (known != null)
+            return known;
+
+        boolean pure = true;
+        if (e instanceof EBinary b) {
+            pure = isPure(b.el(), checked) && isPure(b.er(), checked);
+        } else if (e instanceof EUnary u) {
+            pure = isPure(u.e(), checked);
+        } else if (e instanceof EChain c) {
+            for (Expression operand : c.operands())
+                pure = pure && isPure(operand, checked);
+        } else if (e instanceof EFunction f) {
+            pure = ExprFunction.doesNotMutate(f.function());
+            for (Expression arg : f.exprs())
+                pure = pure && isPure(arg, checked);
+        } else if (e instanceof ESelect s) {
+            pure = isPure(s.cond(), checked) && isPure(s.then(), checked) && isPure(s.otherwise(), checked);
+        } else if (e instanceof EPolynomial p) {
+            pure = isPure(p.x(), checked);
+        } else if (e instanceof EChebyshev c) {
+            pure = isPure(c.original(), checked);
+        } else {
+            pure = false;
+        }
+
+        checked.put(e, pure);
+        return pure;
+    }
+
+    /**
+     * Returns whether an expression reads no parameters other than the given one. Expressions this can't look into are
+     * assumed to read every parameter.
+     */
+    static boolean readsOnly(Expression e, int param) {
+        if (e instanceof EConstant || e instanceof EError)
+            return true;
+        if (e instanceof TieredExpression t)
+            return readsOnly(t.expression(), param);
+        if (e instanceof EParam p)
+            return p.i() == param;
+        if (e instanceof EBinary b)
+            return readsOnly(b.el(), param) && readsOnly(b.er(), param);
+        if (e instanceof EUnary u)
+            return readsOnly(u.e(), param);
+        if (e instanceof EChain c) {
+            for (Expression operand : c.operands()) {
+                if (!readsOnly(operand, param))
+                    return false;
+            }
+            return true;
+        }
+        if (e instanceof EFunction f) {
+            for (Expression arg : f.exprs()) {
+                if (!readsOnly(arg, param))
+                    return false;
+            }
+            return true;
+        }
+        if (e instanceof ESelect s)
+            return readsOnly(s.cond(), param) && readsOnly(s.then(), param) && readsOnly(s.otherwise(), param);
+        if (e instanceof EPolynomial p)
+            return readsOnly(p.x(), param);
+        if (e instanceof EChebyshev c)
+            return c.param() == param && readsOnly(c.original(), param);
+        return false;
+    }
+
+    /**
+     * Counts how often each parameter occurs in an expression, adding to the given counts. Expressions this can't
+     * look into count as using every parameter more than once.
+     */
+    static void countParams(Expression e, int[] counts) {
+        if (e instanceof EConstant || e instanceof EError)
+            return;
+        if (e instanceof TieredExpression t) {
+            countParams(t.expression(), counts);
+        } else if (e instanceof EParam p) {
+            if (p.i() >= 0 && p.i() < counts.length)
+                counts[p.i()]++;
+        } else if (e instanceof EBinary b) {
+            countParams(b.el(), counts);
+            countParams(b.er(), counts);
+        } else if (e instanceof EUnary u) {
+            countParams(u.e(), counts);
+        } else if (e instanceof EChain c) {
+            for (Expression operand : c.operands())
+                countParams(operand, counts);
+        } else if (e instanceof EFunction f) {
+            for (Expression arg : f.exprs())
+                countParams(arg, counts);
+        } else if (e instanceof ESelect s) {
+            countParams(s.cond(), counts);
+            countParams(s.then(), counts);
+            countParams(s.otherwise(), counts);
+        } else if (e instanceof EPolynomial p) {
+            countParams(p.x(), counts);
+        } else {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += 2;
+        }
+    }
+
+    /**
+     * Replaces every parameter {@code i} by the expression {@code args[i]} and folds the result. The argument
+     * expressions are inserted as they are, so an argument that is used more than once ends up shared in the result.
+     */
+    static Expression substitute(Expression e, Expression[] args) {
+        return new Substituter(args).substitute(e);
+    }
+
+    private record Substituter(Expression[] args) {
+        Expression substitute(Expression e) {
+            if (e instanceof EConstant || e instanceof EError)
+                return e;
+            if (e instanceof TieredExpression t)
+                return substitute(t.expression());
+            if (e instanceof EParam p)
+                return p.i() >= 0 && p.i() < args.length ? args[p.i()] : p;
+            if (e instanceof EBinary b)
+                return binary(substitute(b.el()), substitute(b.er()), b.op());
+            if (e instanceof EUnary u)
+                return unary(substitute(u.e()), u.op());
+            if (e instanceof EChain c) {
+                Expression[] operands = new Expression[c.operands().length];
+                for (int i = 0; i < operands.length; i++)
+                    operands[i] = substitute(c.operands()[i]);
+                return chain(c.ops(), operands, c.pairwise());
+            }
+            if (e instanceof EFunction f) {
+                Expression[] fargs = new Expression[f.exprs().length];
+                for (int i = 0; i < fargs.length; i++)
+                    fargs[i] = substitute(f.exprs()[i]);
+                return call(f.function(), fargs);
+            }
+            if (e instanceof ESelect s)
+                return select(substitute(s.cond()), substitute(s.then()), substitute(s.otherwise()));
+            if (e instanceof EPolynomial p) {
+                Expression x = substitute(p.x());
+                if (x instanceof EConstant c)
+                    return new EConstant(p.apply(c.val()));
+                return new EPolynomial(x, p.coeffs(), p.fma());
+            }
+
+            // An expression we can't look into is called with the arguments instead
+            return call(e::eval, args);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression over every point of a grid, as a loop nest with one loop per dimension. Parameter {@code p}
+ * is the loop variable of dimension {@code p}, and the last dimension is the innermost loop. Instructions only depend
+ * on some of the loop variables, and are hoisted out of the loops of the others: an instruction depending only on the
+ * loop variables up to dimension {@code k} runs once per iteration of loop {@code k}, in scalar form. Only the
+ * instructions that depend on the innermost loop variable run per grid point, column-wise over chunks of the innermost
+ * dimension.
+ * <p>
+ * When a conditional fails in an operand it does not select, the grid points of the failed chunk are evaluated again
+ * on the tree form, like {@link ExpressionSet} does.
+ */
+final class Grid {
+    private Grid() {
+    }
+
+    static void eval(Expression e, double[] out, double[][] axes) throws EvalException {
+        int dims = axes.length;
+        if (dims == 0)
+            throw new IllegalArgumentException("Grid needs at least 1 dimension");
+
+        long total = 1;
+        for (double[] axis : axes)
+            total *= axis.length;
+        if (total > out.length)
+            throw new IllegalArgumentException("Output buffer holds " + out.length + " values, grid has " + total + " points");
+        if (total == 0)
+            return;
+
+        Program program = Program.compileGrid(e, dims);
+        int n = program.code.length;
+
+        // The first instruction of every level, where level l starts at segment[l + 1]
+        int[] segment = new int[dims + 2];
+        for (int l = -1, i = 0; l <= dims; l++) {
+            while (i < n && program.levels[i] < l)
+                i++;
+            segment[l + 1] = i;
+        }
+
+        // Outer dimensions are only read as columns by foreign expressions, which evaluate per point
+        boolean columnsNeeded = false;
+        for (int c : program.code)
+            columnsNeeded |= c == Program.EXPR;
+
+        int innerDim = dims - 1;
+        double[] inner = axes[innerDim];
+        double[][] columns = new double[dims][];
+        for (int p = 0; p < innerDim; p++)
+            columns[p] = columnsNeeded ? new double[inner.length] : axes[p];
+        columns[innerDim] = inner;
+
+        Program.Kernel kernel = program.kernel(columns);
+        double[] params = new double[dims];
+
+        int[] index = new int[innerDim];
+        int changed = 0;
+        int pos = 0;
+
+        // After a failure, the hoisted instructions of all levels are run again, as some of them have not run
+        boolean stale = true;
+        while (true) {
+            for (int p = changed; p < innerDim; p++) {
+                params[p] = axes[p][index[p]];
+                if (columnsNeeded)
+                    Arrays.fill(columns[p], params[p]);
+            }
+
+            // A failure in a conditional is evaluated again on the tree form, which may not fail
+            EvalException failure = null;
+            try {
+                kernel.runScalar(segment[stale ? 0 : changed + 1], segment[innerDim + 1], params);
+                stale = false;
+            } catch (EvalException exc) {
+                failure = exc;
+                stale = true;
+            }
+
+            for (int start = 0; start < inner.length; start += Program.CHUNK) {
+                int len = Math.min(Program.CHUNK, inner.length - start);
+                if (failure != null) {
+                    kernel.runPoints(params, start, len, failure);
+                } else {
+                    try {
+                        kernel.run(segment[innerDim + 1], start, len);
+                    } catch (EvalException exc) {
+                        kernel.runPoints(params, start, len, exc);
+                    }
+                }
+                System.arraycopy(kernel.output(0), 0, out, pos, len);
+                pos += len;
+            }
+
+            // Advance the outer loop variables like an odometer
+            int d = innerDim - 1;
+            while (d >= 0 && ++index[d] == axes[d].length) {
+                index[d] = 0;
+                d--;
+            }
+            if (d < 0)
+                return;
+            changed = d;
+        }
+    }
+}
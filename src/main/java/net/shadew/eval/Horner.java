@@ -0,0 +1,186 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites polynomial subexpressions in one parameter into Horner form. A polynomial such as
+ * {@code a*x^3 + b*x^2 + c*x + d} is then evaluated as {@code ((a*x + b)*x + c)*x + d}, which needs no calls to
+ * {@link Math#pow} and about half the multiplications.
+ * <p>
+ * Only polynomials written as a sum of terms are rewritten. Products and powers of sums, such as
+ * {@code (x - 1)^8}, are left as they are, since expanding them cancels catastrophically: near {@code x = 1}, the
+ * expanded coefficients of {@code (x - 1)^8} sum to rounding errors far larger than the actual value. Sums within them
+ * are still rewritten.
+ */
+final class Horner {
+    static final int MAX_DEGREE = 32;
+
+    private Horner() {
+    }
+
+    static Expression rewrite(Expression e, boolean fma) {
+        Polynomial p = polynomial(e);
+        if (p != null) {
+            // Cancelled terms leave zero coefficients at the top
+            int degree = p.degree();
+            while (degree > 0 && p.coeffs[degree] == 0)
+                degree--;
+            if (degree >= 2)
+                return new EPolynomial(new EParam(p.param), Arrays.copyOf(p.coeffs, degree + 1), fma);
+        }
+
+        if (e instanceof EBinary b) {
+            Expression l = rewrite(b.el(), fma);
+            Expression r = rewrite(b.er(), fma);
+            return l == b.el() && r == b.er() ? e : EBinary.of(l, r, b.op());
+        }
+        if (e instanceof EUnary u) {
+            Expression v = rewrite(u.e(), fma);
+            return v == u.e() ? e : EUnary.of(v, u.op());
+        }
+        if (e instanceof EChain c) {
+            Expression[] operands = c.operands().clone();
+            boolean changed = false;
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = rewrite(operands[i], fma);
+                changed |= operands[i] != c.operands()[i];
+            }
+            return changed ? new EChain(c.ops(), operands, c.pairwise()) : e;
+        }
+        if (e instanceof EFunction f) {
+            Expression[] args = f.exprs().clone();
+            boolean changed = false;
+            for (int i = 0; i < args.length; i++) {
+                args[i] = rewrite(args[i], fma);
+                changed |= args[i] != f.exprs()[i];
+            }
+            return changed ? new EFunction(f.function(), args) : e;
+        }
+        if (e instanceof ESelect s) {
+            Expression c = rewrite(s.cond(), fma);
+            Expression t = rewrite(s.then(), fma);
+            Expression o = rewrite(s.otherwise(), fma);
+            return c == s.cond() && t == s.then() && o == s.otherwise() ? e : new ESelect(c, t, o);
+        }
+        return e;
+    }
+
+    /**
+     * Returns the expression as a polynomial in a single parameter, or null if it is not one.
+     */
+    static Polynomial polynomial(Expression e) {
+        if (e instanceof EConstant c)
+            return new Polynomial(-1, new double[] {c.val()});
+        if (e instanceof EParam p)
+            return new Polynomial(p.i(), new double[] {0, 1});
+        if (e instanceof EUnary u && u.op() == UnaryOp.NEG) {
+            Polynomial v = polynomial(u.e());
+            return v == null ? null : v.scale(-1);
+        }
+        if (e instanceof EBinary b) {
+            Polynomial l = polynomial(b.el());
+            return l == null ? null : apply(l, b.op(), b.er());
+        }
+        if (e instanceof EChain c) {
+            Polynomial v = polynomial(c.operands()[0]);
+            for (int i = 1; i < c.operands().length && v != null; i++)
+                v = apply(v, c.ops()[i], c.operands()[i]);
+            return v;
+        }
+        return null;
+    }
+
+    private static Polynomial apply(Polynomial l, BinaryOp op, Expression right) {
+        if (op == BinaryOp.POW) {
+            if (!(right instanceof EConstant c) || c.val() < 0 || c.val() > MAX_DEGREE || c.val() != (int) c.val())
+                return null;
+            Polynomial v = new Polynomial(-1, new double[] {1});
+            for (int i = 0, n = (int) c.val(); i < n && v != null; i++)
+                v = v.mul(l);
+            return v;
+        }
+        if (op == BinaryOp.DIV) {
+            // Scaling by an infinite reciprocal would give NaN coefficients where division gives infinity
+            if (!(right instanceof EConstant c) || !Double.isFinite(1 / c.val()))
+                return null;
+            return l.scale(1 / c.val());
+        }
+
+        Polynomial r = polynomial(right);
+        if (r == null)
+            return null;
+
+        return switch (op) {
+            case ADD -> l.add(r, 1);
+            case SUB -> l.add(r, -1);
+            case MUL -> l.mul(r);
+            default -> null;
+        };
+    }
+
+    /**
+     * A polynomial in parameter {@code param}, or a constant if {@code param} is -1.
+     */
+    record Polynomial(int param, double[] coeffs) {
+        int degree() {
+            return coeffs.length - 1;
+        }
+
+        private static int join(int a, int b) {
+            if (a == -1)
+                return b;
+            if (b == -1 || a == b)
+                return a;
+            return -2;
+        }
+
+        Polynomial scale(double f) {
+            double[] c = new double[coeffs.length];
+            for (int i = 0; i < c.length; i++)
+                c[i] = coeffs[i] * f;
+            return new Polynomial(param, c);
+        }
+
+        Polynomial add(Polynomial o, double sign) {
+            int p = join(param, o.param);
+            if (p == -2)
+                return null;
+
+            double[] c = new double[Math.max(coeffs.length, o.coeffs.length)];
+            for (int i = 0; i < coeffs.length; i++)
+                c[i] = coeffs[i];
+            for (int i = 0; i < o.coeffs.length; i++)
+                c[i] += sign * o.coeffs[i];
+            return new Polynomial(p, c);
+        }
+
+        /**
+         * Returns whether this polynomial has at most one non-zero coefficient, such as {@code 3*x^2}.
+         */
+        boolean isMonomial() {
+            int terms = 0;
+            for (double c : coeffs) {
+                if (c != 0)
+                    terms++;
+            }
+            return terms <= 1;
+        }
+
+        /**
+         * Multiplies two polynomials, if one of them is a monomial. Multiplying two sums is not supported, as it
+         * expands factored forms.
+         */
+        Polynomial mul(Polynomial o) {
+            int p = join(param, o.param);
+            if (p == -2 || degree() + o.degree() > MAX_DEGREE || !isMonomial() && !o.isMonomial())
+                return null;
+
+            double[] c = new double[coeffs.length + o.coeffs.length - 1];
+            for (int i = 0; i < coeffs.length; i++) {
+                for (int j = 0; j < o.coeffs.length; j++)
+                    c[i + j] += coeffs[i] * o.coeffs[j];
+            }
+            return new Polynomial(p, c);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.shadew.eval;
+
+/**
+ * A function defined by an expression, see {@link ExprContext#defineFunc(String, CtxExpression, String...)}. Calls to
+ * it are inlined by {@link CtxExpression#toContextless}: the body is converted in the context of the call, and the
+ * argument expressions take the place of the parameters where that does not duplicate them. The result is one
+ * expression that is simplified as a whole.
+ * <p>
+ * A function that calls itself, directly or through other inlined functions, can't be inlined. Such a call is
+ * converted to an error instead.
+ */
+final class InlineFunction implements ExprFunction {
+    private final ExprContext owner;
+    private final String name;
+    private final String[] params;
+    private final CtxExpression body;
+
+    // The body last converted for evaluation, see compiled
+    private volatile Compiled compiled;
+
+    InlineFunction(ExprContext owner, String name, String[] params, CtxExpression body) {
+        this.owner = owner;
+        this.name = name;
+        this.params = params;
+        this.body = body;
+    }
+
+    String[] params() {
+        return params;
+    }
+
+    CtxExpression body() {
+        return body;
+    }
+
+    /**
+     * Converts the body in the given context, with the parameters of this function as parameters.
+     */
+    private Expression compile(ExprContext context) {
+        if (context.isInlining(this))
+            return new EError("Function '" + name + "' is recursive");
+        return body.toContextless(context.inlining(this), params);
+    }
+
+    /**
+     * Returns the body converted in the given context, reusing the last conversion if it was done in the same context
+     * at the same {@linkplain ExprContext#version() version}. Like {@link ExpressionCache}, this assumes that variable
+     * resolvers return the same values in between modifications.
+     */
+    private Expression compiled(ExprContext context) {
+        long version = context.version();
+        Compiled c = compiled;
+        if (c != null && c.context() == context && c.version() == version)
+            return c.body();
+
+        Expression e = compile(context);
+        compiled = new Compiled(context, version, e);
+        return e;
+    }
+
+    /**
+     * Inlines a call with the given, already converted arguments. An argument is only inserted into the body when it
+     * is a parameter or a constant, or when the body uses it at most once, so that inlining never evaluates an argument
+     * more than a call would. Nested calls would otherwise grow exponentially. Arguments that call functions that may
+     * mutate are never inserted. If any argument can't be inserted, the converted body is called like any other
+     * function.
+     */
+    Expression inline(ExprContext context, Expression[] args) {
+        if (args.length != params.length)
+            return new EError("Function '" + name + "': " + arityMessage(args.length));
+        for (Expression arg : args) {
+            if (arg instanceof EError)
+                return arg;
+        }
+
+        Expression e = compile(context);
+        int[] uses = new int[args.length];
+        Fold.countParams(e, uses);
+        for (int i = 0; i < args.length; i++) {
+            Expression arg = args[i];
+            if (arg instanceof EConstant || arg instanceof EParam)
+                continue;
+            if (uses[i] > 1 || !Fold.isPure(arg))
+                return Fold.call(function(e), args);
+        }
+        return Fold.substitute(e, args);
+    }
+
+    /**
+     * Calls this function as part of the evaluation of an expression in the given context.
+     */
+    double call(ExprContext context, double[] args) throws EvalException {
+        if (args.length != params.length)
+            throw new EvalException(arityMessage(args.length));
+        return compiled(context).eval(args);
+    }
+
+    private String arityMessage(int count) {
+        return "Expected " + params.length + " argument(s), got " + count;
+    }
+
+    @Override
+    public double compute(double... args) throws EvalException {
+        return call(owner, args);
+    }
+
+    @Override
+    public Interval computeInterval(Interval... args) throws EvalException {
+        if (args.length != params.length)
+            throw new EvalException(arityMessage(args.length));
+        return compiled(owner).evalInterval(args);
+    }
+
+    @Override
+    public double cost() {
+        return compiled(owner).estimateCost();
+    }
+
+    private record Compiled(ExprContext context, long version, Expression body) {
+    }
+
+    /**
+     * Returns a function that evaluates a converted body, which is non-mutating if the body is.
+     */
+    private static ExprFunction function(Expression e) {
+        if (Fold.isPure(e)) {
+            return new NonMutatingFunction() {
+                @Override
+                public double compute(double... args) throws EvalException {
+                    return e.eval(args);
+                }
+
+                @Override
+                public Interval computeInterval(Interval... args) throws EvalException {
+                    return e.evalInterval(args);
+                }
+
+                @Override
+                public double cost() {
+                    return e.estimateCost();
+                }
+            };
+        }
+
+        return new ExprFunction() {
+            @Override
+            public double compute(double... args) throws EvalException {
+                return e.eval(args);
+            }
+
+            @Override
+            public Interval computeInterval(Interval... args) throws EvalException {
+                return e.evalInterval(args);
+            }
+
+            @Override
+            public double cost() {
+                return e.estimateCost();
+            }
+        };
+    }
+}
@@ -0,0 +1,321 @@
+package net.shadew.eval;
+
+/**
+ * A closed range of real numbers {@code [lo, hi]}, used to compute guaranteed bounds of an expression over a range of
+ * inputs. See {@link Expression#evalInterval}.
+ * <p>
+ * All operations round outwards: the result of an interval operation contains the exact mathematical result, as well
+ * as the floating point result, of the corresponding operation for every combination of values within the operand
+ * intervals. Bounds may be infinite. NaN is not tracked: when an operation could produce NaN for some inputs, the
+ * result is {@link #ENTIRE}, which should be read as "unknown".
+ *
+ * @param lo The lower bound, inclusive
+ * @param hi The upper bound, inclusive
+ */
+public record Interval(double lo, double hi) {
+    /**
+     * The entire real line, {@code [-inf, inf]}.
+     */
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    /**
+     * The single point zero.
+     */
+    public static final Interval ZERO = new Interval(0, 0);
+
+    /**
+     * The single point one.
+     */
+    public static final Interval ONE = new Interval(1, 1);
+
+    /**
+     * @throws IllegalArgumentException If either bound is NaN or if the lower bound is greater than the upper bound
+     */
+    public Interval {
+        if (!(lo <= hi))
+            throw new IllegalArgumentException("Invalid interval [" + lo + ", " + hi + "]");
+    }
+
+    /**
+     * Returns the interval containing only the given value.
+     *
+     * @param val The value
+     * @return The interval {@code [val, val]}, or {@link #ENTIRE} if the value is NaN
+     */
+    public static Interval of(double val) {
+        if (Double.isNaN(val))
+            return ENTIRE;
+        return new Interval(val, val);
+    }
+
+    /**
+     * Returns the interval between the given bounds. Unlike the constructor, this method accepts NaN bounds, in which
+     * case {@link #ENTIRE} is returned.
+     *
+     * @param lo The lower bound
+     * @param hi The upper bound
+     * @return The interval {@code [lo, hi]}
+     *
+     * @throws IllegalArgumentException If the lower bound is greater than the upper bound
+     */
+    public static Interval of(double lo, double hi) {
+        if (Double.isNaN(lo) || Double.isNaN(hi))
+            return ENTIRE;
+        return new Interval(lo, hi);
+    }
+
+    /**
+     * Returns whether this interval contains only one value.
+     */
+    public boolean isPoint() {
+        return lo == hi;
+    }
+
+    /**
+     * Returns whether this interval contains the given value.
+     */
+    public boolean contains(double val) {
+        return lo <= val && val <= hi;
+    }
+
+    /**
+     * Returns whether this interval contains the given interval entirely.
+     */
+    public boolean contains(Interval other) {
+        return lo <= other.lo && other.hi <= hi;
+    }
+
+    /**
+     * Returns the width of this interval, rounded upwards.
+     */
+    public double width() {
+        return subUp(hi, lo);
+    }
+
+    /**
+     * Returns the smallest interval containing both this and the given interval.
+     */
+    public Interval hull(Interval other) {
+        return new Interval(Math.min(lo, other.lo), Math.max(hi, other.hi));
+    }
+
+    public Interval neg() {
+        return new Interval(-hi, -lo);
+    }
+
+    public Interval abs() {
+        if (lo >= 0)
+            return this;
+        if (hi <= 0)
+            return new Interval(-hi, -lo);
+        return new Interval(0, Math.max(-lo, hi));
+    }
+
+    public Interval add(Interval other) {
+        return of(addDown(lo, other.lo), addUp(hi, other.hi));
+    }
+
+    public Interval sub(Interval other) {
+        return of(subDown(lo, other.hi), subUp(hi, other.lo));
+    }
+
+    public Interval mul(Interval other) {
+        double a = lo, b = hi, c = other.lo, d = other.hi;
+        double min = min(mulDown(a, c), mulDown(a, d), mulDown(b, c), mulDown(b, d));
+        double max = max(mulUp(a, c), mulUp(a, d), mulUp(b, c), mulUp(b, d));
+        return of(min, max);
+    }
+
+    public Interval div(Interval other) {
+        double a = lo, b = hi, c = other.lo, d = other.hi;
+        if (c <= 0 && d >= 0)
+            return ENTIRE;
+
+        double min = min(divDown(a, c), divDown(a, d), divDown(b, c), divDown(b, d));
+        double max = max(divUp(a, c), divUp(a, d), divUp(b, c), divUp(b, d));
+        return of(min, max);
+    }
+
+    /**
+     * Computes the range of the remainder operator {@code %}, which takes the sign of the dividend.
+     */
+    public Interval mod(Interval other) {
+        if (isPoint() && other.isPoint())
+            return of(lo % other.lo);
+
+        double c = other.lo, d = other.hi;
+        if (c <= 0 && d >= 0 || Double.isInfinite(lo) || Double.isInfinite(hi))
+            return ENTIRE;
+
+        double minDivisor = c > 0 ? c : -d;
+        double maxDivisor = c > 0 ? d : -c;
+
+        // Remainder is exact and leaves dividends smaller than the divisor untouched
+        if (-minDivisor < lo && hi < minDivisor)
+            return this;
+
+        double rlo = lo >= 0 ? 0 : Math.max(lo, -maxDivisor);
+        double rhi = hi <= 0 ? 0 : Math.min(hi, maxDivisor);
+        return new Interval(rlo, rhi);
+    }
+
+    /**
+     * Computes the range of {@link Math#pow(double, double)}.
+     */
+    public Interval pow(Interval other) {
+        if (isPoint() && other.isPoint()) {
+            double v = Math.pow(lo, other.lo);
+            return of(down(v), up(v));
+        }
+
+        if (other.isPoint() && isInteger(other.lo)) {
+            double n = other.lo;
+            if (n == 0)
+                return ONE;
+
+            boolean even = n % 2 == 0;
+            if (n > 0) {
+                if (!even || lo >= 0)
+                    return powBounds(lo, hi, n);
+                if (hi <= 0)
+                    return powBounds(hi, lo, n);
+                return of(0, up(Math.max(Math.pow(lo, n), Math.pow(hi, n))));
+            }
+
+            if (contains(0))
+                return ENTIRE;
+            if (!even || lo > 0)
+                return powBounds(hi, lo, n);
+            return powBounds(lo, hi, n);
+        }
+
+        if (lo >= 0) {
+            // Monotonic in both arguments for non-negative bases, so the extremes are at the corners
+            double a = Math.pow(lo, other.lo);
+            double b = Math.pow(lo, other.hi);
+            double c = Math.pow(hi, other.lo);
+            double d = Math.pow(hi, other.hi);
+            return of(down(min(a, b, c, d)), up(max(a, b, c, d)));
+        }
+
+        return ENTIRE;
+    }
+
+    private static Interval powBounds(double lo, double hi, double n) {
+        return of(down(Math.pow(lo, n)), up(Math.pow(hi, n)));
+    }
+
+    private static boolean isInteger(double d) {
+        return Math.rint(d) == d && Math.abs(d) < 0x1p53;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + lo + ", " + hi + "]";
+    }
+
+
+    // Directed rounding. Java only rounds to nearest, but the rounding error of addition, multiplication and division
+    // can be computed exactly, which tells in which direction the result was rounded. Near the subnormal range the
+    // error itself may not be representable, in which case we conservatively widen by one ulp.
+
+    private static final double SAFE_ERROR = 0x1p-969;
+
+    static double down(double v) {
+        return Math.nextDown(v);
+    }
+
+    static double up(double v) {
+        return Math.nextUp(v);
+    }
+
+    static double addDown(double a, double b) {
+        double s = a + b;
+        if (Double.isInfinite(s))
+            return Double.isFinite(a) && Double.isFinite(b) && s > 0 ? Double.MAX_VALUE : s;
+        if (Double.isNaN(s))
+            return s;
+        return addError(a, b, s) < 0 ? Math.nextDown(s) : s;
+    }
+
+    static double addUp(double a, double b) {
+        double s = a + b;
+        if (Double.isInfinite(s))
+            return Double.isFinite(a) && Double.isFinite(b) && s < 0 ? -Double.MAX_VALUE : s;
+        if (Double.isNaN(s))
+            return s;
+        return addError(a, b, s) > 0 ? Math.nextUp(s) : s;
+    }
+
+    static double subDown(double a, double b) {
+        return addDown(a, -b);
+    }
+
+    static double subUp(double a, double b) {
+        return addUp(a, -b);
+    }
+
+    private static double addError(double a, double b, double s) {
+        double bb = s - a;
+        return (a - (s - bb)) + (b - bb);
+    }
+
+    static double mulDown(double a, double b) {
+        double p = a * b;
+        if (Double.isInfinite(p))
+            return Double.isFinite(a) && Double.isFinite(b) && p > 0 ? Double.MAX_VALUE : p;
+        if (Double.isNaN(p))
+            return p;
+        if (Math.abs(p) < SAFE_ERROR)
+            return p == 0 && (a == 0 || b == 0) ? p : Math.nextDown(p);
+        return Math.fma(a, b, -p) < 0 ? Math.nextDown(p) : p;
+    }
+
+    static double mulUp(double a, double b) {
+        double p = a * b;
+        if (Double.isInfinite(p))
+            return Double.isFinite(a) && Double.isFinite(b) && p < 0 ? -Double.MAX_VALUE : p;
+        if (Double.isNaN(p))
+            return p;
+        if (Math.abs(p) < SAFE_ERROR)
+            return p == 0 && (a == 0 || b == 0) ? p : Math.nextUp(p);
+        return Math.fma(a, b, -p) > 0 ? Math.nextUp(p) : p;
+    }
+
+    static double divDown(double a, double b) {
+        double q = a / b;
+        if (Double.isInfinite(q))
+            return Double.isFinite(a) && q > 0 ? Double.MAX_VALUE : q;
+        if (Double.isNaN(q) || Double.isInfinite(b))
+            return q == 0 ? -Double.MIN_VALUE : q;
+        if (Math.abs(q) < SAFE_ERROR || Math.abs(a) < SAFE_ERROR)
+            return q == 0 && a == 0 ? q : Math.nextDown(q);
+        // a/b - q has the sign of (a - q*b)/b
+        double r = Math.fma(-q, b, a);
+        return (b > 0 ? r < 0 : r > 0) ? Math.nextDown(q) : q;
+    }
+
+    static double divUp(double a, double b) {
+        double q = a / b;
+        if (Double.isInfinite(q))
+            return Double.isFinite(a) && q < 0 ? -Double.MAX_VALUE : q;
+        if (Double.isNaN(q) || Double.isInfinite(b))
+            return q == 0 ? Double.MIN_VALUE : q;
+        if (Math.abs(q) < SAFE_ERROR || Math.abs(a) < SAFE_ERROR)
+            return q == 0 && a == 0 ? q : Math.nextUp(q);
+        double r = Math.fma(-q, b, a);
+        return (b > 0 ? r > 0 : r < 0) ? Math.nextUp(q) : q;
+    }
+
+    private static double min(double a, double b, double c, double d) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d))
+            return Double.NaN;
+        return Math.min(Math.min(a, b), Math.min(c, d));
+    }
+
+    private static double max(double a, double b, double c, double d) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d))
+            return Double.NaN;
+        return Math.max(Math.max(a, b), Math.max(c, d));
+    }
+}
@@ -0,0 +1,230 @@
+package net.shadew.eval;
+
+/**
+ * A built-in, non-mutating function that knows how to compute its range over interval arguments. The interval rules
+ * rely on the monotonicity of the functions, and on {@link Math} being accurate to one ulp and semi-monotonic.
+ */
+record MathFunction(ExprFunction function, IntervalFunction intervals, double cost) implements NonMutatingFunction {
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2;
+    private static final Interval LN_2 = new Interval(Interval.down(Math.log(2)), Interval.up(Math.log(2)));
+
+    MathFunction(ExprFunction function, IntervalFunction intervals) {
+        this(function, intervals, DEFAULT_COST);
+    }
+
+    @Override
+    public double compute(double... args) throws EvalException {
+        return function.compute(args);
+    }
+
+    @Override
+    public MathFunction withCost(double cost) {
+        return new MathFunction(function, intervals, cost);
+    }
+
+    @Override
+    public Interval computeInterval(Interval... args) throws EvalException {
+        return intervals.compute(args);
+    }
+
+    interface IntervalFunction {
+        Interval compute(Interval... args) throws EvalException;
+    }
+
+    interface UnaryIntervalFunction {
+        Interval compute(Interval a) throws EvalException;
+    }
+
+    interface BinaryIntervalFunction {
+        Interval compute(Interval a, Interval b) throws EvalException;
+    }
+
+    static MathFunction of(ExprFunction fn, IntervalFunction intervals) {
+        return new MathFunction(fn, intervals);
+    }
+
+    static MathFunction one(ExprFunction.One fn, UnaryIntervalFunction intervals) {
+        return new MathFunction(ExprFunction.one(fn), args -> {
+            if (args.length < 1)
+                throw new EvalException("Expected 1 argument");
+            return intervals.compute(args[0]);
+        });
+    }
+
+    static MathFunction two(ExprFunction.Two fn, BinaryIntervalFunction intervals) {
+        return new MathFunction(ExprFunction.two(fn), args -> {
+            if (args.length < 2)
+                throw new EvalException("Expected 2 arguments");
+            return intervals.compute(args[0], args[1]);
+        });
+    }
+
+    /**
+     * A function that is exact and non-decreasing everywhere, such as {@link Math#floor}.
+     */
+    static MathFunction exact(ExprFunction.One fn) {
+        return one(fn, a -> Interval.of(fn.compute(a.lo()), fn.compute(a.hi())));
+    }
+
+    /**
+     * A function that is non-decreasing everywhere.
+     */
+    static MathFunction increasing(ExprFunction.One fn) {
+        return increasing(fn, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * A function that is non-decreasing within the given domain, and undefined outside it.
+     */
+    static MathFunction increasing(ExprFunction.One fn, double min, double max) {
+        return one(fn, a -> {
+            if (a.lo() < min || a.hi() > max)
+                return Interval.ENTIRE;
+            return Interval.of(Interval.down(fn.compute(a.lo())), Interval.up(fn.compute(a.hi())));
+        });
+    }
+
+    /**
+     * A function that is non-increasing within the given domain, and undefined outside it.
+     */
+    static MathFunction decreasing(ExprFunction.One fn, double min, double max) {
+        return one(fn, a -> {
+            if (a.lo() < min || a.hi() > max)
+                return Interval.ENTIRE;
+            return Interval.of(Interval.down(fn.compute(a.hi())), Interval.up(fn.compute(a.lo())));
+        });
+    }
+
+    /**
+     * An approximation of another function, of which the results are within the given relative and absolute error of
+     * the results of the other function. The range is that of the other function, widened by the error.
+     */
+    static MathFunction approximate(ExprFunction.One fn, ExprFunction exact, double relError, double absError) {
+        return one(fn, a -> {
+            Interval i = exact.computeInterval(a);
+            double lo = i.lo(), hi = i.hi();
+            return Interval.of(
+                Interval.down(lo - Math.abs(lo) * relError - absError),
+                Interval.up(hi + Math.abs(hi) * relError + absError)
+            );
+        });
+    }
+
+    /**
+     * See {@link #approximate(ExprFunction.One, ExprFunction, double, double)}.
+     */
+    static MathFunction approximate(ExprFunction.Two fn, ExprFunction exact, double relError) {
+        return two(fn, (a, b) -> {
+            Interval i = exact.computeInterval(a, b);
+            double lo = i.lo(), hi = i.hi();
+            return Interval.of(Interval.down(lo - Math.abs(lo) * relError), Interval.up(hi + Math.abs(hi) * relError));
+        });
+    }
+
+    static Interval sin(Interval a) throws EvalException {
+        return periodic(a, Math::sin, HALF_PI, -HALF_PI);
+    }
+
+    static Interval cos(Interval a) throws EvalException {
+        return periodic(a, Math::cos, 0, Math.PI);
+    }
+
+    /**
+     * Range of a function with period 2pi and range [-1, 1], that is monotonic between its maxima and minima.
+     */
+    private static Interval periodic(Interval a, ExprFunction.One fn, double maxAt, double minAt) throws EvalException {
+        double lo = a.lo(), hi = a.hi();
+        if (Double.isInfinite(lo) || Double.isInfinite(hi))
+            return Interval.ENTIRE;
+        if (hi - lo >= TWO_PI)
+            return new Interval(-1, 1);
+
+        double flo = fn.compute(lo), fhi = fn.compute(hi);
+        double rlo = Math.max(-1, Interval.down(Math.min(flo, fhi)));
+        double rhi = Math.min(1, Interval.up(Math.max(flo, fhi)));
+        if (hitsPeriodicPoint(lo, hi, maxAt, TWO_PI))
+            rhi = 1;
+        if (hitsPeriodicPoint(lo, hi, minAt, TWO_PI))
+            rlo = -1;
+        return new Interval(rlo, rhi);
+    }
+
+    static Interval tan(Interval a) throws EvalException {
+        double lo = a.lo(), hi = a.hi();
+        if (Double.isInfinite(lo) || Double.isInfinite(hi) || hitsPeriodicPoint(lo, hi, HALF_PI, Math.PI))
+            return Interval.ENTIRE;
+        return Interval.of(Interval.down(Math.tan(lo)), Interval.up(Math.tan(hi)));
+    }
+
+    /**
+     * Returns whether {@code [lo, hi]} may contain {@code offset + k * period} for some integer k. Errs towards true,
+     * since the periodic points themselves are not representable exactly.
+     */
+    private static boolean hitsPeriodicPoint(double lo, double hi, double offset, double period) {
+        double klo = (lo - offset) / period;
+        double khi = (hi - offset) / period;
+        double slack = 1e-9 * Math.max(1, Math.max(Math.abs(klo), Math.abs(khi)));
+        return Math.floor(khi + slack) >= Math.ceil(klo - slack);
+    }
+
+    static Interval cosh(Interval a) throws EvalException {
+        double lo = a.lo(), hi = a.hi();
+        if (lo >= 0)
+            return Interval.of(Interval.down(Math.cosh(lo)), Interval.up(Math.cosh(hi)));
+        if (hi <= 0)
+            return Interval.of(Interval.down(Math.cosh(hi)), Interval.up(Math.cosh(lo)));
+        return Interval.of(1, Interval.up(Math.max(Math.cosh(lo), Math.cosh(hi))));
+    }
+
+    static Interval ln(Interval a) {
+        if (a.lo() < 0)
+            return Interval.ENTIRE;
+        return Interval.of(Interval.down(Math.log(a.lo())), Interval.up(Math.log(a.hi())));
+    }
+
+    static Interval log2(Interval a) {
+        // Math.log(2) is not exact, so widen the divisor to contain the real value
+        return ln(a).div(LN_2);
+    }
+
+    static Interval max(Interval... args) {
+        double lo = Double.NEGATIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+        for (Interval a : args) {
+            lo = Math.max(a.lo(), lo);
+            hi = Math.max(a.hi(), hi);
+        }
+        return new Interval(lo, hi);
+    }
+
+    static Interval min(Interval... args) {
+        double lo = Double.POSITIVE_INFINITY, hi = Double.POSITIVE_INFINITY;
+        for (Interval a : args) {
+            lo = Math.min(a.lo(), lo);
+            hi = Math.min(a.hi(), hi);
+        }
+        return new Interval(lo, hi);
+    }
+
+    static Interval avg(Interval... args) {
+        Interval count = Interval.of(args.length);
+        Interval v = Interval.ZERO;
+        for (Interval a : args)
+            v = v.add(a.div(count));
+        return v;
+    }
+
+    static Interval sum(Interval... args) {
+        Interval v = Interval.ZERO;
+        for (Interval a : args)
+            v = v.add(a);
+        return v;
+    }
+
+    static Interval prod(Interval... args) {
+        Interval v = Interval.ONE;
+        for (Interval a : args)
+            v = v.mul(a);
+        return v;
+    }
+}
@@ -0,0 +1,291 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A non-mutating function that remembers the results of its most recent calls, so that repeated calls with the same
+ * arguments do not need to recompute. Create one using {@link ExprFunction#memoize(ExprFunction, int)}.
+ * <p>
+ * The cache holds a bounded amount of entries and evicts the least recently used entries first. It is safe for
+ * concurrent use: entries are spread over independently locked segments, so that threads calling with different
+ * arguments rarely contend. Arguments are compared by their exact bits, and are hashed without boxing them. Calls that
+ * throw an {@link EvalException} are not remembered.
+ * <p>
+ * Since the function is non-mutating, expressions calling it with only constant arguments are still simplified when
+ * made context-free, in which case the cache is not involved at all during evaluation.
+ */
+public final class MemoizedFunction implements NonMutatingFunction {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final ExprFunction function;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    MemoizedFunction(ExprFunction function, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        this.function = function;
+
+        // Use less segments for small caches, so that the LRU order stays meaningful
+        int segmentCount = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize / 64)));
+        this.segments = new Segment[segmentCount];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            int size = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(size);
+        }
+    }
+
+    /**
+     * Returns the function of which the results are remembered.
+     */
+    public ExprFunction function() {
+        return function;
+    }
+
+    @Override
+    public double compute(double... args) throws EvalException {
+        int hash = hash(args);
+        Segment segment = segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+
+        long bits = segment.get(args, hash);
+        if (bits != Segment.ABSENT) {
+            hits.increment();
+            return Double.longBitsToDouble(bits);
+        }
+
+        misses.increment();
+        double val = function.compute(args);
+        segment.put(args.clone(), hash, val);
+        return val;
+    }
+
+    @Override
+    public Interval computeInterval(Interval... args) throws EvalException {
+        return function.computeInterval(args);
+    }
+
+    @Override
+    public double cost() {
+        return function.cost();
+    }
+
+    /**
+     * Returns the amount of calls that were answered from the cache.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the amount of calls that had to compute their result.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the fraction of calls that were answered from the cache, or 0 if there were no calls yet.
+     */
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the amount of remembered results.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Forgets all remembered results and resets the statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments)
+            segment.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    private static int hash(double[] args) {
+        int h = args.length;
+        for (double arg : args) {
+            long bits = Double.doubleToLongBits(arg);
+            h = h * 31 + (int) (bits ^ bits >>> 32);
+        }
+
+        // Spread the bits, since both the segment and the table index depend on them
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static boolean sameArgs(double[] a, double[] b) {
+        if (a.length != b.length)
+            return false;
+        for (int i = 0, l = a.length; i < l; i++) {
+            if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A fixed-capacity LRU map from argument arrays to results. Entries live in parallel arrays and are linked into a
+     * doubly linked recency list by index. They are found through an open addressing table with linear probing.
+     */
+    private static final class Segment {
+        // A NaN with a payload that Double.doubleToLongBits never returns, since it collapses all NaNs
+        static final long ABSENT = 0x7ff0_dead_beef_0001L;
+
+        private final int capacity;
+        private final double[][] keys;
+        private final double[] values;
+        private final int[] hashes;
+        private final int[] prev;
+        private final int[] next;
+        private final int[] table;
+        private final int mask;
+
+        private int size;
+        private int head = -1;
+        private int tail = -1;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.keys = new double[capacity][];
+            this.values = new double[capacity];
+            this.hashes = new int[capacity];
+            this.prev = new int[capacity];
+            this.next = new int[capacity];
+
+            int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.table = new int[tableSize];
+            this.mask = tableSize - 1;
+            Arrays.fill(table, -1);
+        }
+
+        synchronized long get(double[] args, int hash) {
+            int slot = find(args, hash);
+            if (slot < 0)
+                return ABSENT;
+
+            int entry = table[slot];
+            moveToHead(entry);
+            return Double.doubleToLongBits(values[entry]);
+        }
+
+        synchronized void put(double[] args, int hash, double val) {
+            int slot = find(args, hash);
+            if (slot >= 0) {
+                // Another thread computed the same value in the meantime
+                int entry = table[slot];
+                values[entry] = val;
+                moveToHead(entry);
+                return;
+            }
+
+            int entry;
+            if (size < capacity) {
+                entry = size++;
+            } else {
+                entry = tail;
+                removeFromTable(entry);
+                unlink(entry);
+            }
+
+            keys[entry] = args;
+            values[entry] = val;
+            hashes[entry] = hash;
+            linkAtHead(entry);
+
+            int s = hash & mask;
+            while (table[s] != -1)
+                s = s + 1 & mask;
+            table[s] = entry;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(table, -1);
+            Arrays.fill(keys, null);
+            size = 0;
+            head = tail = -1;
+        }
+
+        private int find(double[] args, int hash) {
+            int s = hash & mask;
+            int entry;
+            while ((entry = table[s]) != -1) {
+                if (hashes[entry] == hash && sameArgs(keys[entry], args))
+                    return s;
+                s = s + 1 & mask;
+            }
+            return -1;
+        }
+
+        private void removeFromTable(int entry) {
+            int s = hashes[entry] & mask;
+            while (table[s] != entry)
+                s = s + 1 & mask;
+
+            // Shift back later entries of the probe sequence, so that no tombstones are needed
+            int hole = s;
+            s = s + 1 & mask;
+            int e;
+            while ((e = table[s]) != -1) {
+                int home = hashes[e] & mask;
+                if ((s - home & mask) >= (s - hole & mask)) {
+                    table[hole] = e;
+                    hole = s;
+                }
+                s = s + 1 & mask;
+            }
+            table[hole] = -1;
+        }
+
+        private void linkAtHead(int entry) {
+            prev[entry] = -1;
+            next[entry] = head;
+            if (head != -1)
+                prev[head] = entry;
+            head = entry;
+            if (tail == -1)
+                tail = entry;
+        }
+
+        private void unlink(int entry) {
+            int p = prev[entry], n = next[entry];
+            if (p != -1)
+                next[p] = n;
+            else
+                head = n;
+            if (n != -1)
+                prev[n] = p;
+            else
+                tail = p;
+        }
+
+        private void moveToHead(int entry) {
+            if (head != entry) {
+                unlink(entry);
+                linkAtHead(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package net.shadew.eval;
+
+/**
+ * Limits on the size of expressions accepted by {@link CtxExpression#parse(String, ParseLimits)}, to reject
+ * pathological input early. Parsing fails with a {@link ParseException} as soon as a limit is exceeded.
+ *
+ * @param maxLength The maximum length of the input, in characters
+ * @param maxDepth  The maximum nesting depth: every pair of parentheses or vertical bars, function argument, prefix
+ *                  operator and conditional operand adds one level, and so does every operation in a sequence of
+ *                  powers, comparisons or logical operators, which nest to the left
+ * @param maxNodes  The maximum amount of operations, function calls, variables and numbers in the expression
+ */
+public record ParseLimits(int maxLength, int maxDepth, int maxNodes) {
+    /**
+     * The limits used by {@link CtxExpression#parse(String)}, which only limit the depth to 256 levels. Deeper
+     * expressions may overflow the stack upon parsing or evaluation.
+     */
+    public static final ParseLimits DEFAULT = new ParseLimits(Integer.MAX_VALUE, 256, Integer.MAX_VALUE);
+
+    /**
+     * @throws IllegalArgumentException If any limit is less than 1
+     */
+    public ParseLimits {
+        if (maxLength < 1 || maxDepth < 1 || maxNodes < 1)
+            throw new IllegalArgumentException("Limits must be at least 1");
+    }
+}
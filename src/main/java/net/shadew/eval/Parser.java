@@ -1,17 +1,75 @@
 package net.shadew.eval;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 class Parser {
     static final ThreadLocal<Parser> parser = ThreadLocal.withInitial(Parser::new);
 
     private int pos;
     private String string;
+    private int barDepth;
+    private Map<CtxExpression, CtxExpression> interned;
+    private ParseLimits limits = ParseLimits.DEFAULT;
+    private int depth;
+    private int nodes;
 
     void input(String str) {
+        input(str, ParseLimits.DEFAULT);
+    }
+
+    void input(String str, ParseLimits limits) {
         pos = 0;
         string = str;
+        barDepth = 0;
+        depth = 0;
+        nodes = 0;
+        this.limits = limits;
+    }
+
+    /**
+     * Parses all given expressions in parallel, sharing structurally equal subexpressions among all of them through one
+     * intern table.
+     */
+    static List<CtxExpression> parseAll(List<String> exprs, ParseLimits limits) throws ParseException {
+        int n = exprs.size();
+        CtxExpression[] results = new CtxExpression[n];
+        ParseException[] errors = new ParseException[n];
+        Map<CtxExpression, CtxExpression> interned = new ConcurrentHashMap<>();
+
+        IntStream.range(0, n).parallel().forEach(i -> {
+            Parser p = parser.get();
+            p.input(exprs.get(i), limits);
+            p.interned = interned;
+            try {
+                results[i] = p.parse();
+            } catch (ParseException exc) {
+                errors[i] = exc;
+            } finally {
+                p.interned = null;
+            }
+        });
+
+        for (ParseException exc : errors) {
+            if (exc != null)
+                throw exc;
+        }
+        return Arrays.asList(results);
+    }
+
+    private CtxExpression intern(CtxExpression e) throws ParseException {
+        if (++nodes > limits.maxNodes())
+            throw error("Expression exceeds " + limits.maxNodes() + " nodes");
+        if (interned == null)
+            return e;
+
+        // Operands are interned already, so comparing them is mostly cheap
+        CtxExpression existing = interned.putIfAbsent(e, e);
+        return existing != null ? existing : e;
     }
 
     ParseException error(String message) {
@@ -74,7 +132,7 @@ class Parser {
         int o = 1;
         int nc;
         boolean e = false;
-        while (Character.isJavaIdentifierPart(nc = lookahead(o)) || e && (nc == '+' || nc == '-')) {
+        while (Character.isJavaIdentifierPart(nc = lookahead(o)) || nc == '.' || e && (nc == '+' || nc == '-')) {
             e = nc == 'e' || nc == 'E';
             o++;
         }
@@ -140,60 +198,240 @@ class Parser {
         }
     }
 
+    CtxExpression parse() throws ParseException {
+        if (string.length() > limits.maxLength()) {
+            // Don't copy the entire input into the error message
+            String head = string.substring(0, Math.min(limits.maxLength(), 80)) + "...";
+            throw new ParseException(head, head.length(), "Expression exceeds " + limits.maxLength() + " characters");
+        }
+
+        CtxExpression e = parseExpr();
+        skipWhitespace();
+        if (lookahead() != -1)
+            throw error("Expected operator or end of input");
+        return e;
+    }
+
+    /**
+     * Enters one nesting level. The loops that build left-nested operations enter a level for every operation, since
+     * it nests the operations before it, and leave all of these levels at once when done.
+     */
+    private void enter() throws ParseException {
+        if (++depth > limits.maxDepth())
+            throw error("Expression exceeds nesting depth of " + limits.maxDepth());
+    }
+
     CtxExpression parseExpr() throws ParseException {
-        CtxExpression e = parseMultiply();
+        enter();
+        CtxExpression e = parseOr();
+
+        if (hasToken("?")) {
+            token("?");
+            CtxExpression t = parseExpr();
+            token(":");
+            CtxExpression o = parseExpr();
+            e = intern(new ECSelect(e, t, o));
+        }
+        depth--;
+        return e;
+    }
+
+    CtxExpression parseOr() throws ParseException {
+        CtxExpression e = parseAnd();
+        int nested = 0;
+
+        // Within vertical bars, '||' is more likely the closing of two nested absolute values
+        while (barDepth == 0 && hasToken("||")) {
+            token("||");
+            CtxExpression r = parseAnd();
+            e = intern(new ECSelect(e, intern(new EConstant(1)), intern(new ECBinary(r, intern(new EConstant(0)), BinaryOp.NE))));
+            enter();
+            nested++;
+        }
+        depth -= nested;
+        return e;
+    }
+
+    CtxExpression parseAnd() throws ParseException {
+        CtxExpression e = parseEquality();
+        int nested = 0;
+
+        while (hasToken("&&")) {
+            token("&&");
+            CtxExpression r = parseEquality();
+            e = intern(new ECSelect(e, intern(new ECBinary(r, intern(new EConstant(0)), BinaryOp.NE)), intern(new EConstant(0))));
+            enter();
+            nested++;
+        }
+        depth -= nested;
+        return e;
+    }
+
+    CtxExpression parseEquality() throws ParseException {
+        CtxExpression e = parseComparison();
+        int nested = 0;
+
+        while (true) {
+            if (hasToken("==")) {
+                token("==");
+                CtxExpression r = parseComparison();
+                e = intern(new ECBinary(e, r, BinaryOp.EQ));
+                enter();
+                nested++;
+            } else if (hasToken("!=")) {
+                token("!=");
+                CtxExpression r = parseComparison();
+                e = intern(new ECBinary(e, r, BinaryOp.NE));
+                enter();
+                nested++;
+            } else {
+                depth -= nested;
+                return e;
+            }
+        }
+    }
+
+    CtxExpression parseComparison() throws ParseException {
+        CtxExpression e = parseSum();
+        int nested = 0;
+
+        while (true) {
+            if (hasToken("<=")) {
+                token("<=");
+                CtxExpression r = parseSum();
+                e = intern(new ECBinary(e, r, BinaryOp.LE));
+                enter();
+                nested++;
+            } else if (hasToken("<")) {
+                token("<");
+                CtxExpression r = parseSum();
+                e = intern(new ECBinary(e, r, BinaryOp.LT));
+                enter();
+                nested++;
+            } else if (hasToken(">=")) {
+                token(">=");
+                CtxExpression r = parseSum();
+                e = intern(new ECBinary(e, r, BinaryOp.GE));
+                enter();
+                nested++;
+            } else if (hasToken(">")) {
+                token(">");
+                CtxExpression r = parseSum();
+                e = intern(new ECBinary(e, r, BinaryOp.GT));
+                enter();
+                nested++;
+            } else {
+                depth -= nested;
+                return e;
+            }
+        }
+    }
+
+    CtxExpression parseSum() throws ParseException {
+        Chain chain = new Chain(parseMultiply());
 
         while (true) {
             if (hasToken("+")) {
                 token("+");
-                CtxExpression r = parseMultiply();
-                e = new ECBinary(e, r, BinaryOp.ADD);
+                chain.add(BinaryOp.ADD, parseMultiply());
             } else if (hasToken("-")) {
                 token("-");
-                CtxExpression r = parseMultiply();
-                e = new ECBinary(e, r, BinaryOp.SUB);
+                chain.add(BinaryOp.SUB, parseMultiply());
             } else {
-                return e;
+                return chain.single() ? chain.first : intern(chain.build());
             }
         }
     }
 
     CtxExpression parseMultiply() throws ParseException {
-        CtxExpression e = parsePower();
+        Chain chain = new Chain(parsePower());
 
         while (true) {
             if (hasToken("*")) {
                 token("*");
-                CtxExpression r = parsePower();
-                e = new ECBinary(e, r, BinaryOp.MUL);
+                chain.add(BinaryOp.MUL, parsePower());
             } else if (hasToken("/")) {
                 token("/");
-                CtxExpression r = parsePower();
-                e = new ECBinary(e, r, BinaryOp.DIV);
+                chain.add(BinaryOp.DIV, parsePower());
             } else if (hasToken("%")) {
                 token("%");
-                CtxExpression r = parsePower();
-                e = new ECBinary(e, r, BinaryOp.MOD);
+                chain.add(BinaryOp.MOD, parsePower());
             } else {
-                return e;
+                return chain.single() ? chain.first : intern(chain.build());
             }
         }
     }
 
+    /**
+     * Collects a sequence of left-associative operations. Sequences of more than one operation become one flat
+     * {@link ECChain} rather than a deeply nested tree of binary operations.
+     */
+    private static final class Chain {
+        private final CtxExpression first;
+        private List<BinaryOp> ops;
+        private List<CtxExpression> operands;
+
+        Chain(CtxExpression first) {
+            this.first = first;
+        }
+
+        void add(BinaryOp op, CtxExpression operand) {
+            // Most operands are not part of any chain, so only allocate once there is one
+            if (ops == null) {
+                ops = new ArrayList<>();
+                operands = new ArrayList<>();
+                ops.add(null);
+                operands.add(first);
+            }
+            ops.add(op);
+            operands.add(operand);
+        }
+
+        boolean single() {
+            return ops == null;
+        }
+
+        CtxExpression build() {
+            if (operands.size() == 2)
+                return new ECBinary(first, operands.get(1), ops.get(1));
+            return new ECChain(ops.toArray(BinaryOp[]::new), operands.toArray(CtxExpression[]::new));
+        }
+    }
+
     CtxExpression parsePower() throws ParseException {
         CtxExpression e = parsePrimitive();
+        int nested = 0;
 
         while (true) {
             if (hasToken("^")) {
                 token("^");
                 CtxExpression r = parsePrimitive();
-                e = new ECBinary(e, r, BinaryOp.POW);
+                e = intern(new ECBinary(e, r, BinaryOp.POW));
+                enter();
+                nested++;
             } else {
+                depth -= nested;
                 return e;
             }
         }
     }
 
+    private CtxExpression parseNested() throws ParseException {
+        // Parentheses and argument lists delimit vertical bars, so '||' is an operator again inside them
+        int depth = barDepth;
+        barDepth = 0;
+        CtxExpression e = parseExpr();
+        barDepth = depth;
+        return e;
+    }
+
+    private CtxExpression parsePrefixed() throws ParseException {
+        enter();
+        CtxExpression e = parsePrimitive();
+        depth--;
+        return e;
+    }
+
     CtxExpression parsePrimitive() throws ParseException {
         if (hasIdentifier()) {
             String id = readIdentifier();
@@ -204,46 +442,50 @@ class Parser {
 
                 if (hasToken(")")) {
                     token(")");
-                    return new ECFunction(id, args.toArray(CtxExpression[]::new));
+                    return intern(new ECFunction(id, args.toArray(CtxExpression[]::new)));
                 }
 
                 while (true) {
-                    args.add(parseExpr());
+                    args.add(parseNested());
 
                     if (hasToken(","))
                         token(",");
                     else if (hasToken(")")) {
                         token(")");
-                        return new ECFunction(id, args.toArray(CtxExpression[]::new));
+                        return intern(new ECFunction(id, args.toArray(CtxExpression[]::new)));
                     } else {
                         throw error("Expected ',' or ')'");
                     }
                 }
             } else {
-                return new ECVariable(id);
+                return intern(new ECVariable(id));
             }
         } else if (hasNumber()) {
             double num = readNumber();
-            return new EConstant(num);
+            return intern(new EConstant(num));
         } else if (hasToken("(")) {
             token("(");
-            CtxExpression e = parseExpr();
+            CtxExpression e = parseNested();
             token(")");
             return e;
         } else if (hasToken("|")) {
             token("|");
+            barDepth++;
             CtxExpression e = parseExpr();
+            barDepth--;
             token("|");
-            return new ECUnary(e, UnaryOp.ABS);
+            return intern(new ECUnary(e, UnaryOp.ABS));
+        } else if (hasToken("!") && !hasToken("!=")) {
+            token("!");
+            return intern(new ECUnary(parsePrefixed(), UnaryOp.NOT));
         } else if (hasToken("-")) {
             token("-");
-            CtxExpression e = parsePrimitive();
-            return new ECUnary(e, UnaryOp.NEG);
+            return intern(new ECUnary(parsePrefixed(), UnaryOp.NEG));
         } else if (hasToken("+")) {
             token("+");
-            return parsePrimitive();
+            return parsePrefixed();
         } else {
-            throw error("Expected identifier, number, '+', '-', '|' or '('");
+            throw error("Expected identifier, number, '+', '-', '!', '|' or '('");
         }
     }
 }
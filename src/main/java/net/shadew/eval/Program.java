@@ -0,0 +1,962 @@
+package net.shadew.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flattened form of one or more context-free expressions. Every distinct subexpression becomes one instruction,
+ * which reads its operands from and writes its result to a register. Structurally equal subexpressions, across all
+ * compiled expressions, share one instruction, except for calls to functions that may mutate.
+ * <p>
+ * Programs can be executed for a single set of parameters, or column-wise over a range of rows. In the latter case,
+ * registers are columns of {@link #CHUNK} rows and each instruction runs as a tight loop over a chunk. Column-wise
+ * execution is available in both double and single precision.
+ * <p>
+ * Conditionals do not branch: both operands are computed for every row and the result is selected afterwards. Only
+ * operands that are certain to fail are not computed, instead, the conditional fails if it selects such an operand.
+ * When a program with conditionals fails, the failed row or chunk is evaluated again on the tree form of the compiled
+ * expressions, which fails only if a selected operand fails.
+ */
+final class Program {
+    static final int CHUNK = 256;
+
+    static final int CONST = 0;
+    static final int PARAM = 1;
+    static final int BINARY = 2;
+    static final int UNARY = 3;
+    static final int CALL = 4;
+    static final int EXPR = 5;
+    static final int ERROR = 6;
+    static final int POLY = 7;
+    static final int SELECT = 8;
+    static final int CHEB = 9;
+
+    // Per instruction, in execution order
+    final int[] code;
+    final int[] dest;
+    final int[] left;
+    final int[] right;
+    final BinaryOp[] binaryOps;
+    final UnaryOp[] unaryOps;
+    final double[] values;
+    final ExprFunction[] functions;
+    final int[][] args;
+    final Expression[] exprs;
+    final String[] errors;
+    final EPolynomial[] polys;
+    final EChebyshev[] chebs;
+    final int[] cond;
+    final Branches[] branches;
+
+    final int[] outputs;
+    final int registers;
+    final int paramCount;
+    final boolean concurrent;
+
+    // Whether any operation or call is shared by multiple subexpressions
+    final boolean shares;
+
+    // The compiled expressions, which are evaluated row by row when a conditional fails in an operand it doesn't select
+    private final Expression[] sources;
+    private final boolean selects;
+
+    // Registers for single-row execution, reused by each thread
+    private final ThreadLocal<Frame> frames = ThreadLocal.withInitial(Frame::new);
+
+    // Only for grid programs: the loop level of each instruction, and whether its result is needed as a column
+    final int[] levels;
+    final boolean[] broadcast;
+
+    private Program(Builder b, int[] outputs, Expression[] sources) {
+        this(b, outputs, sources, null, 0);
+    }
+
+    private Program(Builder b, int[] outputs, Expression[] sources, int[] levels, int inner) {
+        int n = b.code.size();
+        this.sources = sources;
+        this.selects = b.code.contains(SELECT);
+        this.shares = b.reused > 0;
+        this.code = new int[n];
+        this.dest = new int[n];
+        this.left = new int[n];
+        this.right = new int[n];
+        this.binaryOps = new BinaryOp[n];
+        this.unaryOps = new UnaryOp[n];
+        this.values = new double[n];
+        this.functions = new ExprFunction[n];
+        this.args = new int[n][];
+        this.exprs = new Expression[n];
+        this.errors = new String[n];
+        this.polys = new EPolynomial[n];
+        this.chebs = new EChebyshev[n];
+        this.cond = new int[n];
+        this.branches = new Branches[n];
+
+        // Liveness: a register can be reused after the last instruction reading it
+        int[] lastUse = new int[n];
+        for (int i = 0; i < n; i++) {
+            lastUse[i] = i;
+            for (int operand : b.operands(i))
+                lastUse[operand] = i;
+        }
+        for (int o : outputs)
+            lastUse[o] = n;
+
+        // Values read by a more inner loop level than their own must survive all iterations of that inner loop
+        this.levels = levels;
+        this.broadcast = levels == null ? null : new boolean[n];
+        if (levels != null) {
+            for (int i = 0; i < n; i++) {
+                for (int operand : b.operands(i)) {
+                    if (levels[operand] < levels[i])
+                        lastUse[operand] = n;
+                    if (levels[operand] < inner && levels[i] == inner)
+                        broadcast[operand] = true;
+                }
+            }
+            for (int o : outputs)
+                broadcast[o] = levels[o] < inner;
+        }
+
+        int[] reg = new int[n];
+        int count = 0;
+        int[] free = new int[n];
+        int freeCount = 0;
+
+        // Constants get their own registers, so that they only have to be set once per execution
+        for (int i = 0; i < n; i++) {
+            if (b.code.get(i) == CONST)
+                reg[i] = count++;
+        }
+
+        List<List<Integer>> expiring = new ArrayList<>();
+        for (int i = 0; i <= n; i++)
+            expiring.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) {
+            if (b.code.get(i) != CONST)
+                expiring.get(lastUse[i]).add(i);
+        }
+
+        int params = 0;
+        boolean concurrent = true;
+        for (int i = 0; i < n; i++) {
+            int c = b.code.get(i);
+            code[i] = c;
+            Object payload = b.payload.get(i);
+            int[] ops = b.operands(i);
+
+            switch (c) {
+                case CONST -> values[i] = (Double) payload;
+                case PARAM -> {
+                    left[i] = (Integer) payload;
+                    params = Math.max(params, left[i] + 1);
+                }
+                case BINARY -> {
+                    binaryOps[i] = (BinaryOp) payload;
+                    left[i] = reg[ops[0]];
+                    right[i] = reg[ops[1]];
+                }
+                case UNARY -> {
+                    unaryOps[i] = (UnaryOp) payload;
+                    left[i] = reg[ops[0]];
+                }
+                case CALL -> {
+                    functions[i] = (ExprFunction) payload;
+                    concurrent &= ExprFunction.doesNotMutate(functions[i]);
+                    int[] a = new int[ops.length];
+                    for (int j = 0; j < ops.length; j++)
+                        a[j] = reg[ops[j]];
+                    args[i] = a;
+                }
+                case EXPR -> {
+                    exprs[i] = (Expression) payload;
+                    concurrent = false;
+                }
+                case ERROR -> errors[i] = (String) payload;
+                case POLY -> {
+                    polys[i] = (EPolynomial) payload;
+                    left[i] = reg[ops[0]];
+                }
+                case CHEB -> {
+                    chebs[i] = (EChebyshev) payload;
+                    concurrent &= Fold.isPure(chebs[i].original());
+                    left[i] = reg[ops[0]];
+                }
+                case SELECT -> {
+                    Branches br = (Branches) payload;
+                    branches[i] = br;
+                    cond[i] = reg[ops[0]];
+                    int k = 1;
+                    left[i] = br.thenError() == null ? reg[ops[k++]] : -1;
+                    right[i] = br.otherwiseError() == null ? reg[ops[k]] : -1;
+                }
+            }
+
+            // Operands expiring here are released after picking the destination, because an instruction may not
+            // overwrite its own operands while it is running column-wise
+            if (c != CONST)
+                reg[i] = freeCount > 0 ? free[--freeCount] : count++;
+            dest[i] = reg[i];
+            for (int e : expiring.get(i)) {
+                if (e != i)
+                    free[freeCount++] = reg[e];
+            }
+            if (lastUse[i] == i && c != CONST)
+                free[freeCount++] = reg[i];
+        }
+
+        this.registers = count;
+        this.paramCount = params;
+        this.concurrent = concurrent;
+        this.outputs = new int[outputs.length];
+        for (int i = 0; i < outputs.length; i++)
+            this.outputs[i] = reg[outputs[i]];
+    }
+
+    /**
+     * Compiles the given expressions into one program, of which the outputs are the results of the given expressions
+     * in order.
+     */
+    static Program compile(Expression... exprs) {
+        Builder b = new Builder();
+        int[] outputs = new int[exprs.length];
+        for (int i = 0; i < exprs.length; i++)
+            outputs[i] = b.add(exprs[i]);
+        return new Program(b, outputs, exprs.clone());
+    }
+
+    /**
+     * Compiles the given expression into a program for evaluation over a grid of {@code dims} dimensions, where
+     * parameter {@code p} is the loop variable of dimension {@code p}. Every instruction is assigned the loop level of
+     * the innermost dimension it depends on, and instructions are ordered by level, so that the instructions of one
+     * level are consecutive and only need to run when the loop variable of that level changes. Instructions depending
+     * on no parameter have level -1. Calls to functions that may mutate, and foreign expressions, are placed at the
+     * innermost level.
+     */
+    static Program compileGrid(Expression e, int dims) {
+        Builder b = new Builder();
+        int output = b.add(e);
+        int n = b.code.size();
+
+        int[] level = new int[n];
+        for (int i = 0; i < n; i++) {
+            int c = b.code.get(i);
+            int l = -1;
+            if (c == PARAM)
+                l = Math.min((Integer) b.payload.get(i), dims - 1);
+            else if (c == EXPR || c == CALL && !ExprFunction.doesNotMutate((ExprFunction) b.payload.get(i))
+                         || c == CHEB && !Fold.isPure(((EChebyshev) b.payload.get(i)).original()))
+                l = dims - 1;
+            for (int operand : b.operands(i))
+                l = Math.max(l, level[operand]);
+            level[i] = l;
+        }
+
+        // A stable sort keeps operands before the instructions reading them
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (x, y) -> Integer.compare(level[x], level[y]));
+
+        Builder sorted = new Builder();
+        int[] index = new int[n];
+        int[] levels = new int[n];
+        for (int i : order) {
+            int[] ops = b.operands(i).clone();
+            for (int j = 0; j < ops.length; j++)
+                ops[j] = index[ops[j]];
+            index[i] = sorted.code.size();
+            levels[index[i]] = level[i];
+            sorted.code.add(b.code.get(i));
+            sorted.payload.add(b.payload.get(i));
+            sorted.operands.add(ops);
+        }
+        return new Program(sorted, new int[] {index[output]}, new Expression[] {e}, levels, dims - 1);
+    }
+
+    /**
+     * Executes the program for one set of parameters, and stores the outputs in the given array.
+     */
+    void eval(double[] params, double[] out) throws EvalException {
+        try {
+            double[] r = run(params);
+            for (int o = 0; o < outputs.length; o++)
+                out[o] = r[outputs[o]];
+        } catch (EvalException exc) {
+            if (!selects)
+                throw exc;
+            evalRow(params, out, exc);
+        }
+    }
+
+    /**
+     * Executes a program with one output for one set of parameters, and returns the output.
+     */
+    double eval(double... params) throws EvalException {
+        try {
+            return run(params)[outputs[0]];
+        } catch (EvalException exc) {
+            if (!selects || sources == null)
+                throw exc;
+            return sources[0].eval(params);
+        }
+    }
+
+    /**
+     * Evaluates the compiled expressions for one row as trees, which only evaluate the selected operands of
+     * conditionals. The program computes both operands, so a call that fails in an operand that is not selected fails
+     * the program, but not the tree. Functions that may mutate are called again.
+     */
+    private void evalRow(double[] params, double[] out, EvalException exc) throws EvalException {
+        if (sources == null)
+            throw exc;
+        for (int o = 0; o < outputs.length; o++)
+            out[o] = sources[o].eval(params);
+    }
+
+    /**
+     * Executes the program for one set of parameters and returns the registers, which remain valid until the next
+     * execution on the same thread.
+     */
+    private double[] run(double[] params) throws EvalException {
+        Frame f = frames.get();
+        if (f.running) {
+            // Reentered by a function call, the registers of the outer execution are still in use
+            f = new Frame();
+        }
+
+        f.running = true;
+        try {
+            run(params, f.r, f.scratch);
+        } finally {
+            f.running = false;
+        }
+        return f.r;
+    }
+
+    private void run(double[] params, double[] r, double[][] scratch) throws EvalException {
+        for (int i = 0, n = code.length; i < n; i++) {
+            switch (code[i]) {
+                case CONST -> {
+                }
+                case PARAM -> {
+                    int p = left[i];
+                    if (p >= params.length)
+                        throw new EvalException("Parameter " + p + " not defined");
+                    r[dest[i]] = params[p];
+                }
+                case BINARY -> r[dest[i]] = binaryOps[i].apply(r[left[i]], r[right[i]]);
+                case UNARY -> r[dest[i]] = unaryOps[i].apply(r[left[i]]);
+                case CALL -> {
+                    int[] a = args[i];
+                    double[] vals = scratch[i];
+                    for (int j = 0; j < a.length; j++)
+                        vals[j] = r[a[j]];
+                    r[dest[i]] = functions[i].compute(vals);
+                }
+                case EXPR -> r[dest[i]] = exprs[i].eval(params);
+                case ERROR -> throw new EvalException(errors[i]);
+                case POLY -> r[dest[i]] = polys[i].apply(r[left[i]]);
+                case CHEB -> r[dest[i]] = chebs[i].apply(r[left[i]]);
+                case SELECT -> {
+                    boolean c = r[cond[i]] != 0;
+                    int s = c ? left[i] : right[i];
+                    if (s < 0)
+                        throw new EvalException(branches[i].error(c));
+                    r[dest[i]] = r[s];
+                }
+            }
+        }
+    }
+
+    /**
+     * The registers and call arguments of a single-row execution.
+     */
+    private final class Frame {
+        final double[] r = new double[registers];
+        final double[][] scratch = new double[code.length][];
+        boolean running;
+
+        Frame() {
+            for (int i = 0, n = code.length; i < n; i++) {
+                if (code[i] == CONST)
+                    r[dest[i]] = values[i];
+                else if (code[i] == CALL)
+                    scratch[i] = new double[args[i].length];
+            }
+        }
+    }
+
+    /**
+     * Executes the program for rows {@code from} (inclusive) to {@code to} (exclusive), reading parameter {@code p} of
+     * row {@code i} from {@code columns[p][i]} and storing output {@code o} of row {@code i} in {@code out[o][i]}.
+     */
+    void evalBatch(int from, int to, double[][] out, double[][] columns) throws EvalException {
+        if (to <= from)
+            return;
+
+        Kernel kernel = kernel(columns);
+        for (int start = from; start < to; start += CHUNK) {
+            int len = Math.min(CHUNK, to - start);
+            kernel.run(start, len);
+            for (int o = 0; o < outputs.length; o++)
+                System.arraycopy(kernel.output(o), 0, out[o], start, len);
+        }
+    }
+
+    /**
+     * Creates the state needed to execute the program column-wise over the given parameter columns. The returned
+     * kernel may only be used by one thread at a time.
+     */
+    Kernel kernel(double[][] columns) throws EvalException {
+        if (paramCount > columns.length)
+            throw new EvalException("Parameter " + columns.length + " not defined");
+        return new Kernel(columns);
+    }
+
+    /**
+     * The registers and scratch space of a column-wise execution in double precision. Results remain in the output
+     * registers after each run, so that callers can consume them without copying them out.
+     */
+    final class Kernel {
+        private final double[][] columns;
+        private final double[][] r = new double[registers][CHUNK];
+        private final double[][] scratch = new double[code.length][];
+        private double[] rowParams;
+
+        private Kernel(double[][] columns) {
+            this.columns = columns;
+            for (int i = 0, n = code.length; i < n; i++) {
+                if (code[i] == CONST)
+                    Arrays.fill(r[dest[i]], values[i]);
+                else if (code[i] == CALL)
+                    scratch[i] = new double[args[i].length];
+                else if (code[i] == EXPR && rowParams == null)
+                    rowParams = new double[columns.length];
+            }
+        }
+
+        /**
+         * Returns the column of output {@code o}, holding the results of the last run.
+         */
+        double[] output(int o) {
+            return r[outputs[o]];
+        }
+
+        /**
+         * Executes the program for {@code len} rows, at most {@link #CHUNK}, starting at row {@code start}.
+         */
+        void run(int start, int len) throws EvalException {
+            try {
+                run(0, start, len);
+            } catch (EvalException exc) {
+                if (!selects)
+                    throw exc;
+                runRows(start, len, exc);
+            }
+        }
+
+        /**
+         * Evaluates a chunk row by row, see {@link #evalRow}.
+         */
+        private void runRows(int start, int len, EvalException exc) throws EvalException {
+            double[] params = new double[columns.length];
+            double[] out = new double[outputs.length];
+            for (int row = 0; row < len; row++) {
+                for (int p = 0; p < columns.length; p++)
+                    params[p] = columns[p][start + row];
+                evalRow(params, out, exc);
+                for (int o = 0; o < outputs.length; o++)
+                    r[outputs[o]][row] = out[o];
+            }
+        }
+
+        /**
+         * Evaluates {@code len} grid points on the tree form, after the program failed on them with the given exception,
+         * see {@link #evalRow}. The loop variables of the outer dimensions are given, the one of the innermost
+         * dimension is read from its column, starting at row {@code start}.
+         */
+        void runPoints(double[] params, int start, int len, EvalException exc) throws EvalException {
+            if (!selects)
+                throw exc;
+
+            int inner = params.length - 1;
+            double[] out = new double[1];
+            for (int row = 0; row < len; row++) {
+                params[inner] = columns[inner][start + row];
+                evalRow(params, out, exc);
+                r[outputs[0]][row] = out[0];
+            }
+        }
+
+        /**
+         * Executes the instructions from instruction {@code first} onwards for {@code len} rows, at most
+         * {@link #CHUNK}, starting at row {@code start}.
+         */
+        void run(int first, int start, int len) throws EvalException {
+            for (int i = first, n = code.length; i < n; i++) {
+                double[] d = r[dest[i]];
+                switch (code[i]) {
+                    case CONST -> {
+                    }
+                    case PARAM -> System.arraycopy(columns[left[i]], start, d, 0, len);
+                    case BINARY -> binary(binaryOps[i], r[left[i]], r[right[i]], d, len);
+                    case UNARY -> unary(unaryOps[i], r[left[i]], d, len);
+                    case CALL -> {
+                        int[] a = args[i];
+                        double[] vals = scratch[i];
+                        ExprFunction fn = functions[i];
+                        for (int row = 0; row < len; row++) {
+                            for (int j = 0; j < a.length; j++)
+                                vals[j] = r[a[j]][row];
+                            d[row] = fn.compute(vals);
+                        }
+                    }
+                    case EXPR -> {
+                        for (int row = 0; row < len; row++) {
+                            for (int p = 0; p < columns.length; p++)
+                                rowParams[p] = columns[p][start + row];
+                            d[row] = exprs[i].eval(rowParams);
+                        }
+                    }
+                    case ERROR -> throw new EvalException(errors[i]);
+                    case POLY -> horner(polys[i], r[left[i]], d, len);
+                    case CHEB -> {
+                        double[] x = r[left[i]];
+                        EChebyshev cheb = chebs[i];
+                        for (int row = 0; row < len; row++)
+                            d[row] = cheb.apply(x[row]);
+                    }
+                    case SELECT -> {
+                        double[] c = r[cond[i]];
+                        int t = left[i], o = right[i];
+                        if (t < 0 || o < 0) {
+                            for (int row = 0; row < len; row++) {
+                                if ((c[row] != 0 ? t : o) < 0)
+                                    throw new EvalException(branches[i].error(c[row] != 0));
+                            }
+                        }
+                        select(c, t < 0 ? r[o] : r[t], o < 0 ? r[t] : r[o], d, len);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Executes instructions {@code from} (inclusive) to {@code to} (exclusive) for a single row, of which the
+         * parameters are given. Results are stored in the first row of their registers, and are copied to the entire
+         * register if they are {@linkplain #broadcast needed as a column}.
+         */
+        void runScalar(int from, int to, double[] params) throws EvalException {
+            for (int i = from; i < to; i++) {
+                double v = switch (code[i]) {
+                    case CONST -> values[i];
+                    case PARAM -> params[left[i]];
+                    case BINARY -> binaryOps[i].apply(r[left[i]][0], r[right[i]][0]);
+                    case UNARY -> unaryOps[i].apply(r[left[i]][0]);
+                    case CALL -> {
+                        int[] a = args[i];
+                        double[] vals = scratch[i];
+                        for (int j = 0; j < a.length; j++)
+                            vals[j] = r[a[j]][0];
+                        yield functions[i].compute(vals);
+                    }
+                    case EXPR -> exprs[i].eval(params);
+                    case POLY -> polys[i].apply(r[left[i]][0]);
+                    case CHEB -> chebs[i].apply(r[left[i]][0]);
+                    case SELECT -> {
+                        boolean c = r[cond[i]][0] != 0;
+                        int s = c ? left[i] : right[i];
+                        if (s < 0)
+                            throw new EvalException(branches[i].error(c));
+                        yield r[s][0];
+                    }
+                    default -> throw new EvalException(errors[i]);
+                };
+
+                if (broadcast[i])
+                    Arrays.fill(r[dest[i]], v);
+                else
+                    r[dest[i]][0] = v;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #evalBatch(int, int, double[][], double[][])}, but in single precision. Arithmetic is done in
+     * floats, function calls widen their arguments to doubles and narrow their result.
+     */
+    void evalBatch(int from, int to, float[][] out, float[][] columns) throws EvalException {
+        if (to <= from)
+            return;
+        if (paramCount > columns.length)
+            throw new EvalException("Parameter " + columns.length + " not defined");
+
+        float[][] r = new float[registers][CHUNK];
+        double[][] scratch = new double[code.length][];
+        double[] rowParams = new double[columns.length];
+        double[] rowOut = new double[outputs.length];
+        for (int i = 0, n = code.length; i < n; i++) {
+            if (code[i] == CONST)
+                Arrays.fill(r[dest[i]], (float) values[i]);
+            else if (code[i] == CALL)
+                scratch[i] = new double[args[i].length];
+        }
+
+        for (int start = from; start < to; start += CHUNK) {
+            int len = Math.min(CHUNK, to - start);
+            try {
+                for (int i = 0, n = code.length; i < n; i++) {
+                    float[] d = r[dest[i]];
+                    switch (code[i]) {
+                        case CONST -> {
+                        }
+                        case PARAM -> System.arraycopy(columns[left[i]], start, d, 0, len);
+                        case BINARY -> binary(binaryOps[i], r[left[i]], r[right[i]], d, len);
+                        case UNARY -> unary(unaryOps[i], r[left[i]], d, len);
+                        case CALL -> {
+                            int[] a = args[i];
+                            double[] vals = scratch[i];
+                            ExprFunction fn = functions[i];
+                            for (int row = 0; row < len; row++) {
+                                for (int j = 0; j < a.length; j++)
+                                    vals[j] = r[a[j]][row];
+                                d[row] = (float) fn.compute(vals);
+                            }
+                        }
+                        case EXPR -> {
+                            for (int row = 0; row < len; row++) {
+                                for (int p = 0; p < columns.length; p++)
+                                    rowParams[p] = columns[p][start + row];
+                                d[row] = (float) exprs[i].eval(rowParams);
+                            }
+                        }
+                        case ERROR -> throw new EvalException(errors[i]);
+                        case POLY -> horner(polys[i], r[left[i]], d, len);
+                        case CHEB -> {
+                            float[] x = r[left[i]];
+                            EChebyshev cheb = chebs[i];
+                            for (int row = 0; row < len; row++)
+                                d[row] = (float) cheb.apply(x[row]);
+                        }
+                        case SELECT -> {
+                            float[] c = r[cond[i]];
+                            int t = left[i], o = right[i];
+                            if (t < 0 || o < 0) {
+                                for (int row = 0; row < len; row++) {
+                                    if ((c[row] != 0 ? t : o) < 0)
+                                        throw new EvalException(branches[i].error(c[row] != 0));
+                                }
+                            }
+                            select(c, t < 0 ? r[o] : r[t], o < 0 ? r[t] : r[o], d, len);
+                        }
+                    }
+                }
+            } catch (EvalException exc) {
+                if (!selects)
+                    throw exc;
+
+                // The rows of a failed chunk are evaluated in double precision
+                for (int row = 0; row < len; row++) {
+                    for (int p = 0; p < columns.length; p++)
+                        rowParams[p] = columns[p][start + row];
+                    evalRow(rowParams, rowOut, exc);
+                    for (int o = 0; o < outputs.length; o++)
+                        r[outputs[o]][row] = (float) rowOut[o];
+                }
+            }
+
+            for (int o = 0; o < outputs.length; o++)
+                System.arraycopy(r[outputs[o]], 0, out[o], start, len);
+        }
+    }
+
+    private static void binary(BinaryOp op, double[] l, double[] r, double[] d, int len) {
+        switch (op) {
+            case ADD -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] + r[i];
+            }
+            case SUB -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] - r[i];
+            }
+            case MUL -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] * r[i];
+            }
+            case DIV -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] / r[i];
+            }
+            case MOD -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] % r[i];
+            }
+            case POW -> {
+                for (int i = 0; i < len; i++) d[i] = Math.pow(l[i], r[i]);
+            }
+            case LT -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] < r[i] ? 1 : 0;
+            }
+            case LE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] <= r[i] ? 1 : 0;
+            }
+            case GT -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] > r[i] ? 1 : 0;
+            }
+            case GE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] >= r[i] ? 1 : 0;
+            }
+            case EQ -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] == r[i] ? 1 : 0;
+            }
+            case NE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] != r[i] ? 1 : 0;
+            }
+        }
+    }
+
+    private static void select(double[] c, double[] t, double[] o, double[] d, int len) {
+        for (int i = 0; i < len; i++) d[i] = c[i] != 0 ? t[i] : o[i];
+    }
+
+    private static void select(float[] c, float[] t, float[] o, float[] d, int len) {
+        for (int i = 0; i < len; i++) d[i] = c[i] != 0 ? t[i] : o[i];
+    }
+
+    private static void horner(EPolynomial p, double[] x, double[] d, int len) {
+        double[] c = p.coeffs();
+        Arrays.fill(d, 0, len, c[c.length - 1]);
+        if (p.fma()) {
+            for (int k = c.length - 2; k >= 0; k--) {
+                double ck = c[k];
+                for (int i = 0; i < len; i++) d[i] = Math.fma(d[i], x[i], ck);
+            }
+        } else {
+            for (int k = c.length - 2; k >= 0; k--) {
+                double ck = c[k];
+                for (int i = 0; i < len; i++) d[i] = d[i] * x[i] + ck;
+            }
+        }
+    }
+
+    private static void binary(BinaryOp op, float[] l, float[] r, float[] d, int len) {
+        switch (op) {
+            case ADD -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] + r[i];
+            }
+            case SUB -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] - r[i];
+            }
+            case MUL -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] * r[i];
+            }
+            case DIV -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] / r[i];
+            }
+            case MOD -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] % r[i];
+            }
+            case POW -> {
+                for (int i = 0; i < len; i++) d[i] = (float) Math.pow(l[i], r[i]);
+            }
+            case LT -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] < r[i] ? 1 : 0;
+            }
+            case LE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] <= r[i] ? 1 : 0;
+            }
+            case GT -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] > r[i] ? 1 : 0;
+            }
+            case GE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] >= r[i] ? 1 : 0;
+            }
+            case EQ -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] == r[i] ? 1 : 0;
+            }
+            case NE -> {
+                for (int i = 0; i < len; i++) d[i] = l[i] != r[i] ? 1 : 0;
+            }
+        }
+    }
+
+    private static void horner(EPolynomial p, float[] x, float[] d, int len) {
+        double[] c = p.coeffs();
+        Arrays.fill(d, 0, len, (float) c[c.length - 1]);
+        if (p.fma()) {
+            for (int k = c.length - 2; k >= 0; k--) {
+                float ck = (float) c[k];
+                for (int i = 0; i < len; i++) d[i] = Math.fma(d[i], x[i], ck);
+            }
+        } else {
+            for (int k = c.length - 2; k >= 0; k--) {
+                float ck = (float) c[k];
+                for (int i = 0; i < len; i++) d[i] = d[i] * x[i] + ck;
+            }
+        }
+    }
+
+    private static void unary(UnaryOp op, float[] v, float[] d, int len) {
+        switch (op) {
+            case NEG -> {
+                for (int i = 0; i < len; i++) d[i] = -v[i];
+            }
+            case ABS -> {
+                for (int i = 0; i < len; i++) d[i] = Math.abs(v[i]);
+            }
+            case NOT -> {
+                for (int i = 0; i < len; i++) d[i] = v[i] == 0 ? 1 : 0;
+            }
+        }
+    }
+
+    private static void unary(UnaryOp op, double[] v, double[] d, int len) {
+        switch (op) {
+            case NEG -> {
+                for (int i = 0; i < len; i++) d[i] = -v[i];
+            }
+            case ABS -> {
+                for (int i = 0; i < len; i++) d[i] = Math.abs(v[i]);
+            }
+            case NOT -> {
+                for (int i = 0; i < len; i++) d[i] = v[i] == 0 ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * The errors of the operands of a conditional that are certain to fail, or null for operands that are computed.
+     */
+    record Branches(String thenError, String otherwiseError) {
+        String error(boolean cond) {
+            return cond ? thenError : otherwiseError;
+        }
+    }
+
+    /**
+     * Collects instructions in single assignment form, deduplicating structurally equal instructions.
+     */
+    private static final class Builder {
+        final List<Integer> code = new ArrayList<>();
+        final List<Object> payload = new ArrayList<>();
+        final List<int[]> operands = new ArrayList<>();
+        final Map<Key, Integer> known = new HashMap<>();
+        int reused;
+
+        record Key(int code, Object payload, List<Integer> operands) {
+        }
+
+        int[] operands(int i) {
+            return operands.get(i);
+        }
+
+        int add(Expression e) {
+            if (e instanceof TieredExpression t)
+                return add(t.expression());
+            if (e instanceof EConstant c)
+                // Compare constants by their bits, so that 0 and -0 remain distinct
+                return emit(CONST, c.val(), Double.doubleToLongBits(c.val()), true);
+            if (e instanceof EParam p)
+                return emit(PARAM, p.i(), p.i(), true);
+            if (e instanceof EError err)
+                return emit(ERROR, err.err(), err.err(), true);
+            if (e instanceof EBinary b) {
+                int l = add(b.el());
+                int r = add(b.er());
+                return emit(BINARY, b.op(), b.op(), true, l, r);
+            }
+            if (e instanceof EUnary u) {
+                int v = add(u.e());
+                return emit(UNARY, u.op(), u.op(), true, v);
+            }
+            if (e instanceof EChain c) {
+                if (c.pairwise())
+                    return addSum(c, 0, c.operands().length);
+
+                int v = add(c.operands()[0]);
+                for (int i = 1; i < c.operands().length; i++) {
+                    int r = add(c.operands()[i]);
+                    v = emit(BINARY, c.ops()[i], c.ops()[i], true, v, r);
+                }
+                return v;
+            }
+            if (e instanceof ESelect s) {
+                // Operands that are certain to fail are not computed, the error is reported when they are selected
+                String thenError = s.then() instanceof EError te ? te.err() : null;
+                String otherwiseError = s.otherwise() instanceof EError oe ? oe.err() : null;
+                int[] ops = {add(s.cond())};
+                if (thenError == null)
+                    ops = append(ops, add(s.then()));
+                if (otherwiseError == null)
+                    ops = append(ops, add(s.otherwise()));
+                Branches br = new Branches(thenError, otherwiseError);
+                return emit(SELECT, br, br, true, ops);
+            }
+            if (e instanceof EPolynomial p) {
+                int x = add(p.x());
+                return emit(POLY, p, p, true, x);
+            }
+            if (e instanceof EChebyshev c && Fold.readsOnly(c.original(), c.param())) {
+                // Only reads its own parameter, also when evaluating the original expression outside the range
+                int x = add(new EParam(c.param()));
+                return emit(CHEB, c, c, Fold.isPure(c.original()), x);
+            }
+            if (e instanceof EFunction f) {
+                int[] a = new int[f.exprs().length];
+                for (int i = 0; i < a.length; i++)
+                    a[i] = add(f.exprs()[i]);
+                return emit(CALL, f.function(), f.function(), ExprFunction.doesNotMutate(f.function()), a);
+            }
+            return emit(EXPR, e, e, false);
+        }
+
+        /**
+         * Adds a pairwise sum of the given terms of a chain, grouped like {@link EChain} groups them.
+         */
+        private int addSum(EChain c, int from, int to) {
+            if (to - from <= EChain.PAIRWISE_BLOCK) {
+                int v = add(c.operands()[from]);
+                if (c.negated(from))
+                    v = emit(UNARY, UnaryOp.NEG, UnaryOp.NEG, true, v);
+                for (int i = from + 1; i < to; i++) {
+                    int r = add(c.operands()[i]);
+                    BinaryOp op = c.negated(i) ? BinaryOp.SUB : BinaryOp.ADD;
+                    v = emit(BINARY, op, op, true, v, r);
+                }
+                return v;
+            }
+
+            int mid = (from + to) >>> 1;
+            int l = addSum(c, from, mid);
+            int r = addSum(c, mid, to);
+            return emit(BINARY, BinaryOp.ADD, BinaryOp.ADD, true, l, r);
+        }
+
+        private static int[] append(int[] ops, int op) {
+            int[] res = Arrays.copyOf(ops, ops.length + 1);
+            res[ops.length] = op;
+            return res;
+        }
+
+        private int emit(int c, Object payload, Object identity, boolean shared, int... ops) {
+            Key key = null;
+            if (shared) {
+                key = new Key(c, identity, Arrays.stream(ops).boxed().toList());
+                Integer existing = known.get(key);
+                if (existing != null) {
+                    if (ops.length > 0)
+                        reused++;
+                    return existing;
+                }
+            }
+
+            int i = code.size();
+            code.add(c);
+            this.payload.add(payload);
+            operands.add(ops);
+            if (key != null)
+                known.put(key, i);
+            return i;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.shadew.eval;
+
+/**
+ * The rows with the highest results of an expression, ordered from best to worst. See {@link Expression#top}.
+ *
+ * @param rows   The indices of the selected rows
+ * @param scores The results of the expression for the selected rows, in the same order
+ */
+public record Ranking(int[] rows, double[] scores) {
+    /**
+     * Returns the amount of selected rows.
+     */
+    public int size() {
+        return rows.length;
+    }
+}
@@ -0,0 +1,362 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates an expression over many rows while aggregating its results, without ever storing the results. Rows are
+ * evaluated one chunk at a time, and each chunk is folded into an accumulator while it is still in the cache. Large
+ * row ranges are split over the common fork-join pool, every task folding into its own accumulator, and accumulators
+ * are merged as the tasks complete. Accumulators may skip whole chunks when they can tell in advance that the chunk
+ * does not affect the result.
+ */
+final class Reduction {
+    // Rows evaluated by one task, below which splitting costs more than it gains
+    private static final int LEAF = Program.CHUNK * 32;
+
+    private Reduction() {
+    }
+
+    static Summary summarize(Expression e, int rows, double[][] columns) throws EvalException {
+        return reduce(Program.compile(e), rows, columns, SummaryAccumulator::new).summary();
+    }
+
+    static long[] histogram(Expression e, double lo, double hi, int bins, int rows, double[][] columns) throws EvalException {
+        if (bins < 1)
+            throw new IllegalArgumentException("Need at least 1 bin");
+        if (!(lo < hi) || Double.isInfinite(hi - lo))
+            throw new IllegalArgumentException("Invalid histogram range [" + lo + ", " + hi + "]");
+        return reduce(Program.compile(e), rows, columns, () -> new HistogramAccumulator(lo, hi, bins)).counts;
+    }
+
+    static Ranking top(Expression e, int k, int rows, double[][] columns) throws EvalException {
+        if (k < 0)
+            throw new IllegalArgumentException("Negative amount of rows to select");
+
+        // There are never more than the given amount of rows to select
+        int n = Math.min(k, Math.max(rows, 0));
+        Program program = Program.compile(e);
+
+        // Pruning skips function calls, which must not be skipped if they may mutate
+        Threshold threshold = program.concurrent ? new Threshold(e, program.paramCount, columns) : null;
+        return reduce(program, rows, columns, () -> new TopAccumulator(n, threshold)).ranking();
+    }
+
+    private static <A extends Accumulator<A>> A reduce(Program program, int rows, double[][] columns, Supplier<A> factory) throws EvalException {
+        if (rows < 0)
+            throw new IllegalArgumentException("Negative row count");
+
+        if (!program.concurrent || rows < LEAF * 2)
+            return fold(program.kernel(columns), 0, rows, factory.get());
+
+        // Validate parameters before any tasks are forked
+        program.kernel(columns);
+        try {
+            return ForkJoinPool.commonPool().invoke(new Task<>(program, columns, 0, rows, factory));
+        } catch (RuntimeException exc) {
+            // The fork-join pool may wrap the exception of a task in another exception
+            for (Throwable t = exc; t != null; t = t.getCause()) {
+                if (t instanceof EvalException evalExc)
+                    throw evalExc;
+            }
+            throw exc;
+        }
+    }
+
+    private static <A extends Accumulator<A>> A fold(Program.Kernel kernel, int from, int to, A acc) throws EvalException {
+        for (int start = from; start < to; start += Program.CHUNK) {
+            int len = Math.min(Program.CHUNK, to - start);
+            if (acc.skip(start, len))
+                continue;
+            kernel.run(start, len);
+            acc.add(kernel.output(0), start, len);
+        }
+        return acc;
+    }
+
+    private static final class Task<A extends Accumulator<A>> extends RecursiveTask<A> {
+        private final Program program;
+        private final double[][] columns;
+        private final int from, to;
+        private final Supplier<A> factory;
+
+        Task(Program program, double[][] columns, int from, int to, Supplier<A> factory) {
+            this.program = program;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.factory = factory;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= LEAF) {
+                try {
+                    return fold(program.kernel(columns), from, to, factory.get());
+                } catch (EvalException exc) {
+                    throw new RuntimeException(exc);
+                }
+            }
+
+            // Split at a chunk boundary so that only the last task runs a partial chunk
+            int mid = from + (to - from) / 2 / Program.CHUNK * Program.CHUNK;
+            Task<A> left = new Task<>(program, columns, from, mid, factory);
+            Task<A> right = new Task<>(program, columns, mid, to, factory);
+            left.fork();
+            A acc = right.compute();
+            acc.merge(left.join());
+            return acc;
+        }
+    }
+
+    private interface Accumulator<A extends Accumulator<A>> {
+        /**
+         * Returns whether the given chunk of rows can be skipped without evaluating it.
+         */
+        default boolean skip(int start, int len) {
+            return false;
+        }
+
+        void add(double[] values, int start, int len);
+
+        void merge(A other);
+    }
+
+    private static final class SummaryAccumulator implements Accumulator<SummaryAccumulator> {
+        private long count;
+        private double sum;
+        private double compensation;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        @Override
+        public void add(double[] values, int start, int len) {
+            double s = sum, c = compensation, lo = min, hi = max;
+            for (int i = 0; i < len; i++) {
+                double v = values[i];
+
+                // Neumaier summation: keep the rounding error of each addition in a separate term
+                double t = s + v;
+                if (Math.abs(s) >= Math.abs(v))
+                    c += s - t + v;
+                else
+                    c += v - t + s;
+                s = t;
+
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            sum = s;
+            compensation = c;
+            min = lo;
+            max = hi;
+            count += len;
+        }
+
+        @Override
+        public void merge(SummaryAccumulator other) {
+            double t = sum + other.sum;
+            if (Math.abs(sum) >= Math.abs(other.sum))
+                compensation += sum - t + other.sum;
+            else
+                compensation += other.sum - t + sum;
+            compensation += other.compensation;
+            sum = t;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            count += other.count;
+        }
+
+        Summary summary() {
+            // The compensation is meaningless once the sum overflowed or became NaN
+            return new Summary(count, Double.isFinite(sum) ? sum + compensation : sum, min, max);
+        }
+    }
+
+    private static final class HistogramAccumulator implements Accumulator<HistogramAccumulator> {
+        private final double lo, hi, scale;
+        private final long[] counts;
+
+        HistogramAccumulator(double lo, double hi, int bins) {
+            this.lo = lo;
+            this.hi = hi;
+            this.scale = bins / (hi - lo);
+            this.counts = new long[bins];
+        }
+
+        @Override
+        public void add(double[] values, int start, int len) {
+            int last = counts.length - 1;
+            for (int i = 0; i < len; i++) {
+                double v = values[i];
+                if (v >= lo && v <= hi)
+                    counts[Math.min((int) ((v - lo) * scale), last)]++;
+            }
+        }
+
+        @Override
+        public void merge(HistogramAccumulator other) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * The lowest score that can still enter the top rows, shared by all tasks of one selection. Any task that holds k
+     * rows knows that the final k-th score is at least its own k-th score. Chunks of which the interval bound of the
+     * score lies below the threshold are skipped.
+     */
+    private static final class Threshold {
+        private final Expression expr;
+        private final Interval[] params;
+        private final double[][] columns;
+        private final DoubleAccumulator bound = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        Threshold(Expression expr, int paramCount, double[][] columns) {
+            this.expr = expr;
+            this.params = new Interval[paramCount];
+            this.columns = columns;
+        }
+
+        void raise(double score) {
+            bound.accumulate(score);
+        }
+
+        boolean below(int start, int len, double local) {
+            double t = Math.max(local, bound.get());
+            if (t == Double.NEGATIVE_INFINITY)
+                return false;
+
+            Interval[] ranges = params.clone();
+            for (int p = 0; p < ranges.length; p++) {
+                double[] col = columns[p];
+                double lo = col[start], hi = col[start];
+                for (int i = start + 1, end = start + len; i < end; i++) {
+                    lo = Math.min(lo, col[i]);
+                    hi = Math.max(hi, col[i]);
+                }
+                ranges[p] = Interval.of(lo, hi);
+            }
+
+            try {
+                return expr.evalInterval(ranges).hi() < t;
+            } catch (EvalException exc) {
+                // Let the evaluation report the error, if it occurs at all
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Keeps the k best rows seen so far in a binary min-heap of parallel primitive arrays, of which the root is the
+     * worst row. Higher scores are better, ties go to the lowest row index, and NaN scores are never selected.
+     */
+    private static final class TopAccumulator implements Accumulator<TopAccumulator> {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int k;
+        private final Threshold threshold;
+        private double[] scores;
+        private int[] rows;
+        private int size;
+
+        TopAccumulator(int k, Threshold threshold) {
+            this.k = k;
+            this.threshold = threshold;
+
+            // The heap grows as rows are offered, so that a task never holds more than its own rows
+            int capacity = Math.min(k, INITIAL_CAPACITY);
+            this.scores = new double[capacity];
+            this.rows = new int[capacity];
+        }
+
+        private static boolean worse(double s1, int r1, double s2, int r2) {
+            return s1 < s2 || s1 == s2 && r1 > r2;
+        }
+
+        @Override
+        public boolean skip(int start, int len) {
+            if (k == 0)
+                return true;
+            if (threshold == null)
+                return false;
+            return threshold.below(start, len, size == k ? scores[0] : Double.NEGATIVE_INFINITY);
+        }
+
+        @Override
+        public void add(double[] values, int start, int len) {
+            for (int i = 0; i < len; i++) {
+                double v = values[i];
+                if (v == v)
+                    offer(v, start + i);
+            }
+            if (threshold != null && size == k)
+                threshold.raise(scores[0]);
+        }
+
+        @Override
+        public void merge(TopAccumulator other) {
+            for (int i = 0; i < other.size; i++)
+                offer(other.scores[i], other.rows[i]);
+        }
+
+        private void offer(double score, int row) {
+            if (size < k) {
+                if (size == scores.length) {
+                    int capacity = (int) Math.min(k, 2L * size);
+                    scores = Arrays.copyOf(scores, capacity);
+                    rows = Arrays.copyOf(rows, capacity);
+                }
+
+                // Sift up
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse(score, row, scores[parent], rows[parent]))
+                        break;
+                    scores[i] = scores[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                scores[i] = score;
+                rows[i] = row;
+            } else if (worse(scores[0], rows[0], score, row)) {
+                siftDown(score, row, size);
+            }
+        }
+
+        private void siftDown(double score, int row, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n)
+                    break;
+                if (child + 1 < n && worse(scores[child + 1], rows[child + 1], scores[child], rows[child]))
+                    child++;
+                if (!worse(scores[child], rows[child], score, row))
+                    break;
+                scores[i] = scores[child];
+                rows[i] = rows[child];
+                i = child;
+            }
+            scores[i] = score;
+            rows[i] = row;
+        }
+
+        Ranking ranking() {
+            // Repeatedly move the worst row to the end, leaving the rows ordered from best to worst
+            int[] resultRows = new int[size];
+            double[] resultScores = new double[size];
+            for (int n = size; n > 0; n--) {
+                resultRows[n - 1] = rows[0];
+                resultScores[n - 1] = scores[0];
+                siftDown(scores[n - 1], rows[n - 1], n - 1);
+            }
+            size = 0;
+            return new Ranking(resultRows, resultScores);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.shadew.eval;
+
+/**
+ * Aggregate statistics of the results of an expression over many rows of parameters. See
+ * {@link Expression#summarize}.
+ *
+ * @param count The amount of rows
+ * @param sum   The sum of all results, computed with compensated summation
+ * @param min   The smallest result, or positive infinity if there were no rows
+ * @param max   The largest result, or negative infinity if there were no rows
+ */
+public record Summary(long count, double sum, double min, double max) {
+    /**
+     * Returns the mean of all results, or NaN if there were no rows.
+     */
+    public double mean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+}
@@ -0,0 +1,94 @@
+package net.shadew.eval;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An expression that starts out evaluating its tree form, and switches to a flattened form once it has been evaluated
+ * often enough. Create one using {@link Expression#tiered()}.
+ * <p>
+ * Tree evaluation needs no preparation, which makes it the cheapest option for expressions that are evaluated only a
+ * few times. The flattened form evaluates structurally equal subexpressions only once and runs as one loop over an
+ * array of instructions, but is costly to create. Once the amount of evaluations reaches the threshold, the flattened
+ * form is compiled by the given executor, and evaluation continues on the tree form until it is ready. Evaluations
+ * are counted without synchronization, so the threshold is approximate when this expression is evaluated concurrently.
+ * <p>
+ * Running the instructions costs more per operation than a tree, which the JIT compiler inlines well. The flattened
+ * form is therefore only switched to when it shares the result of an operation or function call among multiple
+ * subexpressions, and otherwise evaluation stays on the tree form.
+ * <p>
+ * The flattened form evaluates both operands of a conditional. To keep results and side effects identical to the tree
+ * form, expressions calling functions that may mutate, or containing expressions implemented outside this library,
+ * are never switched. When the flattened form fails in a conditional, the evaluation is repeated on the tree form, so
+ * that errors in operands that are not selected are not reported.
+ */
+public final class TieredExpression implements Expression {
+    /**
+     * The default amount of evaluations after which the flattened form is compiled.
+     */
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    private final Expression expression;
+    private final int threshold;
+    private final Executor executor;
+    private final AtomicBoolean promoted = new AtomicBoolean();
+
+    private int calls;
+    private volatile Program program;
+
+    TieredExpression(Expression expression, int threshold, Executor executor) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Negative threshold");
+
+        this.expression = expression;
+        this.threshold = threshold;
+        this.executor = executor;
+    }
+
+    TieredExpression(Expression expression) {
+        this(expression, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns the expression in tree form.
+     */
+    public Expression expression() {
+        return expression;
+    }
+
+    /**
+     * Returns whether evaluation has switched to the flattened form. This remains false when the expression has no
+     * shared subexpressions.
+     */
+    public boolean isCompiled() {
+        return program != null;
+    }
+
+    @Override
+    public double eval(double... params) throws EvalException {
+        Program p = program;
+        if (p == null) {
+            if (++calls >= threshold && !promoted.get())
+                promote();
+            return expression.eval(params);
+        }
+        return p.eval(params);
+    }
+
+    @Override
+    public Interval evalInterval(Interval... params) throws EvalException {
+        return expression.evalInterval(params);
+    }
+
+    private void promote() {
+        if (!promoted.compareAndSet(false, true))
+            return;
+
+        executor.execute(() -> {
+            Program p = Program.compile(expression);
+            if (p.concurrent && p.shares)
+                program = p;
+        });
+    }
+}
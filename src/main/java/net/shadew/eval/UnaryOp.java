@@ -1,8 +1,24 @@
 package net.shadew.eval;
 
-interface UnaryOp {
-    UnaryOp NEG = val -> -val;
-    UnaryOp ABS = Math::abs;
+/**
+ * The unary operators. Like {@link BinaryOp}, these are implemented with a switch to keep call sites monomorphic.
+ */
+enum UnaryOp {
+    NEG, ABS, NOT;
 
-    double apply(double val);
+    double apply(double val) {
+        return switch (this) {
+            case NEG -> -val;
+            case ABS -> Math.abs(val);
+            case NOT -> val == 0 ? 1 : 0;
+        };
+    }
+
+    Interval apply(Interval val) {
+        return switch (this) {
+            case NEG -> val.neg();
+            case ABS -> val.abs();
+            case NOT -> !val.contains(0) ? Interval.ZERO : val.isPoint() ? Interval.ONE : new Interval(0, 1);
+        };
+    }
 }
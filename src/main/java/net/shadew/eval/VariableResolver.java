@@ -0,0 +1,18 @@
+package net.shadew.eval;
+
+/**
+ * Computes the values of variables on demand, for variables that are not defined in an {@link ExprContext} up front.
+ * See {@link ExprContext#resolver(VariableResolver, boolean)}.
+ */
+@FunctionalInterface
+public interface VariableResolver {
+    /**
+     * Resolves the value of a variable.
+     *
+     * @param var The variable name
+     * @return The variable value
+     *
+     * @throws EvalException If the variable is unknown to this resolver, or can't be computed
+     */
+    double resolve(String var) throws EvalException;
+}
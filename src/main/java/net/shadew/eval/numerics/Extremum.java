@@ -0,0 +1,10 @@
+package net.shadew.eval.numerics;
+
+/**
+ * A point at which an expression reaches a minimum. See {@link Minimization}.
+ *
+ * @param x     The location of the minimum
+ * @param value The value of the expression at that location
+ */
+public record Extremum(double x, double value) {
+}
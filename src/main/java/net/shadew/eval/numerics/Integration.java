@@ -0,0 +1,241 @@
+package net.shadew.eval.numerics;
+
+import java.util.Arrays;
+
+import net.shadew.eval.EvalException;
+import net.shadew.eval.Expression;
+
+/**
+ * Adaptive numerical integration of expressions of one parameter, using the 21-point Gauss-Kronrod rule.
+ * <p>
+ * Every subinterval is integrated with both the 21-point Kronrod rule and the embedded 10-point Gauss rule, and the
+ * difference between both estimates the error. Subintervals of which the error is too large for their width are
+ * bisected. Rather than bisecting one subinterval at a time, all subintervals that need refinement are bisected at
+ * once, and all points of the new subintervals are evaluated in one batch. Large batches are evaluated in parallel.
+ */
+public final class Integration {
+    /**
+     * The default absolute and relative error tolerance.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    /**
+     * The default maximum amount of subintervals.
+     */
+    public static final int DEFAULT_MAX_INTERVALS = 4096;
+
+    private static final int POINTS = 21;
+
+    // Kronrod nodes, where the odd entries are also the nodes of the Gauss rule, followed by the center
+    private static final double[] XGK = {
+        0.995657163025808080735527280689003, 0.973906528517171720077964012084452,
+        0.930157491355708226001207180059508, 0.865063366688984510732096688423493,
+        0.780817726586416897063717578345042, 0.679409568299024406234327365114874,
+        0.562757134668604683339000099272694, 0.433395394129247190799265943165784,
+        0.294392862701460198131126603103866, 0.148874338981631210884826001129720,
+        0
+    };
+    private static final double[] WGK = {
+        0.011694638867371874278064396062192, 0.032558162307964727478818972459390,
+        0.054755896574351996031381300244580, 0.075039674810919952767043140916190,
+        0.093125454583697605535065465083366, 0.109387158802297641899210590325805,
+        0.123491976262065851077208132865270, 0.134709217311473325928054001771707,
+        0.142775938577060080797094273138717, 0.147739104901338491374841515972068,
+        0.149445554002916905664936468389821
+    };
+    private static final double[] WG = {
+        0.066671344308688137593568809893332, 0.149451349150580593145776339657697,
+        0.219086362515982043995534934228163, 0.269266719309996355091226921569469,
+        0.295524224714752870173892994651338
+    };
+
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private Integration() {
+    }
+
+    /**
+     * Integrates the given expression from {@code a} to {@code b}, with the default tolerances.
+     *
+     * @param f The integrand, of which parameter 0 is the integration variable
+     * @param a The lower bound
+     * @param b The upper bound
+     * @return The integral and its estimated error
+     *
+     * @throws EvalException            When evaluation of the integrand fails
+     * @throws IllegalArgumentException If either bound is not finite
+     */
+    public static Quadrature integrate(Expression f, double a, double b) throws EvalException {
+        return integrate(f, a, b, DEFAULT_TOLERANCE, DEFAULT_TOLERANCE, DEFAULT_MAX_INTERVALS);
+    }
+
+    /**
+     * Integrates the given expression from {@code a} to {@code b}. Integration stops when the estimated error is at
+     * most {@code max(absTolerance, relTolerance * |integral|)}, or when the given amount of subintervals is reached,
+     * in which case the returned error is larger than requested.
+     *
+     * @param f            The integrand, of which parameter 0 is the integration variable
+     * @param a            The lower bound
+     * @param b            The upper bound
+     * @param absTolerance The absolute error tolerance
+     * @param relTolerance The relative error tolerance
+     * @param maxIntervals The maximum amount of subintervals
+     * @return The integral and its estimated error
+     *
+     * @throws EvalException            When evaluation of the integrand fails
+     * @throws IllegalArgumentException If either bound is not finite, or if the maximum amount of subintervals is less
+     *                                  than 1
+     */
+    public static Quadrature integrate(Expression f, double a, double b, double absTolerance, double relTolerance, int maxIntervals) throws EvalException {
+        if (!Double.isFinite(a) || !Double.isFinite(b))
+            throw new IllegalArgumentException("Integration bounds must be finite");
+        if (maxIntervals < 1)
+            throw new IllegalArgumentException("Need at least 1 subinterval");
+        if (a == b)
+            return new Quadrature(0, 0);
+        if (a > b) {
+            Quadrature q = integrate(f, b, a, absTolerance, relTolerance, maxIntervals);
+            return new Quadrature(-q.value(), q.error());
+        }
+
+        Sampler sampler = new Sampler(f);
+        Intervals iv = new Intervals(sampler, maxIntervals);
+        iv.evaluate(new double[] {a}, new double[] {b}, 1);
+
+        double width = b - a;
+        while (true) {
+            double total = 0, error = 0;
+            for (int i = 0; i < iv.size; i++) {
+                total += iv.value[i];
+                error += iv.error[i];
+            }
+
+            double tolerance = Math.max(absTolerance, relTolerance * Math.abs(total));
+            if (error <= tolerance || iv.size >= maxIntervals || !(error == error))
+                return new Quadrature(total, error);
+
+            // Refine every subinterval with more than its share of the tolerance, the worst ones first
+            Integer[] order = new Integer[iv.size];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (x, y) -> Double.compare(iv.error[y], iv.error[x]));
+
+            int budget = maxIntervals - iv.size;
+            double[] lo = new double[budget * 2];
+            double[] hi = new double[budget * 2];
+            boolean[] split = new boolean[iv.size];
+            int count = 0;
+            for (int i : order) {
+                if (count / 2 >= budget)
+                    break;
+                if (count > 0 && iv.error[i] <= tolerance * (iv.hi[i] - iv.lo[i]) / width)
+                    break;
+
+                double mid = 0.5 * (iv.lo[i] + iv.hi[i]);
+                if (mid <= iv.lo[i] || mid >= iv.hi[i])
+                    // Too narrow to bisect any further
+                    continue;
+
+                lo[count] = iv.lo[i];
+                hi[count++] = mid;
+                lo[count] = mid;
+                hi[count++] = iv.hi[i];
+                split[i] = true;
+            }
+
+            if (count == 0)
+                return new Quadrature(total, error);
+
+            iv.remove(split);
+            iv.evaluate(lo, hi, count);
+        }
+    }
+
+    /**
+     * The current subintervals with their integrals and error estimates.
+     */
+    private static final class Intervals {
+        final Sampler sampler;
+        final double[] lo, hi, value, error;
+        int size;
+
+        Intervals(Sampler sampler, int capacity) {
+            this.sampler = sampler;
+            this.lo = new double[capacity];
+            this.hi = new double[capacity];
+            this.value = new double[capacity];
+            this.error = new double[capacity];
+        }
+
+        void remove(boolean[] removed) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed[i]) {
+                    lo[n] = lo[i];
+                    hi[n] = hi[i];
+                    value[n] = value[i];
+                    error[n] = error[i];
+                    n++;
+                }
+            }
+            size = n;
+        }
+
+        /**
+         * Integrates the given subintervals, evaluating the integrand at all their nodes in one batch, and adds them.
+         */
+        void evaluate(double[] los, double[] his, int count) throws EvalException {
+            double[] xs = new double[count * POINTS];
+            for (int k = 0; k < count; k++) {
+                double center = 0.5 * (los[k] + his[k]);
+                double half = 0.5 * (his[k] - los[k]);
+                int base = k * POINTS;
+                for (int j = 0; j < 10; j++) {
+                    xs[base + 2 * j] = center - half * XGK[j];
+                    xs[base + 2 * j + 1] = center + half * XGK[j];
+                }
+                xs[base + 20] = center;
+            }
+
+            double[] fs = new double[xs.length];
+            sampler.eval(xs, fs, xs.length);
+
+            for (int k = 0; k < count; k++) {
+                int base = k * POINTS;
+                double half = 0.5 * (his[k] - los[k]);
+                double fc = fs[base + 20];
+
+                double resK = WGK[10] * fc;
+                double resG = 0;
+                double resAbs = Math.abs(resK);
+                for (int j = 0; j < 10; j++) {
+                    double f1 = fs[base + 2 * j], f2 = fs[base + 2 * j + 1];
+                    resK += WGK[j] * (f1 + f2);
+                    resAbs += WGK[j] * (Math.abs(f1) + Math.abs(f2));
+                    if (j % 2 == 1)
+                        resG += WG[j / 2] * (f1 + f2);
+                }
+
+                // Deviation of the integrand from its mean, used to scale the error estimate like QUADPACK does
+                double mean = resK * 0.5;
+                double resAsc = WGK[10] * Math.abs(fc - mean);
+                for (int j = 0; j < 10; j++)
+                    resAsc += WGK[j] * (Math.abs(fs[base + 2 * j] - mean) + Math.abs(fs[base + 2 * j + 1] - mean));
+
+                double err = Math.abs((resK - resG) * half);
+                resAsc *= Math.abs(half);
+                resAbs *= Math.abs(half);
+                if (resAsc != 0 && err != 0)
+                    err = resAsc * Math.min(1, Math.pow(200 * err / resAsc, 1.5));
+                if (resAbs > Double.MIN_NORMAL / (50 * EPSILON))
+                    err = Math.max(EPSILON * 50 * resAbs, err);
+
+                lo[size] = los[k];
+                hi[size] = his[k];
+                value[size] = resK * half;
+                error[size] = err;
+                size++;
+            }
+        }
+    }
+}
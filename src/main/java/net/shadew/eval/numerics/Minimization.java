@@ -0,0 +1,158 @@
+package net.shadew.eval.numerics;
+
+import net.shadew.eval.EvalException;
+import net.shadew.eval.Expression;
+
+/**
+ * Minimization of expressions of one parameter, using Brent's method: golden section search combined with parabolic
+ * interpolation. To find a maximum, minimize the negated expression.
+ */
+public final class Minimization {
+    private static final double GOLDEN = (3 - Math.sqrt(5)) / 2;
+    private static final double SQRT_EPSILON = Math.sqrt(Math.ulp(1.0));
+
+    private Minimization() {
+    }
+
+    /**
+     * Finds a local minimum of the given expression between {@code a} and {@code b}. If the expression is unimodal in
+     * the range, this is the minimum of the expression within the range.
+     *
+     * @param f         The expression, of which parameter 0 is the variable
+     * @param a         The lower end of the range
+     * @param b         The upper end of the range
+     * @param tolerance The absolute tolerance of the location of the minimum
+     * @return The location and value of the minimum
+     *
+     * @throws EvalException            When evaluation of the expression fails
+     * @throws IllegalArgumentException If the range is empty or not finite
+     */
+    public static Extremum local(Expression f, double a, double b, double tolerance) throws EvalException {
+        if (!(a < b) || !Double.isFinite(b - a))
+            throw new IllegalArgumentException("Invalid range [" + a + ", " + b + "]");
+        return brent(f, a, b, tolerance);
+    }
+
+    /**
+     * Finds the minimum of the given expression between {@code a} and {@code b}. The range is sampled at
+     * {@code samples + 1} equally spaced points, which are evaluated in one batch. Around every sample that is not
+     * larger than its neighbours, a local minimum is searched in parallel, and the lowest of those is returned. Minima
+     * narrower than the sample spacing may be missed.
+     *
+     * @param f         The expression, of which parameter 0 is the variable
+     * @param a         The lower end of the range
+     * @param b         The upper end of the range
+     * @param samples   The amount of sample intervals
+     * @param tolerance The absolute tolerance of the location of the minimum
+     * @return The location and value of the minimum, or null if the expression is NaN at all samples
+     *
+     * @throws EvalException            When evaluation of the expression fails
+     * @throws IllegalArgumentException If the amount of samples is less than 1, or if the range is empty or not finite
+     */
+    public static Extremum global(Expression f, double a, double b, int samples, double tolerance) throws EvalException {
+        if (samples < 1)
+            throw new IllegalArgumentException("Need at least 1 sample");
+        if (!(a < b) || !Double.isFinite(b - a))
+            throw new IllegalArgumentException("Invalid range [" + a + ", " + b + "]");
+
+        Sampler sampler = new Sampler(f);
+        double[] xs = new double[samples + 1];
+        for (int i = 0; i <= samples; i++)
+            xs[i] = i == samples ? b : a + (b - a) * i / samples;
+        double[] fs = new double[samples + 1];
+        sampler.eval(xs, fs, xs.length);
+
+        int[] candidates = new int[samples + 1];
+        int count = 0;
+        for (int i = 0; i <= samples; i++) {
+            double v = fs[i];
+            if (v == v && !(i > 0 && fs[i - 1] < v) && !(i < samples && fs[i + 1] < v))
+                candidates[count++] = i;
+        }
+
+        Extremum[] minima = sampler.each(new Extremum[count], k -> {
+            int i = candidates[k];
+            Extremum m = brent(f, xs[Math.max(i - 1, 0)], xs[Math.min(i + 1, samples)], tolerance);
+
+            // Brent's method never evaluates the ends of the range, where the minimum may lie
+            return m.value() <= fs[i] ? m : new Extremum(xs[i], fs[i]);
+        });
+
+        Extremum best = null;
+        for (Extremum m : minima) {
+            if (best == null || m.value() < best.value())
+                best = m;
+        }
+        return best;
+    }
+
+    private static Extremum brent(Expression f, double a, double b, double tolerance) throws EvalException {
+        double x = a + GOLDEN * (b - a), w = x, v = x;
+        double fx = f.eval(x), fw = fx, fv = fx;
+        double d = 0, e = 0;
+
+        while (true) {
+            double m = 0.5 * (a + b);
+            double tol = SQRT_EPSILON * Math.abs(x) + tolerance / 3;
+            double tol2 = 2 * tol;
+            if (Math.abs(x - m) <= tol2 - 0.5 * (b - a))
+                return new Extremum(x, fx);
+
+            boolean golden = true;
+            if (Math.abs(e) > tol) {
+                // Fit a parabola through x, w and v
+                double r = (x - w) * (fx - fv);
+                double q = (x - v) * (fx - fw);
+                double p = (x - v) * q - (x - w) * r;
+                q = 2 * (q - r);
+                if (q > 0)
+                    p = -p;
+                else
+                    q = -q;
+                r = e;
+                e = d;
+
+                if (Math.abs(p) < Math.abs(0.5 * q * r) && p > q * (a - x) && p < q * (b - x)) {
+                    d = p / q;
+                    double u = x + d;
+                    if (u - a < tol2 || b - u < tol2)
+                        d = x < m ? tol : -tol;
+                    golden = false;
+                }
+            }
+            if (golden) {
+                e = (x < m ? b : a) - x;
+                d = GOLDEN * e;
+            }
+
+            double u = x + (Math.abs(d) >= tol ? d : d > 0 ? tol : -tol);
+            double fu = f.eval(u);
+            if (fu <= fx) {
+                if (u < x)
+                    b = x;
+                else
+                    a = x;
+                v = w;
+                fv = fw;
+                w = x;
+                fw = fx;
+                x = u;
+                fx = fu;
+            } else {
+                if (u < x)
+                    a = u;
+                else
+                    b = u;
+                if (fu <= fw || w == x) {
+                    v = w;
+                    fv = fw;
+                    w = u;
+                    fw = fu;
+                } else if (fu <= fv || v == x || v == w) {
+                    v = u;
+                    fv = fu;
+                }
+            }
+        }
+    }
+}
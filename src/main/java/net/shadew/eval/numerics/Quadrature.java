@@ -0,0 +1,10 @@
+package net.shadew.eval.numerics;
+
+/**
+ * The result of a numerical integration. See {@link Integration}.
+ *
+ * @param value The estimated value of the integral
+ * @param error An estimate of the absolute error of the value
+ */
+public record Quadrature(double value, double error) {
+}
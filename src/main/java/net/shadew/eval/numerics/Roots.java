@@ -0,0 +1,154 @@
+package net.shadew.eval.numerics;
+
+import net.shadew.eval.EvalException;
+import net.shadew.eval.Expression;
+
+/**
+ * Root finding for expressions of one parameter, using Brent's method: a combination of bisection, the secant method
+ * and inverse quadratic interpolation that converges superlinearly on smooth functions but never takes more steps than
+ * bisection would.
+ */
+public final class Roots {
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private Roots() {
+    }
+
+    /**
+     * Finds a root of the given expression between {@code a} and {@code b}, where the expression has a different sign
+     * at both ends.
+     *
+     * @param f         The expression, of which parameter 0 is the variable
+     * @param a         One end of the bracket
+     * @param b         The other end of the bracket
+     * @param tolerance The absolute tolerance of the root
+     * @return A root of the expression, with an error of at most {@code tolerance} plus a few ulps
+     *
+     * @throws EvalException            When evaluation of the expression fails
+     * @throws IllegalArgumentException If the expression does not have a different sign at both ends
+     */
+    public static double bracket(Expression f, double a, double b, double tolerance) throws EvalException {
+        return brent(f, a, b, f.eval(a), f.eval(b), tolerance);
+    }
+
+    /**
+     * Finds the roots of the given expression between {@code a} and {@code b}. The range is sampled at
+     * {@code samples + 1} equally spaced points, which are evaluated in one batch, and every pair of adjacent points
+     * at which the expression changes sign is then refined to a root in parallel. Roots that do not cause a change of
+     * sign, such as double roots, and roots closer together than the sample spacing may be missed.
+     *
+     * @param f         The expression, of which parameter 0 is the variable
+     * @param a         The lower end of the range
+     * @param b         The upper end of the range
+     * @param samples   The amount of sample intervals
+     * @param tolerance The absolute tolerance of the roots
+     * @return The roots found, in increasing order
+     *
+     * @throws EvalException            When evaluation of the expression fails
+     * @throws IllegalArgumentException If the amount of samples is less than 1, or if the range is empty or not finite
+     */
+    public static double[] findAll(Expression f, double a, double b, int samples, double tolerance) throws EvalException {
+        if (samples < 1)
+            throw new IllegalArgumentException("Need at least 1 sample");
+        if (!(a < b) || !Double.isFinite(b - a))
+            throw new IllegalArgumentException("Invalid range [" + a + ", " + b + "]");
+
+        Sampler sampler = new Sampler(f);
+        double[] xs = new double[samples + 1];
+        for (int i = 0; i <= samples; i++)
+            xs[i] = i == samples ? b : a + (b - a) * i / samples;
+        double[] fs = new double[samples + 1];
+        sampler.eval(xs, fs, xs.length);
+
+        // Sign changes between samples, exact zeros count once
+        int[] brackets = new int[samples + 1];
+        int count = 0;
+        for (int i = 0; i <= samples; i++) {
+            if (fs[i] == 0)
+                brackets[count++] = i;
+            else if (i < samples && opposite(fs[i], fs[i + 1]))
+                brackets[count++] = i;
+        }
+
+        Double[] roots = sampler.each(new Double[count], k -> {
+            int i = brackets[k];
+            if (fs[i] == 0)
+                return xs[i];
+            return brent(f, xs[i], xs[i + 1], fs[i], fs[i + 1], tolerance);
+        });
+
+        double[] result = new double[count];
+        for (int i = 0; i < count; i++)
+            result[i] = roots[i];
+        return result;
+    }
+
+    private static boolean opposite(double x, double y) {
+        return x < 0 && y > 0 || x > 0 && y < 0;
+    }
+
+    private static double brent(Expression f, double a, double b, double fa, double fb, double tolerance) throws EvalException {
+        if (fa == 0)
+            return a;
+        if (fb == 0)
+            return b;
+        if (!opposite(fa, fb))
+            throw new IllegalArgumentException("Expression must have a different sign at both ends of the bracket");
+
+        double c = a, fc = fa;
+        double d = b - a, e = d;
+        while (true) {
+            if ((fb < 0) == (fc < 0)) {
+                c = a;
+                fc = fa;
+                d = e = b - a;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+
+            double tol = 2 * EPSILON * Math.abs(b) + 0.5 * tolerance;
+            double m = 0.5 * (c - b);
+            if (Math.abs(m) <= tol || fb == 0)
+                return b;
+
+            if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+                // Secant or inverse quadratic interpolation
+                double s = fb / fa, p, q;
+                if (a == c) {
+                    p = 2 * m * s;
+                    q = 1 - s;
+                } else {
+                    double qa = fa / fc, r = fb / fc;
+                    p = s * (2 * m * qa * (qa - r) - (b - a) * (r - 1));
+                    q = (qa - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0)
+                    q = -q;
+                else
+                    p = -p;
+
+                if (2 * p < Math.min(3 * m * q - Math.abs(tol * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = e = m;
+                }
+            } else {
+                d = e = m;
+            }
+
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tol ? d : m > 0 ? tol : -tol;
+            fb = f.eval(b);
+            if (fb != fb)
+                throw new EvalException("Expression is NaN at " + b);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.shadew.eval.numerics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.shadew.eval.EvalException;
+import net.shadew.eval.Expression;
+import net.shadew.eval.ExpressionSet;
+
+/**
+ * Evaluates a function of one parameter at many points at once. Points are evaluated in batches, and large batches
+ * are split over the common fork-join pool, unless the function calls functions that may mutate.
+ */
+final class Sampler {
+    // Points evaluated by one task, below which splitting costs more than it gains
+    private static final int LEAF = 2048;
+
+    private final ExpressionSet set;
+
+    Sampler(Expression function) {
+        this.set = ExpressionSet.of(function);
+    }
+
+    /**
+     * Evaluates the function at the first {@code n} points of {@code xs}, storing the results in {@code out}.
+     */
+    void eval(double[] xs, double[] out, int n) throws EvalException {
+        if (!set.isPure() || n < LEAF * 2) {
+            set.evalBatch(0, n, new double[][] {out}, xs);
+            return;
+        }
+
+        run(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                split(0, n);
+            }
+
+            private void split(int from, int to) {
+                if (to - from <= LEAF) {
+                    try {
+                        set.evalBatch(from, to, new double[][] {out}, xs);
+                    } catch (EvalException exc) {
+                        throw new RuntimeException(exc);
+                    }
+                    return;
+                }
+
+                int mid = (from + to) >>> 1;
+                invokeAll(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        split(from, mid);
+                    }
+                }, new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        split(mid, to);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs {@code n} independent jobs, in parallel if the function allows it, and collects their results.
+     */
+    <T> T[] each(T[] results, Job<T> job) throws EvalException {
+        if (!set.isPure() || results.length < 2) {
+            for (int i = 0; i < results.length; i++)
+                results[i] = job.run(i);
+            return results;
+        }
+
+        RecursiveAction[] tasks = new RecursiveAction[results.length];
+        for (int i = 0; i < results.length; i++) {
+            int index = i;
+            tasks[i] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        results[index] = job.run(index);
+                    } catch (EvalException exc) {
+                        throw new RuntimeException(exc);
+                    }
+                }
+            };
+        }
+        run(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        return results;
+    }
+
+    private static void run(RecursiveAction action) throws EvalException {
+        try {
+            ForkJoinPool.commonPool().invoke(action);
+        } catch (RuntimeException exc) {
+            // The fork-join pool may wrap the exception of a task in another exception
+            for (Throwable t = exc; t != null; t = t.getCause()) {
+                if (t instanceof EvalException evalExc)
+                    throw evalExc;
+            }
+            throw exc;
+        }
+    }
+
+    interface Job<T> {
+        T run(int i) throws EvalException;
+    }
+}
@@ -0,0 +1,137 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApproximationTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private Expression parse(String str, String... params) throws Exception {
+        return CtxExpression.parse(str).toContextless(context, params);
+    }
+
+    private static double maxError(Expression a, Expression b, double lo, double hi) throws Exception {
+        double err = 0;
+        for (int i = 0; i <= 100000; i++) {
+            double x = lo + (hi - lo) * i / 100000;
+            err = Math.max(err, Math.abs(a.eval(x) - b.eval(x)));
+        }
+        return err;
+    }
+
+    @Test
+    void testApproximate() throws Exception {
+        String[] exprs = {"exp(x) * ln(1 + x ^ 2) + sin(3 * x)", "1 / (1 + 25 * x ^ 2)", "exp(-x * x) * atan(x) + sinh(x / 3)"};
+        for (String str : exprs) {
+            Expression e = parse(str, "x");
+            for (double tol : new double[] {1e-4, 1e-8, 1e-11}) {
+                Expression approx = e.approximate(0, -2, 3, tol);
+                assertTrue(maxError(e, approx, -2, 3) <= tol, str + " " + tol);
+                assertTrue(approx.estimateCost() < e.estimateCost(), str);
+            }
+        }
+    }
+
+    @Test
+    void testOutsideRange() throws Exception {
+        Expression e = parse("sqrt(x) * cos(x)", "x");
+        Expression approx = e.approximate(0, 1, 2, 1e-9);
+        assertEquals(e.eval(5), approx.eval(5), 0);
+        assertEquals(e.eval(0.5), approx.eval(0.5), 0);
+        assertTrue(Double.isNaN(approx.eval(-1)));
+        assertTrue(approx.evalInterval(new Interval(1.2, 1.4)).contains(approx.eval(1.3)));
+    }
+
+    @Test
+    void testCalls() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("price", ExprFunction.noMutation(args -> {
+            calls.incrementAndGet();
+            return Math.exp(-args[0]) * Math.log1p(args[0]);
+        }));
+
+        Expression approx = parse("price(t) * 100", "t").approximate(0, 0, 10, 1e-6);
+        int sampled = calls.get();
+        for (int i = 0; i <= 1000; i++)
+            assertEquals(Math.exp(-i / 100.0) * Math.log1p(i / 100.0) * 100, approx.eval(i / 100.0), 1e-6);
+        assertEquals(sampled, calls.get());
+    }
+
+    @Test
+    void testCompiled() throws Exception {
+        Expression e = parse("exp(x) * ln(1 + x ^ 2) + y", "y", "x");
+        Expression approx = parse("exp(x) * ln(1 + x ^ 2)", "y", "x").approximate(1, -2, 3, 1e-9);
+        Expression sum = EBinary.of(new EParam(0), approx, BinaryOp.ADD);
+
+        // Compiled like a built-in node, so that it is pure and evaluated without going through the tree form
+        ExpressionSet set = ExpressionSet.of(sum);
+        assertTrue(set.isPure());
+        assertTrue(Program.compile(sum).concurrent);
+
+        int rows = 5000;
+        double[] ys = new double[rows], xs = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            ys[i] = i % 3;
+            xs[i] = -3 + 7.0 * i / rows;
+        }
+        double[][] out = new double[1][rows];
+        set.evalBatch(out, ys, xs);
+        double expected = 0;
+        int best = 0;
+        for (int i = 0; i < rows; i++) {
+            double v = sum.eval(ys[i], xs[i]);
+            expected += v;
+            if (v > sum.eval(ys[best], xs[best]))
+                best = i;
+            assertEquals(v, out[0][i], 0);
+            assertEquals(e.eval(ys[i], xs[i]), v, 1e-9);
+        }
+        assertEquals(expected, sum.sum(rows, ys, xs), 1e-6);
+        assertArrayEquals(new int[] {best}, sum.top(1, rows, ys, xs).rows());
+        double[] grid = sum.grid(new double[] {0, 1}, new double[] {-1, 0.5, 4});
+        assertEquals(sum.eval(1, 4), grid[5], 0);
+        assertEquals(sum.eval(0, 0.5), grid[1], 0);
+
+        // Binding keeps the approximation, or evaluates it right away
+        assertInstanceOf(EChebyshev.class, ((EBinary) sum.bind(0, 2)).er());
+        assertEquals(approx.eval(0, 1.5), approx.bind(1, 1.5).eval(), 0);
+        assertEquals(approx.eval(0, 5), approx.bind(1, 5).eval(), 0);
+        assertEquals(sum.eval(2, 1.25), sum.bind(0, 2).eval(1.25), 0);
+    }
+
+    @Test
+    void testOtherParams() throws Exception {
+        Expression e = parse("exp(x) * y", "y", "x");
+        assertThrows(IllegalArgumentException.class, () -> e.approximate(1, 0, 1, 1e-6));
+
+        // Also when other parameters are only compared
+        assertThrows(IllegalArgumentException.class, () -> parse("x < y ? exp(y) : 1", "x", "y").approximate(1, 0, 1, 1e-9));
+
+        Expression approx = e.bind(0, 3).approximate(0, 0, 1, 1e-6);
+        assertEquals(3 * Math.exp(0.5), approx.eval(0.5), 1e-6);
+        assertThrows(EvalException.class, approx::eval);
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        Expression e = parse("sin(x)", "x");
+        assertThrows(IllegalArgumentException.class, () -> e.approximate(-1, 0, 1, 1e-6));
+        assertThrows(IllegalArgumentException.class, () -> e.approximate(0, 1, 1, 1e-6));
+        assertThrows(IllegalArgumentException.class, () -> e.approximate(0, 0, Double.POSITIVE_INFINITY, 1e-6));
+        assertThrows(IllegalArgumentException.class, () -> e.approximate(0, 0, 1, 0));
+
+        assertThrows(EvalException.class, () -> parse("x < 0.3 ? 0 : 1", "x").approximate(0, 0, 1, 1e-6));
+        assertThrows(EvalException.class, () -> parse("1 / x", "x").approximate(0, -1, 1, 1e-6));
+        assertThrows(EvalException.class, () -> parse("ln(x)", "x").approximate(0, -1, 1, 1e-6));
+    }
+}
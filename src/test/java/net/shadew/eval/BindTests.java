@@ -0,0 +1,80 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BindTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private Expression parse(String str, String... params) throws Exception {
+        return CtxExpression.parse(str).toContextless(context, params);
+    }
+
+    @Test
+    void testBind() throws Exception {
+        Expression e = parse("a * x + sqrt(b) * y - c", "a", "x", "b", "y", "c");
+        Expression bound = e.bind(new int[] {4, 0, 2}, new double[] {1, 3, 16});
+        assertEquals(e.eval(3, 5, 16, 7, 1), bound.eval(5, 7), 0);
+        assertEquals(e.eval(3, -2, 16, 0.5, 1), bound.eval(-2, 0.5), 0);
+
+        Expression single = e.bind(1, 2);
+        assertEquals(e.eval(1, 2, 3, 4, 5), single.eval(1, 3, 4, 5), 0);
+    }
+
+    @Test
+    void testFolding() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("slow", ExprFunction.noMutation(args -> {
+            calls.incrementAndGet();
+            return args[0] * 2;
+        }));
+
+        Expression e = parse("slow(a + b) * x", "a", "b", "x");
+        Expression bound = e.bind(new int[] {0, 1}, new double[] {1, 2});
+        assertEquals(1, calls.get());
+        assertEquals(new EConstParam(new EConstant(6), new EParam(0), BinaryOp.MUL), bound);
+        assertEquals(60, bound.eval(10), 0);
+        assertEquals(1, calls.get());
+
+        assertEquals(new EConstant(18), parse("x * y", "x", "y").bind(new int[] {0, 1}, new double[] {3, 6}));
+        assertEquals(new EParam(0), parse("x < 0 ? -1 : y", "x", "y").bind(0, 2));
+    }
+
+    @Test
+    void testMutating() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet() + args[0]);
+
+        Expression bound = parse("count(x)", "x").bind(0, 10);
+        assertEquals(0, calls.get());
+        assertEquals(11, bound.eval(), 0);
+        assertEquals(12, bound.eval(), 0);
+    }
+
+    @Test
+    void testForeignExpression() throws Exception {
+        Expression foreign = params -> params[0] - params[1] * params[2];
+        Expression bound = foreign.bind(1, 4);
+        assertEquals(foreign.eval(10, 4, 2), bound.eval(10, 2), 0);
+        assertEquals(foreign.eval(10, 4, 2), EBinary.of(bound, new EConstant(0), BinaryOp.ADD).eval(10, 2), 0);
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        Expression e = parse("x + y", "x", "y");
+        assertThrows(IllegalArgumentException.class, () -> e.bind(-1, 3));
+        assertThrows(IllegalArgumentException.class, () -> e.bind(new int[] {0, 0}, new double[] {1, 2}));
+        assertThrows(IllegalArgumentException.class, () -> e.bind(new int[] {0}, new double[] {1, 2}));
+        assertSame(e, e.bind(new int[0], new double[0]));
+    }
+}
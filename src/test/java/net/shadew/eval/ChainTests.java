@@ -0,0 +1,109 @@
+package net.shadew.eval;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChainTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private static String linearModel(int terms) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            if (i > 0)
+                b.append(i % 3 == 0 ? " - " : " + ");
+            b.append(i % 7 + 0.25).append(" * x").append(i % 5).append(" * ").append(i % 11 + 1);
+        }
+        return b.toString();
+    }
+
+    private static double linearModel(int terms, double... x) {
+        double v = 0;
+        for (int i = 0; i < terms; i++) {
+            double term = (i % 7 + 0.25) * x[i % 5] * (i % 11 + 1);
+            v = i == 0 ? term : i % 3 == 0 ? v - term : v + term;
+        }
+        return v;
+    }
+
+    @Test
+    void testLargeFormula() throws Exception {
+        int terms = 50000;
+        CtxExpression parsed = CtxExpression.parse(linearModel(terms));
+        Expression e = parsed.toContextless(context, "x0", "x1", "x2", "x3", "x4");
+        double[] x = {0.5, -1.25, 3, 0.125, 2};
+
+        double expected = linearModel(terms, x);
+        assertEquals(expected, e.eval(x), 0);
+        assertTrue(e.evalInterval(Interval.of(x[0]), Interval.of(x[1]), Interval.of(x[2]), Interval.of(x[3]), Interval.of(x[4])).contains(expected));
+        assertEquals(expected, ExpressionSet.of(e).eval(x)[0], 0);
+        assertEquals(expected, e.bind(0, x[0]).eval(x[1], x[2], x[3], x[4]), 0);
+
+        context.defineVar("x0", x[0]).defineVar("x1", x[1]).defineVar("x2", x[2]).defineVar("x3", x[3]).defineVar("x4", x[4]);
+        assertEquals(expected, parsed.eval(context), 0);
+        assertEquals(parsed, CtxExpression.parse(linearModel(terms)));
+    }
+
+    @Test
+    void testSameAsNested() throws Exception {
+        String[][] exprs = {
+            {"x - y + 3 - x * 2 + y", "(((x - y) + 3) - (x * 2)) + y"},
+            {"x * y / 3 % 2 * x", "(((x * y) / 3) % 2) * x"},
+            {"2 * 3 * x * 4", "((2 * 3) * x) * 4"},
+            {"1 + 2 + x - 3 + 4", "(((1 + 2) + x) - 3) + 4"}
+        };
+        for (String[] pair : exprs) {
+            CtxExpression parsed = CtxExpression.parse(pair[0]);
+            Expression e = parsed.toContextless(context, "x", "y");
+            Expression nested = CtxExpression.parse(pair[1]).toContextless(context, "x", "y");
+            for (double x = -3; x <= 3; x += 0.7) {
+                for (double y = -2; y <= 2; y += 0.9) {
+                    context.defineVar("x", x).defineVar("y", y);
+                    assertEquals(nested.eval(x, y), e.eval(x, y), 0, pair[0]);
+                    assertEquals(nested.eval(x, y), parsed.eval(context), 0, pair[0]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFolding() throws Exception {
+        // Only leading constants are folded
+        Expression e = CtxExpression.parse("1 + 2 + x + 3 + 4").toContextless(context, "x");
+        assertEquals(new EChain(new BinaryOp[] {null, BinaryOp.ADD, BinaryOp.ADD, BinaryOp.ADD}, new Expression[] {new EConstant(3), new EParam(0), new EConstant(3), new EConstant(4)}, false), e);
+        assertEquals(EBinary.of(new EConstant(6), new EParam(0), BinaryOp.MUL), CtxExpression.parse("1 * 2 * 3 * x").toContextless(context, "x"));
+        assertEquals(new EConstant(10), CtxExpression.parse("1 + 2 + 3 + 4").toContextless(context));
+        assertEquals(new EError("No such variable: 'y'"), CtxExpression.parse("x + 2 + y + z").toContextless(context, "x"));
+    }
+
+    @Test
+    void testPairwise() throws Exception {
+        int terms = 10000;
+        StringBuilder b = new StringBuilder("1");
+        for (int i = 1; i < terms; i++)
+            b.append(" + x");
+        Expression e = CtxExpression.parse(b.toString()).toContextless(context, "x");
+        Expression pairwise = e.toPairwiseSums();
+        assertNotEquals(e, pairwise);
+        assertSame(pairwise, pairwise.toPairwiseSums());
+
+        double x = 0.1;
+        double exact = 1 + (terms - 1) * 0.1;
+        double err = Math.abs(e.eval(x) - exact);
+        double pairwiseErr = Math.abs(pairwise.eval(x) - exact);
+        assertTrue(pairwiseErr < err, pairwiseErr + " >= " + err);
+        assertEquals(pairwise.eval(x), ExpressionSet.of(pairwise).eval(x)[0], 0);
+        assertTrue(pairwise.evalInterval(Interval.of(x)).contains(pairwise.eval(x)));
+
+        // Products are not affected
+        Expression product = CtxExpression.parse("x * x * x * 2").toContextless(context, "x");
+        assertSame(product, product.toPairwiseSums());
+    }
+}
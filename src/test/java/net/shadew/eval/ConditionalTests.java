@@ -0,0 +1,197 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConditionalTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private double eval(String str) throws Exception {
+        return CtxExpression.parse(str).eval(context);
+    }
+
+    @Test
+    void testComparisons() throws Exception {
+        assertEquals(1, eval("1 < 2"), 0.00001);
+        assertEquals(0, eval("2 < 2"), 0.00001);
+        assertEquals(1, eval("2 <= 2"), 0.00001);
+        assertEquals(1, eval("3 > 2"), 0.00001);
+        assertEquals(0, eval("2 >= 3"), 0.00001);
+        assertEquals(1, eval("2 == 1 + 1"), 0.00001);
+        assertEquals(1, eval("2 != 3"), 0.00001);
+        assertEquals(1, eval("1 < 2 == 2 < 3"), 0.00001);
+    }
+
+    @Test
+    void testLogic() throws Exception {
+        assertEquals(1, eval("1 < 2 && 3 < 4"), 0.00001);
+        assertEquals(0, eval("1 < 2 && 0"), 0.00001);
+        assertEquals(1, eval("0 || 5"), 0.00001);
+        assertEquals(0, eval("0 || 0"), 0.00001);
+        assertEquals(1, eval("!0"), 0.00001);
+        assertEquals(0, eval("!3"), 0.00001);
+        assertEquals(1, eval("0 && 1 || 1"), 0.00001);
+    }
+
+    @Test
+    void testTernary() throws Exception {
+        assertEquals(3, eval("1 < 2 ? 3 : 4"), 0.00001);
+        assertEquals(4, eval("1 > 2 ? 3 : 4"), 0.00001);
+        assertEquals(6, eval("0 ? 1 : 0 ? 2 : 6"), 0.00001);
+        assertEquals(5, eval("2 + (1 ? 3 : 4)"), 0.00001);
+    }
+
+    @Test
+    void testBars() throws Exception {
+        assertEquals(5, eval("||-5||"), 0.00001);
+        assertEquals(1, eval("|-1| || |0|"), 0.00001);
+        assertEquals(1, eval("|(0 || -3)|"), 0.00001);
+    }
+
+    @Test
+    void testTrailingInput() {
+        assertThrows(ParseException.class, () -> CtxExpression.parse("1 2"));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("1 ? 2"));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("1 ! 2"));
+    }
+
+    @Test
+    void testShortCircuit() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet());
+
+        assertEquals(2, eval("1 ? 2 : count()"), 0.00001);
+        assertEquals(0, eval("0 && count()"), 0.00001);
+        assertEquals(1, eval("1 || count()"), 0.00001);
+        assertEquals(0, calls.get());
+
+        assertEquals(1, eval("0 || count()"), 0.00001);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testFolding() throws Exception {
+        Expression e = CtxExpression.parse("PI > 3 ? x * 2 : unknown_variable").toContextless(context, "x");
+        assertInstanceOf(EBinary.class, e);
+        assertEquals(6, e.eval(3), 0.00001);
+    }
+
+    @Test
+    void testErrorBranch() throws Exception {
+        Expression e = CtxExpression.parse("x > 0 ? x : unknown_variable").toContextless(context, "x");
+        assertEquals(2, e.eval(2), 0.00001);
+        assertThrows(EvalException.class, () -> e.eval(-2));
+
+        ExpressionSet set = ExpressionSet.of(e);
+        double[][] out = new double[1][3];
+        set.evalBatch(out, new double[] {1, 2, 3});
+        assertArrayEquals(new double[] {1, 2, 3}, out[0], 0);
+        assertThrows(EvalException.class, () -> set.evalBatch(out, new double[] {1, -2, 3}));
+        assertThrows(EvalException.class, () -> set.eval(-1));
+    }
+
+    @Test
+    void testBatch() throws Exception {
+        Expression e = CtxExpression.parse("x < 0 ? -x * y : x >= 1 && y != 2 ? sqrt(x) : !(x * y)")
+                                    .toContextless(context, "x", "y");
+        ExpressionSet set = ExpressionSet.of(e);
+
+        int rows = 1000;
+        double[] xs = new double[rows], ys = new double[rows];
+        float[] fxs = new float[rows], fys = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = fxs[i] = (i % 40 - 20) / 8f;
+            ys[i] = fys[i] = i % 5;
+        }
+
+        double[][] out = new double[1][rows];
+        float[][] fout = new float[1][rows];
+        set.evalBatch(out, xs, ys);
+        set.evalBatch(fout, fxs, fys);
+        for (int i = 0; i < rows; i++) {
+            double expected = e.eval(xs[i], ys[i]);
+            assertEquals(expected, out[0][i], 0);
+            assertEquals(expected, fout[0][i], 0.0001);
+        }
+    }
+
+    @Test
+    void testGuardedFunction() throws Exception {
+        context.defineFunc("root", ExprFunction.noMutation(args -> {
+            if (args[0] < 0)
+                throw new EvalException("neg");
+            return Math.sqrt(args[0]);
+        }));
+        Expression e = CtxExpression.parse("x >= 0 ? root(x) : 0").toContextless(context, "x");
+        ExpressionSet set = ExpressionSet.of(e);
+
+        int rows = 2000;
+        double[] xs = new double[rows];
+        float[] fxs = new float[rows];
+        for (int i = 0; i < rows; i++)
+            xs[i] = fxs[i] = i % 7 - 3;
+
+        double[][] out = new double[1][rows];
+        float[][] fout = new float[1][rows];
+        set.evalBatch(out, xs);
+        set.evalBatch(fout, fxs);
+        double sum = 0;
+        for (int i = 0; i < rows; i++) {
+            double expected = e.eval(xs[i]);
+            sum += expected;
+            assertEquals(expected, out[0][i], 0);
+            assertEquals(expected, fout[0][i], 0.0001);
+        }
+        assertEquals(0, set.eval(-1)[0], 0);
+        assertEquals(2, e.sum(2, new double[] {-1, 4}), 0);
+        assertEquals(sum, e.sum(rows, xs), 1e-9);
+
+        // Failures in selected operands still fail
+        Expression f = CtxExpression.parse("x >= -1 ? root(x) : 0").toContextless(context, "x");
+        assertThrows(EvalException.class, () -> ExpressionSet.of(f).evalBatch(new double[1][rows], xs));
+    }
+
+    @Test
+    void testGuardedGrid() throws Exception {
+        context.defineFunc("root", ExprFunction.noMutation(args -> {
+            if (args[0] < 0)
+                throw new EvalException("neg");
+            return Math.sqrt(args[0]);
+        }));
+        assertArrayEquals(new double[] {0, 2}, CtxExpression.parse("x >= 0 ? root(x) : 0").toContextless(context, "x").grid(new double[] {-1, 4}), 0);
+
+        // Failures in the hoisted outer dimensions and in the inner dimension
+        Expression e = CtxExpression.parse("x >= 0 ? root(x) * (y >= 0 ? root(y) : 1) : y").toContextless(context, "x", "y");
+        double[] xs = {-4, 4, -1, 9};
+        double[] ys = new double[600];
+        for (int i = 0; i < ys.length; i++)
+            ys[i] = i % 5 - 2;
+
+        double[] out = e.grid(xs, ys);
+        for (int i = 0; i < xs.length; i++) {
+            for (int j = 0; j < ys.length; j++)
+                assertEquals(e.eval(xs[i], ys[j]), out[i * ys.length + j], 0);
+        }
+
+        Expression f = CtxExpression.parse("x >= -1 ? root(x) : 0").toContextless(context, "x");
+        assertThrows(EvalException.class, () -> f.grid(new double[] {-1, 4}));
+    }
+
+    @Test
+    void testInterval() throws Exception {
+        Expression e = CtxExpression.parse("x < 1 ? 0 : x").toContextless(context, "x");
+        assertEquals(Interval.ZERO, e.evalInterval(new Interval(-2, 0.5)));
+        assertEquals(new Interval(2, 3), e.evalInterval(new Interval(2, 3)));
+        assertEquals(new Interval(0, 3), e.evalInterval(new Interval(0, 3)));
+    }
+}
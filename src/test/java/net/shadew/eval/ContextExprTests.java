@@ -58,6 +58,11 @@ public class ContextExprTests {
         assertEquals(621, eval("621"), 0.00001);
     }
 
+    @Test
+    void testFraction() throws Exception {
+        assertEquals(3.25, eval("3.25"), 0.00001);
+    }
+
     @Test
     void testExp() throws Exception {
         assertEquals(621e-5, eval("621e-5"), 0.00001);
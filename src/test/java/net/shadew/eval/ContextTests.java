@@ -0,0 +1,61 @@
+package net.shadew.eval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContextTests {
+    @Test
+    void testChild() throws Exception {
+        ExprContext parent = new ExprContext().defineVar("a", 1).defineVar("b", 2);
+        ExprContext child = parent.child().defineVar("b", 3).defineVar("c", 4);
+
+        assertSame(parent, child.parent());
+        assertEquals(1, child.get("a"), 0);
+        assertEquals(3, child.get("b"), 0);
+        assertEquals(2, parent.get("b"), 0);
+        assertFalse(parent.hasVar("c"));
+
+        child.removeVar("b");
+        assertEquals(2, child.get("b"), 0);
+        child.removeVar("a");
+        assertEquals(1, child.get("a"), 0);
+
+        parent.defineVar("d", 5);
+        assertEquals(5, child.get("d"), 0);
+        assertThrows(EvalException.class, () -> child.get("e"));
+    }
+
+    @Test
+    void testBasicMath() throws Exception {
+        ExprContext basic = ExprContext.basicMath();
+        assertSame(basic, ExprContext.basicMath());
+        assertTrue(basic.isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> basic.defineVar("x", 3));
+        assertThrows(UnsupportedOperationException.class, () -> basic.removeFunc("sin"));
+
+        ExprContext child = basic.child().defineFunc("twice", args -> args[0] * 2).defineVar("PI", 3);
+        assertFalse(child.isFrozen());
+        assertEquals(Math.sin(2) * 2 + 3, CtxExpression.parse("twice(sin(x)) + PI").toContextless(child, "x").eval(2), 0);
+        assertEquals(Math.PI, basic.get("PI"), 0);
+        assertEquals(Math.sqrt(2), child.call("sqrt", 2), 0);
+    }
+
+    @Test
+    void testVersions() throws Exception {
+        ExprContext parent = new ExprContext().defineVar("a", 1);
+        ExprContext child = parent.child().defineVar("b", 2);
+        ExpressionCache cache = child.cache(16);
+
+        Expression e = cache.get("a + b + x", "x");
+        assertSame(e, cache.get("a + b + x", "x"));
+
+        long version = child.version();
+        parent.defineVar("unrelated", 3);
+        assertTrue(child.version() > version);
+        assertSame(e, cache.get("a + b + x", "x"));
+
+        parent.defineVar("a", 10);
+        assertEquals(13, cache.get("a + b + x", "x").eval(1), 0);
+    }
+}
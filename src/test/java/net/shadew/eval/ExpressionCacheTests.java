@@ -0,0 +1,112 @@
+package net.shadew.eval;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionCacheTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    @Test
+    void testVersion() {
+        long v = context.version();
+        context.defineVar("a", 3);
+        assertTrue(context.version() > v);
+
+        v = context.version();
+        context.removeVar("a");
+        assertFalse(context.hasVar("a"));
+        assertTrue(context.version() > v);
+
+        v = context.version();
+        context.removeVar("a");
+        context.removeFunc("nonexistent");
+        assertEquals(v, context.version());
+    }
+
+    @Test
+    void testReuse() throws Exception {
+        ExpressionCache cache = context.cache(16);
+        Expression e = cache.get("a * x + sin(x)", "x");
+        assertEquals("No such variable: 'a'", assertThrows(EvalException.class, () -> e.eval(1)).getMessage());
+
+        context.defineVar("a", 2);
+        Expression e2 = cache.get("a * x + sin(x)", "x");
+        assertNotSame(e, e2);
+        assertEquals(2 + Math.sin(1), e2.eval(1), 0);
+        assertSame(e2, cache.get("a * x + sin(x)", "x"));
+        assertSame(e2, cache.get("a*x+sin(x)", "x"));
+
+        // Unrelated modifications don't invalidate
+        context.defineVar("b", 5);
+        context.defineFunc("foo", args -> 1);
+        assertSame(e2, cache.get("a * x + sin(x)", "x"));
+
+        context.defineFunc("sin", ExprFunction.noMutation(args -> 0));
+        Expression e3 = cache.get("a * x + sin(x)", "x");
+        assertEquals(2, e3.eval(1), 0);
+
+        context.defineVar("a", 4);
+        assertEquals(4, cache.get("a * x + sin(x)", "x").eval(1), 0);
+
+        assertEquals(4, cache.misses());
+        assertEquals(3, cache.hits());
+    }
+
+    @Test
+    void testParamsShadow() throws Exception {
+        ExpressionCache cache = context.cache(16);
+        Expression e = cache.get("E * 2", "E");
+        Expression constant = cache.get("E * 2");
+        assertNotSame(e, constant);
+        assertEquals(6, e.eval(3), 0);
+        assertEquals(Math.E * 2, constant.eval(), 0);
+
+        context.defineVar("E", 1);
+        assertSame(e, cache.get("E * 2", "E"));
+        assertEquals(2, cache.get("E * 2").eval(), 0);
+    }
+
+    @Test
+    void testForeignExpression() throws Exception {
+        ExpressionCache cache = context.cache(16);
+        CtxExpression foreign = new CtxExpression() {
+            @Override
+            public double eval(ExprContext ctx) throws EvalException {
+                return ctx.get("PI");
+            }
+
+            @Override
+            public Expression toContextless(ExprContext context, String... paramNames) {
+                return new EConstant(context.hasVar("PI") ? 1 : 0);
+            }
+        };
+
+        Expression e = cache.get(foreign);
+        assertSame(e, cache.get(foreign));
+        context.defineVar("unrelated", 1);
+        assertNotSame(e, cache.get(foreign));
+    }
+
+    @Test
+    void testEviction() throws Exception {
+        ExpressionCache cache = context.cache(2);
+        Expression a = cache.get("x + 1", "x");
+        cache.get("x + 2", "x");
+        cache.get("x + 1", "x");
+        cache.get("x + 3", "x");
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("x + 1", "x"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> context.cache(0));
+    }
+}
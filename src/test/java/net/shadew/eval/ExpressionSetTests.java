@@ -0,0 +1,123 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionSetTests {
+    static final String[] FORMULAS = {
+        "x * y + 3",
+        "sin(x) * cos(y) + sin(x)",
+        "(x - y) ^ 2 / (1 + |x|)",
+        "max(x, y, 2) % 3 - -x",
+        "sqrt(x * x + y * y) + x * y + 3"
+    };
+
+    ExprContext context;
+    CtxExpression[] exprs;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        context = new ExprContext();
+        context.addBasicMath();
+        exprs = new CtxExpression[FORMULAS.length];
+        for (int i = 0; i < FORMULAS.length; i++)
+            exprs[i] = CtxExpression.parse(FORMULAS[i]);
+    }
+
+    @Test
+    void testEval() throws Exception {
+        ExpressionSet set = ExpressionSet.compile(context, new String[] {"x", "y"}, exprs);
+        assertEquals(FORMULAS.length, set.size());
+
+        double[] out = set.eval(1.5, -2);
+        for (int i = 0; i < FORMULAS.length; i++) {
+            double expected = exprs[i].toContextless(context, "x", "y").eval(1.5, -2);
+            assertEquals(expected, out[i], 0);
+        }
+    }
+
+    @Test
+    void testBatch() throws Exception {
+        ExpressionSet set = ExpressionSet.compile(context, new String[] {"x", "y"}, exprs);
+
+        int rows = 1000;
+        double[] xs = new double[rows], ys = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = i * 0.01 - 3;
+            ys[i] = 5 - i * 0.003;
+        }
+
+        double[][] out = new double[FORMULAS.length][rows];
+        set.evalBatch(out, xs, ys);
+
+        for (int i = 0; i < rows; i++) {
+            double[] expected = set.eval(xs[i], ys[i]);
+            for (int e = 0; e < FORMULAS.length; e++)
+                assertEquals(expected[e], out[e][i], 0);
+        }
+    }
+
+    @Test
+    void testFloatBatch() throws Exception {
+        ExpressionSet set = ExpressionSet.compile(context, new String[] {"x", "y"}, exprs);
+
+        int rows = 1000;
+        float[] xs = new float[rows], ys = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = i * 0.01f - 3;
+            ys[i] = 5 - i * 0.003f;
+        }
+
+        float[][] out = new float[FORMULAS.length][rows];
+        set.evalBatch(out, xs, ys);
+
+        for (int i = 0; i < rows; i++) {
+            double[] expected = set.eval(xs[i], ys[i]);
+            for (int e = 0; e < FORMULAS.length; e++)
+                assertEquals(expected[e], out[e][i], Math.abs(expected[e]) * 1e-5 + 1e-5);
+        }
+
+        // A single expression can be evaluated in batches by itself
+        Expression first = exprs[0].toContextless(context, "x", "y");
+        float[] single = new float[rows];
+        first.evalBatch(single, xs, ys);
+        assertArrayEquals(out[0], single, 0);
+        double[] doubles = new double[2];
+        first.evalBatch(doubles, new double[] {1, 2}, new double[] {3, 4});
+        assertEquals(first.eval(2, 4), doubles[1], 0);
+    }
+
+    @Test
+    void testSharedCalls() throws Exception {
+        AtomicInteger pure = new AtomicInteger();
+        AtomicInteger impure = new AtomicInteger();
+        context.defineFunc("pure", ExprFunction.noMutation(ExprFunction.one(a -> pure.incrementAndGet())));
+        context.defineFunc("impure", ExprFunction.one(a -> impure.incrementAndGet()));
+
+        ExpressionSet set = ExpressionSet.compile(
+            context, new String[] {"x"},
+            CtxExpression.parse("pure(x) + impure(x)"),
+            CtxExpression.parse("pure(x) * impure(x)")
+        );
+        set.eval(1);
+        assertEquals(1, pure.get());
+        assertEquals(2, impure.get());
+    }
+
+    @Test
+    void testMissingParam() throws Exception {
+        ExpressionSet set = ExpressionSet.compile(context, new String[] {"x", "y"}, exprs);
+        assertThrows(EvalException.class, () -> set.eval(1));
+        assertThrows(EvalException.class, () -> set.evalBatch(new double[FORMULAS.length][3], new double[3]));
+    }
+
+    @Test
+    void testError() throws Exception {
+        ExpressionSet set = ExpressionSet.compile(context, new String[] {"x"}, CtxExpression.parse("x + unknown"));
+        assertThrows(EvalException.class, () -> set.eval(1));
+    }
+}
@@ -0,0 +1,85 @@
+package net.shadew.eval;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastMathTests {
+    static final double[] ERRORS = {1e-3, 1e-6, 1e-9, 1e-12, 1e-15};
+
+    private static void assertRelError(ExprFunction fn, ExprFunction exact, double err, double x, double y) throws Exception {
+        double e = exact.compute(x, y);
+        double a = fn.compute(x, y);
+        if (Double.isNaN(e) || Double.isInfinite(e))
+            assertEquals(e, a);
+        else
+            assertTrue(Math.abs(a - e) <= Math.abs(e) * err, "f(" + x + ", " + y + ") = " + a + ", expected " + e);
+    }
+
+    private static void assertAbsError(ExprFunction fn, ExprFunction exact, double err, double x) throws Exception {
+        double e = exact.compute(x);
+        double a = fn.compute(x);
+        assertTrue(Math.abs(a - e) <= err, "f(" + x + ") = " + a + ", expected " + e);
+    }
+
+    @Test
+    void testErrorBounds() throws Exception {
+        ExprContext exact = new ExprContext().addBasicMath();
+        Random rng = new Random(621);
+
+        for (double err : ERRORS) {
+            ExprContext fast = new ExprContext().addFastMath(err);
+            for (int i = 0; i < 20000; i++) {
+                double x = (rng.nextDouble() - 0.5) * 1400;
+                double p = Math.scalb(rng.nextDouble() + 0.5, rng.nextInt(2000) - 1000);
+                double y = (rng.nextDouble() - 0.5) * 20;
+                double small = rng.nextDouble() * 4 - 2;
+                for (String fn : new String[] {"exp", "cosh"})
+                    assertRelError(fast.func(fn), exact.func(fn), err, x, 0);
+                for (String fn : new String[] {"ln", "log2", "log10"}) {
+                    assertRelError(fast.func(fn), exact.func(fn), err, p, 0);
+                    assertRelError(fast.func(fn), exact.func(fn), err, 1 + small / 1000, 0);
+                }
+                assertRelError(fast.func("log"), exact.func("log"), err, p, y);
+                assertRelError(fast.func("rt"), exact.func("rt"), err, p, y);
+                assertAbsError(fast.func("sin"), exact.func("sin"), err, x);
+                assertAbsError(fast.func("cos"), exact.func("cos"), err, x);
+                assertAbsError(fast.func("sin"), exact.func("sin"), err, small);
+                assertAbsError(fast.func("cos"), exact.func("cos"), err, small);
+            }
+        }
+    }
+
+    @Test
+    void testSpecialValues() throws Exception {
+        ExprContext fast = new ExprContext().addFastMath(1e-6);
+        assertEquals(0, fast.call("exp", Double.NEGATIVE_INFINITY));
+        assertEquals(Double.POSITIVE_INFINITY, fast.call("exp", 1000));
+        assertEquals(Double.NEGATIVE_INFINITY, fast.call("ln", 0));
+        assertEquals(Double.NaN, fast.call("ln", -1));
+        assertEquals(Double.NaN, fast.call("sin", Double.POSITIVE_INFINITY));
+        assertEquals(0, fast.call("ln", 1));
+    }
+
+    @Test
+    void testIntervals() throws Exception {
+        ExprContext fast = new ExprContext().addFastMath(1e-4);
+        Expression e = CtxExpression.parse("exp(x) + sin(x)").toContextless(fast, "x");
+        Interval range = e.evalInterval(new Interval(-1, 1));
+        for (double x = -1; x <= 1; x += 1 / 64d)
+            assertTrue(range.contains(e.eval(x)));
+    }
+
+    @Test
+    void testFolds() throws Exception {
+        ExprContext fast = new ExprContext().addFastMath(1e-6);
+        assertInstanceOf(EConstant.class, CtxExpression.parse("exp(2)").toContextless(fast));
+    }
+
+    @Test
+    void testInvalidError() {
+        assertThrows(IllegalArgumentException.class, () -> new ExprContext().addFastMath(0));
+    }
+}
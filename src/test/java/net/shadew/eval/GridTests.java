@@ -0,0 +1,86 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private static double[] axis(int n, double lo, double hi) {
+        double[] a = new double[n];
+        for (int i = 0; i < n; i++)
+            a[i] = lo + (hi - lo) * i / Math.max(1, n - 1);
+        return a;
+    }
+
+    private void assertGrid(String str, double[]... axes) throws Exception {
+        String[] names = {"x", "y", "z"};
+        String[] params = new String[axes.length];
+        System.arraycopy(names, 0, params, 0, axes.length);
+        Expression e = CtxExpression.parse(str).toContextless(context, params);
+
+        double[] out = e.grid(axes);
+        int[] index = new int[axes.length];
+        double[] point = new double[axes.length];
+        for (int i = 0; i < out.length; i++) {
+            for (int p = 0; p < axes.length; p++)
+                point[p] = axes[p][index[p]];
+            assertEquals(e.eval(point), out[i], 0, str + " at " + i);
+
+            for (int p = axes.length - 1; p >= 0 && ++index[p] == axes[p].length; p--)
+                index[p] = 0;
+        }
+    }
+
+    @Test
+    void testGrid() throws Exception {
+        assertGrid("sin(x) * 3 + x ^ 2", axis(1000, -3, 3));
+        assertGrid("sin(x) * cos(y) + x * y", axis(17, -3, 3), axis(300, 0, 1));
+        assertGrid("sqrt(x * x + y * y) + z - max(x, 2) * y", axis(5, -3, 3), axis(7, 0, 1), axis(600, -1, 1));
+        assertGrid("x < 0 ? sin(y) : y * x", axis(11, -3, 3), axis(9, -2, 2));
+        assertGrid("3 + PI", axis(3, 0, 1), axis(300, 0, 1));
+        assertGrid("x", axis(5, 0, 1), axis(3, 0, 1), axis(2, 0, 1));
+        assertGrid("y", axis(5, 0, 1), axis(3, 0, 1), axis(2, 0, 1));
+    }
+
+    @Test
+    void testHoisting() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("slow", ExprFunction.noMutation(args -> {
+            calls.incrementAndGet();
+            return Math.exp(args[0]);
+        }));
+
+        Expression e = CtxExpression.parse("slow(x) * y + slow(x + 1)").toContextless(context, "x", "y");
+        double[] out = e.grid(axis(10, 0, 1), axis(1000, 0, 1));
+        assertEquals(10000, out.length);
+        assertEquals(20, calls.get());
+    }
+
+    @Test
+    void testMutating() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet());
+
+        Expression e = CtxExpression.parse("count() + x").toContextless(context, "x", "y");
+        e.grid(axis(10, 0, 1), axis(30, 0, 1));
+        assertEquals(300, calls.get());
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new EConstant(3).grid(new double[3], new double[][] {axis(4, 0, 1)}));
+        assertThrows(EvalException.class, () -> new EParam(2).grid(axis(4, 0, 1), axis(4, 0, 1)));
+        assertThrows(EvalException.class, () -> new EError("Failure").grid(axis(4, 0, 1)));
+    }
+}
@@ -0,0 +1,99 @@
+package net.shadew.eval;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HornerTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+        context.defineVar("a", 3);
+        context.defineVar("b", -2);
+    }
+
+    private Expression parse(String str) throws Exception {
+        return CtxExpression.parse(str).toContextless(context, "x", "y");
+    }
+
+    private void assertSameValues(Expression expected, Expression actual) throws Exception {
+        for (double x = -3; x <= 3; x += 0.125) {
+            double e = expected.eval(x, 0.5);
+            assertEquals(e, actual.eval(x, 0.5), Math.abs(e) * 1e-12 + 1e-12);
+        }
+    }
+
+    @Test
+    void testPolynomial() throws Exception {
+        Expression e = parse("a*x^4 + b*x^3 - x^2 / 2 + 7*x - 1");
+        Expression h = e.toHornerForm(false);
+        assertInstanceOf(EPolynomial.class, h);
+        assertArrayEquals(new double[] {-1, 7, -0.5, -2, 3}, ((EPolynomial) h).coeffs(), 0);
+        assertSameValues(e, h);
+        assertSameValues(e, e.toHornerForm(true));
+    }
+
+    @Test
+    void testKeepsFactors() throws Exception {
+        Expression e = parse("(x + 1) * (x - 1) ^ 2 - -x");
+        assertSame(e, e.toHornerForm(false));
+
+        // Expanding would cancel catastrophically near 1, even giving the wrong sign
+        Expression pow = parse("(x - 1) ^ 8");
+        assertSame(pow, pow.toHornerForm(true));
+        double v = pow.toHornerForm(true).eval(1.001, 0);
+        assertTrue(v > 0 && Math.abs(v - 1e-24) < 1e-36, "got " + v);
+
+        // Monomials still distribute, and sums within factors are rewritten
+        assertInstanceOf(EPolynomial.class, parse("x * (x^2 + 1) * 3").toHornerForm(false));
+        Expression f = parse("(x^3 + 2*x + 1) * (x - 3)");
+        Expression h = f.toHornerForm(false);
+        assertInstanceOf(EPolynomial.class, ((EBinary) h).el());
+        assertSameValues(f, h);
+    }
+
+    @Test
+    void testDivision() throws Exception {
+        // Dividing by zero, or by a number so small its reciprocal overflows, is kept as a division
+        for (String divisor : new String[] {"0", "-0", "1e-320"}) {
+            Expression e = parse("(x^2 + 1) / " + divisor);
+            Expression h = e.toHornerForm(false);
+            assertInstanceOf(EBinary.class, h);
+            assertEquals(e.eval(2, 0), h.eval(2, 0), 0);
+        }
+        assertInstanceOf(EPolynomial.class, parse("(x^2 + 1) / 4").toHornerForm(false));
+    }
+
+    @Test
+    void testNested() throws Exception {
+        Expression e = parse("sin(x^2 + 1) * y + x * y");
+        Expression h = e.toHornerForm(false);
+        assertSameValues(e, h);
+
+        EFunction sin = (EFunction) ((EBinary) ((EBinary) h).el()).el();
+        assertInstanceOf(EPolynomial.class, sin.exprs()[0]);
+    }
+
+    @Test
+    void testUnchanged() throws Exception {
+        Expression e = parse("x * y + 3 * x");
+        assertSame(e, e.toHornerForm(false));
+
+        Expression f = parse("x ^ 2.5 + x");
+        assertSame(f, f.toHornerForm(false));
+    }
+
+    @Test
+    void testBatch() throws Exception {
+        Expression h = parse("x^3 - 2*x + 1").toHornerForm(true);
+        double[] xs = {-2, -1, 0, 0.5, 4};
+        double[][] out = new double[1][xs.length];
+        ExpressionSet.of(h).evalBatch(out, xs);
+        for (int i = 0; i < xs.length; i++)
+            assertEquals(h.eval(xs[i]), out[0][i], 0);
+    }
+}
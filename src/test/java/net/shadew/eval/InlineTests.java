@@ -0,0 +1,180 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InlineTests {
+    private ExprContext context;
+
+    @BeforeEach
+    void setup() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    @Test
+    void testInline() throws Exception {
+        context.defineFunc("f", "x^2 + 1", "x");
+        context.defineFunc("dist", "sqrt(x*x + y*y)", "x", "y");
+
+        Expression e = CtxExpression.parse("f(y) * 2").toContextless(context, "y");
+        assertEquals(CtxExpression.parse("(y^2 + 1) * 2").toContextless(context, "y"), e);
+        assertEquals(20, e.eval(3), 0);
+        assertEquals(new EConstant(10), CtxExpression.parse("f(3)").toContextless(context));
+        assertEquals(5, CtxExpression.parse("dist(a, f(0) * 4)").toContextless(context, "a").eval(3), 0);
+        assertEquals(Math.sqrt(2), CtxExpression.parse("dist(1, 1)").toContextless(context).eval(), 0);
+
+        // Evaluation with the context gives the same results
+        assertEquals(11, CtxExpression.parse("f(2) + 6").eval(context), 0);
+        assertEquals(10, context.call("f", 3), 0);
+        assertTrue(context.func("f").computeInterval(Interval.of(-2, 1)).contains(5));
+    }
+
+    @Test
+    void testScope() throws Exception {
+        context.defineVar("x", 100).defineVar("scale", 2);
+        context.defineFunc("g", "(x + y) * scale", "y");
+        context.defineFunc("h", "g(y) + k(y)", "y");
+
+        // The parameter x of the calling expression is not visible in the body, the variable x is
+        assertEquals(202, CtxExpression.parse("g(x)").toContextless(context, "x").eval(1), 0);
+
+        // Functions called by the body are looked up upon conversion, so they can be defined later
+        assertInstanceOf(EError.class, CtxExpression.parse("h(1)").toContextless(context));
+        context.defineFunc("k", "-y", "y");
+        assertEquals(201, CtxExpression.parse("h(1)").toContextless(context).eval(), 0);
+
+        // Variables of the calling context are used
+        ExprContext child = context.child().defineVar("scale", 3);
+        assertEquals(303, CtxExpression.parse("g(1)").toContextless(child).eval(), 0);
+        assertEquals(303, CtxExpression.parse("g(1)").eval(child), 0);
+        assertEquals(202, context.call("g", 1), 0);
+    }
+
+    @Test
+    void testRecursion() throws Exception {
+        context.defineFunc("fact", "n <= 1 ? 1 : n * fact(n - 1)", "n");
+        context.defineFunc("even", "n == 0 || odd(n - 1)", "n");
+        context.defineFunc("odd", "n != 0 && even(n - 1)", "n");
+        context.defineFunc("safe", "0 ? safe(n) : n", "n");
+
+        // Only the recursive call becomes an error, so it fails once it is reached
+        Expression fact = CtxExpression.parse("fact(x)").toContextless(context, "x");
+        assertEquals(1, fact.eval(1), 0);
+        EvalException exc = assertThrows(EvalException.class, () -> fact.eval(3));
+        assertEquals("Function 'fact' is recursive", exc.getMessage());
+        assertEquals(1, CtxExpression.parse("even(x)").toContextless(context, "x").eval(0), 0);
+        assertInstanceOf(EError.class, CtxExpression.parse("even(2)").toContextless(context));
+        exc = assertThrows(EvalException.class, () -> CtxExpression.parse("fact(3)").eval(context));
+        assertTrue(exc.getMessage().contains("recursive"), exc.getMessage());
+        assertThrows(EvalException.class, () -> context.call("odd", 3));
+
+        // A recursive call that is folded away is fine
+        assertEquals(new EParam(0), CtxExpression.parse("safe(x)").toContextless(context, "x"));
+    }
+
+    @Test
+    void testMutatingArguments() throws Exception {
+        double[] counter = {0};
+        context.defineFunc("next", args -> ++counter[0]);
+        context.defineFunc("twice", "x + x", "x");
+        context.defineFunc("first", "a", "a", "b");
+
+        Expression e = CtxExpression.parse("twice(next())").toContextless(context);
+        assertEquals(2, e.eval(), 0);
+        assertEquals(4, e.eval(), 0);
+
+        // The unused argument is still evaluated
+        assertEquals(3, CtxExpression.parse("first(3, next())").toContextless(context).eval(), 0);
+        assertEquals(3, counter[0], 0);
+
+        // Pure arguments are inserted, even when used more than once
+        assertEquals(new EConstant(8), CtxExpression.parse("twice(sqrt(16))").toContextless(context));
+    }
+
+    @Test
+    void testNesting() throws Exception {
+        context.defineFunc("f", "x * x * 0.25 + 0.5", "x");
+        context.defineFunc("g", "x + 1", "x");
+
+        // Arguments used more than once are passed to a call, so deep nesting stays linear in size
+        int depth = 200;
+        String formula = "f(".repeat(depth) + "y" + ")".repeat(depth);
+        Expression e = CtxExpression.parse(formula).toContextless(context, "y");
+        double expected = 0.3;
+        for (int i = 0; i < depth; i++)
+            expected = expected * expected * 0.25 + 0.5;
+        assertEquals(expected, e.eval(0.3), 0);
+        assertEquals(expected, ExpressionSet.of(e).eval(0.3)[0], 0);
+        assertTrue(e.estimateCost() < depth * 10, "cost: " + e.estimateCost());
+
+        // Arguments used once are still inserted
+        Expression inserted = CtxExpression.parse("g(g(g(y)))").toContextless(context, "y");
+        assertInstanceOf(EBinary.class, inserted);
+        assertEquals(5, inserted.eval(2), 0);
+        assertInstanceOf(EFunction.class, CtxExpression.parse("f(y + 1)").toContextless(context, "y"));
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        context.defineFunc("f", "x + 1", "x");
+
+        assertEquals(new EError("Function 'f': Expected 1 argument(s), got 2"), CtxExpression.parse("f(1, 2)").toContextless(context));
+        assertThrows(EvalException.class, () -> context.call("f", 1, 2));
+        assertEquals(new EError("No such variable: 'y'"), CtxExpression.parse("f(y)").toContextless(context));
+        assertThrows(IllegalArgumentException.class, () -> context.defineFunc("g", "x + x", "x", "x"));
+        assertThrows(ParseException.class, () -> context.defineFunc("g", "x +", "x"));
+        assertThrows(UnsupportedOperationException.class, () -> ExprContext.basicMath().defineFunc("g", "x", "x"));
+    }
+
+    @Test
+    void testCache() throws Exception {
+        context.defineFunc("f", "g(x) * a", "x");
+        context.defineFunc("g", "x + 1", "x");
+        context.defineVar("a", 2);
+        ExpressionCache cache = context.cache(16);
+
+        Expression e = cache.get("f(x)", "x");
+        assertEquals(6, e.eval(2), 0);
+        assertSame(e, cache.get("f(x)", "x"));
+
+        context.defineFunc("g", "x - 1", "x");
+        assertEquals(2, cache.get("f(x)", "x").eval(2), 0);
+        context.defineVar("a", 3);
+        assertEquals(3, cache.get("f(x)", "x").eval(2), 0);
+    }
+
+    @Test
+    void testConvertedOnce() throws Exception {
+        AtomicInteger resolved = new AtomicInteger();
+        context.resolver(var -> {
+            resolved.incrementAndGet();
+            return 2;
+        }, false);
+        context.defineFunc("f", "x * a + 1", "x");
+
+        // The body is converted once, which reads the variable, and then reused until the context changes
+        for (int i = 0; i < 10; i++)
+            assertEquals(i * 2 + 1, context.call("f", i), 0);
+        assertEquals(5, context.func("f").compute(2), 0);
+        assertEquals(1, resolved.get());
+
+        context.defineVar("a", 3);
+        assertEquals(7, context.call("f", 2), 0);
+        assertEquals(7, context.func("f").compute(2), 0);
+    }
+
+    @Test
+    void testCost() throws Exception {
+        context.defineFunc("f", "sin(x) + cos(x)", "x");
+
+        // The inlined call costs the same as the body written out
+        double inlined = CtxExpression.parse("f(y) * 2").toContextless(context, "y").estimateCost();
+        assertEquals(CtxExpression.parse("(sin(y) + cos(y)) * 2").toContextless(context, "y").estimateCost(), inlined, 0);
+        assertEquals(CtxExpression.parse("sin(x) + cos(x)").toContextless(context, "x").estimateCost(), context.func("f").cost(), 0);
+    }
+}
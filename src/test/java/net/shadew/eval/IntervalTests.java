@@ -0,0 +1,110 @@
+package net.shadew.eval;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntervalTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private Interval eval(String str, Interval x) throws Exception {
+        return CtxExpression.parse(str).evalInterval(context, new String[] {"x"}, x);
+    }
+
+    private void assertEncloses(String str, double lo, double hi) throws Exception {
+        Expression e = CtxExpression.parse(str).toContextless(context, "x");
+        Interval range = e.evalInterval(new Interval(lo, hi));
+
+        Random rng = new Random(621);
+        for (int i = 0; i <= 1000; i++) {
+            double x = i == 1000 ? hi : lo + (hi - lo) * rng.nextDouble();
+            double v = e.eval(x);
+            if (!Double.isNaN(v))
+                assertTrue(range.contains(v), str + " = " + v + " at x = " + x + " not within " + range);
+        }
+    }
+
+    @Test
+    void testConstant() throws Exception {
+        Interval i = eval("3", Interval.ZERO);
+        assertEquals(3, i.lo());
+        assertEquals(3, i.hi());
+    }
+
+    @Test
+    void testExactRounding() throws Exception {
+        Interval i = eval("x + 1", new Interval(1, 2));
+        assertEquals(2, i.lo());
+        assertEquals(3, i.hi());
+
+        Interval j = eval("x + 0.1", new Interval(0.2, 0.2));
+        assertTrue(j.contains(0.2 + 0.1));
+        assertTrue(j.lo() < j.hi());
+    }
+
+    @Test
+    void testArithmetic() throws Exception {
+        assertEncloses("x * x - 3 * x + 1", -4, 5);
+        assertEncloses("(x - 1) / (x + 3)", 0, 2);
+        assertEncloses("x % 3", -7, 8);
+        assertEncloses("|x - 2| ^ 1.5", -1, 4);
+        assertEncloses("-x ^ 3", -2, 3);
+        assertEncloses("x ^ -2", 0.5, 3);
+    }
+
+    @Test
+    void testDivisionByZero() throws Exception {
+        assertEquals(Interval.ENTIRE, eval("1 / x", new Interval(-1, 1)));
+    }
+
+    @Test
+    void testEvenPower() throws Exception {
+        Interval i = eval("x ^ 2", new Interval(-2, 1));
+        assertEquals(0, i.lo());
+        assertTrue(i.hi() >= 4 && i.hi() < 4.001);
+    }
+
+    @Test
+    void testFunctions() throws Exception {
+        assertEncloses("sin(x) + cos(x)", -3, 4);
+        assertEncloses("tan(x)", -1, 1);
+        assertEncloses("exp(x) * ln(x)", 0.1, 10);
+        assertEncloses("sqrt(x) + cbrt(x) + log2(x) + log10(x)", 1, 100);
+        assertEncloses("cosh(x) + sinh(x) + tanh(x) + atan(x)", -3, 2);
+        assertEncloses("asin(x) + acos(x)", -1, 1);
+        assertEncloses("floor(x) + ceil(x) + round(x) + sign(x)", -2.5, 2.5);
+        assertEncloses("max(x, 1, -x) + min(x, 2) + avg(x, 3) + sum(x, x) + prod(x, x, 2)", -3, 3);
+        assertEncloses("rt(x, 3) + log(x, 2)", 2, 30);
+    }
+
+    @Test
+    void testSinRange() throws Exception {
+        Interval i = eval("sin(x)", new Interval(0, 3));
+        assertEquals(1, i.hi());
+        assertTrue(i.lo() <= 0 && i.lo() > -1e-15);
+    }
+
+    @Test
+    void testTanPole() throws Exception {
+        assertEquals(Interval.ENTIRE, eval("tan(x)", new Interval(1, 2)));
+    }
+
+    @Test
+    void testOutsideDomain() throws Exception {
+        assertEquals(Interval.ENTIRE, eval("sqrt(x)", new Interval(-1, 1)));
+    }
+
+    @Test
+    void testError() {
+        assertThrows(EvalException.class, () -> eval("unknown_variable", Interval.ZERO));
+    }
+}
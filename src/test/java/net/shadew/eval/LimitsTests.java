@@ -0,0 +1,93 @@
+package net.shadew.eval;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LimitsTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    @Test
+    void testLength() throws Exception {
+        ParseLimits limits = new ParseLimits(10, 100, 100);
+        assertDoesNotThrow(() -> CtxExpression.parse("x + y * 2", limits));
+
+        String huge = "x + ".repeat(250000) + "x";
+        ParseException exc = assertThrows(ParseException.class, () -> CtxExpression.parse(huge, limits));
+        assertTrue(exc.getMessage().length() < 200);
+    }
+
+    @Test
+    void testDepth() throws Exception {
+        ParseLimits limits = new ParseLimits(10000, 5, 10000);
+        assertDoesNotThrow(() -> CtxExpression.parse("((((x))))", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("(((((x)))))", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("sin(sin(sin(sin(sin(x)))))", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("------x", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("x ? x : x ? x : x ? x : x ? x : x ? x : x", limits));
+        assertDoesNotThrow(() -> CtxExpression.parse("x + x + x + x + x + x + x + x + x * x * x * x", limits));
+
+        // The default limits prevent stack overflows
+        assertThrows(ParseException.class, () -> CtxExpression.parse("(".repeat(100000) + "x" + ")".repeat(100000)));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("-".repeat(100000) + "x"));
+
+        // Sequences of powers, comparisons and logical operators nest to the left, unlike sums and products
+        assertDoesNotThrow(() -> CtxExpression.parse("x ^ x ^ x ^ x ^ x", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("x ^ x ^ x ^ x ^ x ^ x ^ x", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("x < x < x < x < x < x < x", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("x && x && x && x && x && x && x", limits));
+        ParseLimits wide = new ParseLimits(10_000_000, 64, 10_000_000);
+        for (String op : new String[] {" ^ ", " < ", " == ", " && ", " || "})
+            assertThrows(ParseException.class, () -> CtxExpression.parse("x" + (op + "x").repeat(100000), wide), op);
+    }
+
+    @Test
+    void testNodes() throws Exception {
+        ParseLimits limits = new ParseLimits(10000, 100, 6);
+        assertDoesNotThrow(() -> CtxExpression.parse("a + b + c + d + e", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parse("a + b + c + d + e + f", limits));
+        assertThrows(ParseException.class, () -> CtxExpression.parseAll(List.of("a", "a + b + c + d + e + f"), limits));
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(0, 1, 1));
+    }
+
+    @Test
+    void testCost() throws Exception {
+        assertEquals(0, CtxExpression.parse("x").toContextless(context, "x").estimateCost(), 0);
+        assertEquals(2, CtxExpression.parse("x * y + 1").toContextless(context, "x", "y").estimateCost(), 0);
+        assertEquals(ExprFunction.DEFAULT_COST + 4 + 1, CtxExpression.parse("sin(x) + sqrt(y)").toContextless(context, "x", "y").estimateCost(), 0);
+        assertEquals(40 + 1 + 1, CtxExpression.parse("x < 0 ? x ^ y : x + 1").toContextless(context, "x", "y").estimateCost(), 0);
+
+        context.defineFunc("slow", ExprFunction.withCost(args -> args[0], 1000));
+        CtxExpression slow = CtxExpression.parse("slow(x) * 2");
+        assertEquals(1001, slow.estimateCost(context), 0);
+        assertEquals(1001, slow.toContextless(context, "x").estimateCost(), 0);
+        assertEquals(1, slow.estimateCost(new ExprContext()), 0);
+
+        // Folded away constants are free once context-free
+        CtxExpression folded = CtxExpression.parse("sin(PI) * x");
+        assertEquals(ExprFunction.DEFAULT_COST + 1, folded.estimateCost(context), 0);
+        assertEquals(1, folded.toContextless(context, "x").estimateCost(), 0);
+    }
+
+    @Test
+    void testCostHints() throws Exception {
+        ExprFunction fn = ExprFunction.noMutation(args -> args[0] + 1);
+        ExprFunction costly = fn.withCost(50);
+        assertEquals(ExprFunction.DEFAULT_COST, fn.cost(), 0);
+        assertEquals(50, costly.cost(), 0);
+        assertTrue(ExprFunction.doesNotMutate(costly));
+        assertFalse(ExprFunction.doesNotMutate(ExprFunction.withCost(args -> 1, 3)));
+        assertEquals(3, costly.compute(2), 0);
+        assertEquals(50, costly.memoize(16).cost(), 0);
+        assertThrows(IllegalArgumentException.class, () -> fn.withCost(-1));
+    }
+}
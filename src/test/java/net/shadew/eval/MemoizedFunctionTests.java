@@ -0,0 +1,72 @@
+package net.shadew.eval;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoizedFunctionTests {
+    ExprContext context;
+    AtomicInteger calls;
+    MemoizedFunction square;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+        calls = new AtomicInteger();
+        square = ExprFunction.noMutation(ExprFunction.one(a -> {
+            calls.incrementAndGet();
+            return a * a;
+        })).memoize(100);
+        context.defineFunc("square", square);
+    }
+
+    @Test
+    void testRemembers() throws Exception {
+        Expression e = CtxExpression.parse("square(x) + square(x)").toContextless(context, "x");
+        assertEquals(18, e.eval(3), 0.00001);
+        assertEquals(18, e.eval(3), 0.00001);
+        assertEquals(1, calls.get());
+        assertEquals(3, square.hits());
+        assertEquals(1, square.misses());
+        assertEquals(0.75, square.hitRatio(), 0.00001);
+    }
+
+    @Test
+    void testBounded() throws Exception {
+        for (int i = 0; i < 1000; i++)
+            square.compute(i);
+        assertEquals(100, square.size());
+
+        // Most recent calls are remembered, the first ones are evicted
+        calls.set(0);
+        square.compute(999);
+        assertEquals(0, calls.get());
+        square.compute(0);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testDistinguishesArgs() throws Exception {
+        MemoizedFunction sub = ExprFunction.noMutation(ExprFunction.two((a, b) -> a - b)).memoize(10);
+        assertEquals(1, sub.compute(3, 2), 0.00001);
+        assertEquals(-1, sub.compute(2, 3), 0.00001);
+        assertEquals(0, sub.hits());
+    }
+
+    @Test
+    void testFolds() throws Exception {
+        Expression e = CtxExpression.parse("square(4)").toContextless(context);
+        assertEquals(1, calls.get());
+        assertEquals(16, e.eval(), 0.00001);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testRequiresNoMutation() {
+        assertThrows(IllegalArgumentException.class, () -> ExprFunction.memoize(args -> 0, 10));
+    }
+}
@@ -0,0 +1,72 @@
+package net.shadew.eval;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperatorTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    @Test
+    void testNodes() throws Exception {
+        assertEquals(new EParamConst(new EParam(0), new EConstant(2), BinaryOp.MUL), CtxExpression.parse("x * 2").toContextless(context, "x"));
+        assertEquals(new EConstParam(new EConstant(2), new EParam(0), BinaryOp.SUB), CtxExpression.parse("2 - x").toContextless(context, "x"));
+        assertEquals(new EParamParam(new EParam(0), new EParam(1), BinaryOp.LT), CtxExpression.parse("x < y").toContextless(context, "x", "y"));
+        assertInstanceOf(EAdd.class, CtxExpression.parse("sin(x) + y").toContextless(context, "x", "y"));
+        assertInstanceOf(EPow.class, CtxExpression.parse("x ^ sin(y)").toContextless(context, "x", "y"));
+        assertInstanceOf(ECompare.class, CtxExpression.parse("x >= sin(y)").toContextless(context, "x", "y"));
+        assertInstanceOf(ENeg.class, CtxExpression.parse("-x").toContextless(context, "x"));
+        assertInstanceOf(ENot.class, CtxExpression.parse("!x").toContextless(context, "x"));
+    }
+
+    @Test
+    void testAllOperators() throws Exception {
+        Expression sin = CtxExpression.parse("sin(x)").toContextless(context, "x");
+        Expression param = new EParam(0);
+        double[] values = {-2.5, -1, -0.0, 0, 0.5, 3, Double.NaN, Double.POSITIVE_INFINITY};
+
+        for (BinaryOp op : BinaryOp.values()) {
+            for (double c : values) {
+                Expression constant = new EConstant(c);
+                Expression[] shapes = {
+                    EBinary.of(param, constant, op),
+                    EBinary.of(constant, param, op),
+                    EBinary.of(param, param, op),
+                    EBinary.of(sin, constant, op)
+                };
+                for (double x : values) {
+                    double[] expected = {
+                        op.apply(x, c),
+                        op.apply(c, x),
+                        op.apply(x, x),
+                        op.apply(Math.sin(x), c)
+                    };
+                    for (int i = 0; i < shapes.length; i++)
+                        assertEquals(expected[i], shapes[i].eval(x), 0, op + " " + x + " " + c);
+                    assertEquals(op.apply(Interval.of(x), Interval.of(c)), shapes[0].evalInterval(Interval.of(x)));
+                }
+            }
+        }
+
+        for (UnaryOp op : UnaryOp.values()) {
+            for (double x : values) {
+                assertEquals(op.apply(x), EUnary.of(param, op).eval(x), 0, op + " " + x);
+                assertEquals(op.apply(Interval.of(x)), EUnary.of(param, op).evalInterval(Interval.of(x)));
+            }
+        }
+    }
+
+    @Test
+    void testMissingParams() {
+        Expression e = EBinary.of(new EParam(1), new EConstant(2), BinaryOp.ADD);
+        assertEquals("Parameter 1 not defined", assertThrows(EvalException.class, () -> e.eval(3)).getMessage());
+        assertThrows(EvalException.class, () -> EBinary.of(new EParam(0), new EParam(1), BinaryOp.MUL).eval(3));
+    }
+}
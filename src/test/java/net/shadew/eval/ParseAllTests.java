@@ -0,0 +1,59 @@
+package net.shadew.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParseAllTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    @Test
+    void testParseAll() throws Exception {
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            sources.add("sin(x) * " + (i % 10) + " + sqrt(x * x + y * y) - " + i + " + (x > y ? x : y)");
+
+        List<CtxExpression> parsed = CtxExpression.parseAll(sources);
+        assertEquals(sources.size(), parsed.size());
+        for (int i = 0; i < sources.size(); i++) {
+            assertEquals(CtxExpression.parse(sources.get(i)), parsed.get(i));
+
+            Expression e = parsed.get(i).toContextless(context, "x", "y");
+            assertEquals(CtxExpression.parse(sources.get(i)).toContextless(context, "x", "y").eval(1.5, -2), e.eval(1.5, -2), 0);
+        }
+    }
+
+    @Test
+    void testSharing() throws Exception {
+        List<CtxExpression> parsed = CtxExpression.parseAll(List.of(
+            "sqrt(x * x + y * y) + 1",
+            "sqrt(x * x + y * y) * 2",
+            "x * x + y * y"
+        ));
+
+        ECFunction sqrt1 = (ECFunction) ((ECBinary) parsed.get(0)).el();
+        ECFunction sqrt2 = (ECFunction) ((ECBinary) parsed.get(1)).el();
+        assertSame(sqrt1, sqrt2);
+        assertSame(sqrt1.exprs()[0], parsed.get(2));
+
+        ECBinary square = (ECBinary) ((ECBinary) parsed.get(2)).el();
+        assertSame(square.el(), square.er());
+    }
+
+    @Test
+    void testErrors() {
+        ParseException exc = assertThrows(ParseException.class, () -> CtxExpression.parseAll(List.of("x + 1", "x +", "y *", "2")));
+        assertEquals(assertThrows(ParseException.class, () -> CtxExpression.parse("x +")).getMessage(), exc.getMessage());
+        assertDoesNotThrow(() -> CtxExpression.parse("x + 1"));
+    }
+}
@@ -0,0 +1,123 @@
+package net.shadew.eval;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RankingTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private static int[] expectedTop(Expression e, int k, double[]... columns) throws Exception {
+        int rows = columns[0].length;
+        double[] scores = new double[rows];
+        double[] params = new double[columns.length];
+        for (int i = 0; i < rows; i++) {
+            for (int p = 0; p < columns.length; p++)
+                params[p] = columns[p][i];
+            scores[i] = e.eval(params);
+        }
+        return IntStream.range(0, rows)
+                        .filter(i -> !Double.isNaN(scores[i]))
+                        .boxed()
+                        .sorted(Comparator.<Integer>comparingDouble(i -> -scores[i]).thenComparingInt(i -> i))
+                        .limit(k)
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+    }
+
+    @Test
+    void testTop() throws Exception {
+        Expression e = CtxExpression.parse("x * y - sqrt(x)").toContextless(context, "x", "y");
+        Random rng = new Random(55);
+        for (int rows : new int[] {0, 5, 1000, 200000}) {
+            double[] xs = new double[rows], ys = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                xs[i] = rng.nextDouble() * 4 - 1;
+                ys[i] = rng.nextInt(10);
+            }
+
+            for (int k : new int[] {0, 1, 10, 100}) {
+                Ranking r = e.top(k, rows, xs, ys);
+                assertArrayEquals(expectedTop(e, k, xs, ys), r.rows());
+                for (int i = 0; i < r.size(); i++)
+                    assertEquals(e.eval(xs[r.rows()[i]], ys[r.rows()[i]]), r.scores()[i], 0);
+            }
+        }
+    }
+
+    @Test
+    void testTies() throws Exception {
+        Expression e = CtxExpression.parse("floor(x)").toContextless(context, "x");
+        double[] xs = new double[100000];
+        Arrays.fill(xs, 1.5);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, e.top(5, xs.length, xs).rows());
+    }
+
+    @Test
+    void testLargeK() throws Exception {
+        Expression e = CtxExpression.parse("-x").toContextless(context, "x");
+        double[] xs = {5, 3, 9, 1, 7, 2, 8, 0, 6, 4};
+        assertArrayEquals(new int[] {7, 3, 5, 1, 9, 0, 8, 4, 6, 2}, e.top(Integer.MAX_VALUE, xs.length, xs).rows());
+
+        // Selecting every row of a large input only holds as many rows as there are
+        double[] many = new double[1_000_000];
+        for (int i = 0; i < many.length; i++)
+            many[i] = i % 1000;
+        Ranking r = e.top(20_000_000, many.length, many);
+        assertEquals(many.length, r.rows().length);
+        assertEquals(0, r.rows()[0]);
+        assertEquals(-999, r.scores()[many.length - 1], 0);
+    }
+
+    @Test
+    void testPruning() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("id", new NonMutatingFunction() {
+            @Override
+            public double compute(double... args) {
+                calls.incrementAndGet();
+                return args[0];
+            }
+
+            @Override
+            public Interval computeInterval(Interval... args) {
+                return args[0];
+            }
+        });
+
+        // Sorted input: after the first chunks, no later chunk can beat the threshold
+        int rows = 10000;
+        double[] xs = new double[rows];
+        for (int i = 0; i < rows; i++)
+            xs[i] = rows - i;
+
+        Expression e = CtxExpression.parse("id(x)").toContextless(context, "x");
+        Ranking r = e.top(3, rows, xs);
+        assertArrayEquals(new int[] {0, 1, 2}, r.rows());
+        assertTrue(calls.get() < rows / 2);
+    }
+
+    @Test
+    void testMutating() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet());
+
+        int rows = 10000;
+        Expression e = CtxExpression.parse("x * 0 - count()").toContextless(context, "x");
+        assertArrayEquals(new int[] {0, 1}, e.top(2, rows, new double[rows]).rows());
+        assertEquals(rows, calls.get());
+    }
+}
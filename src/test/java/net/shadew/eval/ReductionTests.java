@@ -0,0 +1,100 @@
+package net.shadew.eval;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReductionTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private static double[] column(int rows, long seed) {
+        Random rng = new Random(seed);
+        double[] col = new double[rows];
+        for (int i = 0; i < rows; i++)
+            col[i] = rng.nextDouble() * 10 - 5;
+        return col;
+    }
+
+    @Test
+    void testSummary() throws Exception {
+        Expression e = CtxExpression.parse("x * y + sin(x)").toContextless(context, "x", "y");
+        for (int rows : new int[] {0, 1, 300, 100000}) {
+            double[] xs = column(rows, 1), ys = column(rows, 2);
+
+            double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < rows; i++) {
+                double v = e.eval(xs[i], ys[i]);
+                sum += v;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+
+            Summary s = e.summarize(rows, xs, ys);
+            assertEquals(rows, s.count());
+            assertEquals(sum, s.sum(), 1e-8 * rows);
+            assertEquals(min, s.min(), 0);
+            assertEquals(max, s.max(), 0);
+            assertEquals(sum / rows, e.mean(rows, xs, ys), 1e-8);
+        }
+    }
+
+    @Test
+    void testCompensatedSum() throws Exception {
+        // Adding 0.1 one million times drifts visibly with plain summation
+        Expression e = CtxExpression.parse("0.1 + x * 0").toContextless(context, "x");
+        int rows = 1000000;
+        assertEquals(100000, e.sum(rows, new double[rows]), 1e-9);
+    }
+
+    @Test
+    void testHistogram() throws Exception {
+        Expression e = CtxExpression.parse("x").toContextless(context, "x");
+        double[] xs = {0, 0.5, 1, 1.5, 2, 3.9, 4, 4.5, -1, 0 / 0.0};
+        long[] counts = e.histogram(0, 4, 4, xs.length, xs);
+        assertArrayEquals(new long[] {2, 2, 1, 2}, counts);
+
+        int rows = 50000;
+        double[] big = column(rows, 3);
+        long total = 0;
+        for (long c : e.histogram(-5, 5, 10, rows, big))
+            total += c;
+        assertEquals(rows, total);
+    }
+
+    @Test
+    void testMutatingSequential() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet());
+
+        int rows = 20000;
+        Expression e = CtxExpression.parse("count() + x * 0").toContextless(context, "x");
+        assertEquals(rows * (rows + 1.0) / 2, e.sum(rows, new double[rows]), 0);
+        assertEquals(rows, calls.get());
+    }
+
+    @Test
+    void testError() throws Exception {
+        context.defineFunc("fail", ExprFunction.noMutation(args -> {
+            if (args[0] > 4.99)
+                throw new EvalException("Too large");
+            return args[0];
+        }));
+
+        int rows = 100000;
+        Expression e = CtxExpression.parse("fail(x)").toContextless(context, "x");
+        double[] xs = column(rows, 4);
+        xs[rows - 7] = 5;
+        assertThrows(EvalException.class, () -> e.sum(rows, xs));
+        assertThrows(EvalException.class, () -> e.sum(rows));
+    }
+}
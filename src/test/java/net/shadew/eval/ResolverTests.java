@@ -0,0 +1,72 @@
+package net.shadew.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResolverTests {
+    private static VariableResolver inputs(List<String> log) {
+        return var -> {
+            log.add(var);
+            if (!var.startsWith("in"))
+                throw new EvalException("Unknown input '" + var + "'");
+            return Integer.parseInt(var.substring(2));
+        };
+    }
+
+    @Test
+    void testResolve() throws Exception {
+        List<String> log = new ArrayList<>();
+        ExprContext context = ExprContext.basicMath().child().resolver(inputs(log), false);
+
+        CtxExpression e = CtxExpression.parse("in3 * in4 + in3 + PI");
+        assertEquals(15 + Math.PI, e.eval(context), 0);
+        assertEquals(List.of("in3", "in4", "in3", "PI"), log);
+
+        assertTrue(context.hasVar("in12"));
+        assertTrue(context.hasVar("E"));
+        assertFalse(context.hasVar("foo"));
+        assertEquals("Unknown input 'foo'", assertThrows(EvalException.class, () -> context.get("foo")).getMessage());
+
+        // Defined variables take precedence
+        context.defineVar("in3", 10);
+        assertEquals(50 + Math.PI, e.eval(context), 0);
+    }
+
+    @Test
+    void testCached() throws Exception {
+        List<String> log = new ArrayList<>();
+        ExprContext context = ExprContext.basicMath().child().resolver(inputs(log), true);
+
+        CtxExpression e = CtxExpression.parse("in3 * in4 + in3 * x");
+        Expression compiled = e.toContextless(context, "x");
+        assertEquals(List.of("in3", "in4"), log);
+        assertEquals(12 + 3 * 2, compiled.eval(2), 0);
+        assertEquals(12 + 3 * 5, e.eval(context.child().defineVar("x", 5)), 0);
+        assertEquals(List.of("in3", "in4"), log);
+
+        context.clearResolved();
+        e.eval(context.child().defineVar("x", 5));
+        assertEquals(List.of("in3", "in4", "in3", "in4"), log);
+
+        Expression missing = CtxExpression.parse("in1 + foo").toContextless(context);
+        assertEquals("Unknown input 'foo'", assertThrows(EvalException.class, missing::eval).getMessage());
+    }
+
+    @Test
+    void testExpressionCache() throws Exception {
+        int[] offset = {0};
+        ExprContext context = new ExprContext().resolver(var -> offset[0], true);
+        ExpressionCache cache = context.cache(4);
+
+        assertEquals(1, cache.get("a + x", "x").eval(1), 0);
+        assertSame(cache.get("a + x", "x"), cache.get("a + x", "x"));
+
+        offset[0] = 5;
+        context.clearResolved();
+        assertEquals(6, cache.get("a + x", "x").eval(1), 0);
+    }
+}
@@ -0,0 +1,102 @@
+package net.shadew.eval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private Expression parse(String str, String... params) throws Exception {
+        return CtxExpression.parse(str).toContextless(context, params);
+    }
+
+    @Test
+    void testPromotion() throws Exception {
+        Expression e = parse("sin(x) * y + sin(x) ^ 2 - max(x, y)", "x", "y");
+        TieredExpression tiered = e.tiered(10, Runnable::run);
+
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i >= 10, tiered.isCompiled());
+            double x = i * 0.37 - 4, y = 2 - i * 0.11;
+            assertEquals(e.eval(x, y), tiered.eval(x, y), 0);
+        }
+    }
+
+    @Test
+    void testBackground() throws Exception {
+        List<Runnable> pending = new ArrayList<>();
+        TieredExpression tiered = parse("sqrt(x) * 2 + sqrt(x)", "x").tiered(2, pending::add);
+
+        assertEquals(3, tiered.eval(1), 0);
+        assertEquals(6, tiered.eval(4), 0);
+        assertEquals(9, tiered.eval(9), 0);
+        assertEquals(1, pending.size());
+        assertFalse(tiered.isCompiled());
+
+        pending.get(0).run();
+        assertTrue(tiered.isCompiled());
+        assertEquals(12, tiered.eval(16), 0);
+        assertEquals(1, pending.size());
+    }
+
+    @Test
+    void testNotShared() throws Exception {
+        // Without shared subexpressions, the tree form is faster
+        TieredExpression tiered = parse("x * 2 + y * 3 - x / 4", "x", "y").tiered(0, Runnable::run);
+        for (int i = 0; i < 10; i++)
+            assertEquals(i * 1.75 + 3, tiered.eval(i, 1), 1e-12);
+        assertFalse(tiered.isCompiled());
+    }
+
+    @Test
+    void testConditionalErrors() throws Exception {
+        context.defineFunc("check", ExprFunction.noMutation(args -> {
+            if (args[0] < 0)
+                throw new EvalException("Negative");
+            return Math.sqrt(args[0]);
+        }));
+
+        Expression e = parse("x < 0 ? -1 : check(x) * check(x) + check(x)", "x");
+        TieredExpression tiered = e.tiered(0, Runnable::run);
+        assertEquals(-1, tiered.eval(-4), 0);
+        assertTrue(tiered.isCompiled());
+        assertEquals(-1, tiered.eval(-4), 0);
+        assertEquals(6, tiered.eval(4), 0);
+
+        TieredExpression failing = parse("check(x) + check(x) ^ 2", "x").tiered(0, Runnable::run);
+        assertEquals("Negative", assertThrows(EvalException.class, () -> failing.eval(-1)).getMessage());
+    }
+
+    @Test
+    void testMutating() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        context.defineFunc("count", args -> calls.incrementAndGet());
+
+        TieredExpression tiered = parse("x < 0 ? count() : 0", "x").tiered(0, Runnable::run);
+        for (int i = 0; i < 10; i++)
+            tiered.eval(1);
+        assertFalse(tiered.isCompiled());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void testUnwrap() throws Exception {
+        Expression e = parse("x * y + 1", "x", "y");
+        TieredExpression tiered = e.tiered();
+        assertEquals(e.bind(0, 3), tiered.bind(0, 3));
+        assertEquals(e.sum(3, new double[] {1, 2, 3}, new double[] {4, 5, 6}), tiered.sum(3, new double[] {1, 2, 3}, new double[] {4, 5, 6}), 0);
+        assertThrows(IllegalArgumentException.class, () -> e.tiered(-1, Runnable::run));
+    }
+}
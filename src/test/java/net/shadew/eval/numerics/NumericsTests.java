@@ -0,0 +1,94 @@
+package net.shadew.eval.numerics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.shadew.eval.CtxExpression;
+import net.shadew.eval.EvalException;
+import net.shadew.eval.ExprContext;
+import net.shadew.eval.Expression;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumericsTests {
+    ExprContext context;
+
+    @BeforeEach
+    void beforeEach() {
+        context = new ExprContext();
+        context.addBasicMath();
+    }
+
+    private Expression parse(String str) throws Exception {
+        return CtxExpression.parse(str).toContextless(context, "x");
+    }
+
+    @Test
+    void testIntegrate() throws Exception {
+        assertEquals(2, Integration.integrate(parse("sin(x)"), 0, Math.PI).value(), 1e-10);
+        assertEquals(-2, Integration.integrate(parse("sin(x)"), Math.PI, 0).value(), 1e-10);
+        assertEquals(Math.E - 1, Integration.integrate(parse("exp(x)"), 0, 1).value(), 1e-10);
+        assertEquals(0, Integration.integrate(parse("x"), 3, 3).value(), 0);
+    }
+
+    @Test
+    void testIntegrateDifficult() throws Exception {
+        // Sharp peak and a kink, both need many subintervals
+        Quadrature q = Integration.integrate(parse("1 / (1e-4 + x * x)"), -1, 1);
+        assertEquals(2 / 1e-2 * Math.atan(1 / 1e-2), q.value(), 1e-6);
+        assertTrue(q.error() < 1e-6);
+
+        Quadrature sqrt = Integration.integrate(parse("sqrt(|x|)"), -1, 1);
+        assertEquals(4 / 3.0, sqrt.value(), 1e-9);
+
+        // Many oscillations, enough points to be evaluated in parallel
+        Quadrature osc = Integration.integrate(parse("sin(x) ^ 2"), 0, 2000 * Math.PI);
+        assertEquals(1000 * Math.PI, osc.value(), 1e-6);
+    }
+
+    @Test
+    void testIntegrateLimit() throws Exception {
+        Quadrature q = Integration.integrate(parse("1 / x"), 0, 1, 1e-10, 1e-10, 10);
+        assertTrue(q.error() > 1e-10);
+    }
+
+    @Test
+    void testBracket() throws Exception {
+        assertEquals(Math.sqrt(2), Roots.bracket(parse("x * x - 2"), 0, 2, 1e-12), 1e-12);
+        assertEquals(Math.PI, Roots.bracket(parse("sin(x)"), 3, 4, 1e-12), 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> Roots.bracket(parse("x * x + 1"), -1, 1, 1e-12));
+    }
+
+    @Test
+    void testFindAll() throws Exception {
+        double[] roots = Roots.findAll(parse("sin(x)"), -0.5, 10000.5, 100000, 1e-12);
+        assertEquals(3184, roots.length);
+        for (int i = 0; i < roots.length; i++)
+            assertEquals(i * Math.PI, roots[i], 1e-9);
+
+        assertArrayEquals(new double[] {-1, 0, 1}, Roots.findAll(parse("x ^ 3 - x"), -2, 2, 4, 1e-12), 1e-12);
+    }
+
+    @Test
+    void testMinimize() throws Exception {
+        Extremum m = Minimization.local(parse("(x - 1.5) ^ 2 + 3"), -10, 10, 1e-8);
+        assertEquals(1.5, m.x(), 1e-7);
+        assertEquals(3, m.value(), 1e-12);
+
+        Extremum g = Minimization.global(parse("sin(3 * x) + (x - 2) ^ 2 / 10"), -10, 10, 1000, 1e-8);
+        Extremum l = Minimization.local(parse("sin(3 * x) + (x - 2) ^ 2 / 10"), 1, 2, 1e-8);
+        assertEquals(l.x(), g.x(), 1e-6);
+
+        Extremum edge = Minimization.global(parse("x"), 0, 1, 10, 1e-8);
+        assertEquals(0, edge.x(), 0);
+    }
+
+    @Test
+    void testError() {
+        context.defineFunc("fail", args -> {
+            throw new EvalException("Failed");
+        });
+        assertThrows(EvalException.class, () -> Integration.integrate(parse("fail(x)"), 0, 1));
+        assertThrows(EvalException.class, () -> Roots.findAll(parse("x - 5 + fail(x) * 0"), 0, 10, 100000, 1e-10));
+    }
+}